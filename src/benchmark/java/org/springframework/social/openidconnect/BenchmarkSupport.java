@@ -0,0 +1,90 @@
+package org.springframework.social.openidconnect;
+
+import org.springframework.social.connect.ApiAdapter;
+import org.springframework.social.connect.ConnectionFactoryLocator;
+import org.springframework.social.connect.ConnectionValues;
+import org.springframework.social.connect.UserProfile;
+import org.springframework.social.connect.support.ConnectionFactoryRegistry;
+import org.springframework.social.connect.support.OAuth2ConnectionFactory;
+import org.springframework.social.oauth2.OAuth2Operations;
+import org.springframework.social.oauth2.OAuth2ServiceProvider;
+import org.springframework.social.openidconnect.support.OpenIdConnectionData;
+
+/**
+ * Fixtures shared by benchmarks.
+ */
+public final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Creates a locator knowing the PayPal connection factory. No calls reach PayPal while benchmarking repositories.
+     *
+     * @return - connection factory locator
+     */
+    public static ConnectionFactoryLocator connectionFactoryLocator() {
+        ConnectionFactoryRegistry registry = new ConnectionFactoryRegistry();
+        registry.addConnectionFactory(new PayPalConnectionFactoryBuilder().withClientId("clientId")
+                .withAppSecret("appSecret").withScope("openid profile email").build());
+        return registry;
+    }
+
+    /**
+     * Creates a locator whose "paypal" connections are backed by a plain object instead of a PayPal template, for
+     * benchmarks creating thousands of connections per operation where building templates would drown the code
+     * measured.
+     *
+     * @return - connection factory locator
+     */
+    public static ConnectionFactoryLocator lightweightConnectionFactoryLocator() {
+        OAuth2ServiceProvider<Object> serviceProvider = new OAuth2ServiceProvider<Object>() {
+            public OAuth2Operations getOAuthOperations() {
+                throw new UnsupportedOperationException();
+            }
+
+            public Object getApi(String accessToken) {
+                return accessToken;
+            }
+        };
+        ApiAdapter<Object> apiAdapter = new ApiAdapter<Object>() {
+            public boolean test(Object api) {
+                return true;
+            }
+
+            public void setConnectionValues(Object api, ConnectionValues values) {
+            }
+
+            public UserProfile fetchUserProfile(Object api) {
+                throw new UnsupportedOperationException();
+            }
+
+            public void updateStatus(Object api, String message) {
+            }
+        };
+        ConnectionFactoryRegistry registry = new ConnectionFactoryRegistry();
+        registry.addConnectionFactory(new OAuth2ConnectionFactory<Object>("paypal", serviceProvider, apiAdapter));
+        return registry;
+    }
+
+    /**
+     * Creates connection data for the n-th PayPal user.
+     *
+     * @param n - user number
+     * @return - connection data
+     */
+    public static OpenIdConnectionData connectionData(int n) {
+        return new OpenIdConnectionData("paypal", providerUserId(n), "User " + n, null, null, "accessToken" + n, null,
+                "refreshToken" + n, Long.valueOf(System.currentTimeMillis() + 3600000L), "idToken" + n);
+    }
+
+    /**
+     * PayPal user id of the n-th user.
+     *
+     * @param n - user number
+     * @return - provider user id
+     */
+    public static String providerUserId(int n) {
+        return "https://www.paypal.com/webapps/auth/identity/user/" + n;
+    }
+}
@@ -0,0 +1,49 @@
+package org.springframework.social.openidconnect;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.social.oauth2.GrantType;
+import org.springframework.social.oauth2.OAuth2Parameters;
+
+/**
+ * Measures building the authorize url, which happens on every sign in redirect.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayPalOpenIdConnectOperationBenchmark {
+
+    private PayPalOpenIdConnectOperation operation;
+
+    @Setup
+    public void setUp() {
+        operation = new PayPalOpenIdConnectOperation("clientId", "appSecret", "openid profile email address", true);
+    }
+
+    @Benchmark
+    public String buildAuthorizeUrl() {
+        // parameters are fresh per sign in, the operation adds a nonce to them
+        OAuth2Parameters parameters = new OAuth2Parameters();
+        parameters.setRedirectUri("https://localhost/signin/paypal");
+        parameters.setState("state");
+        return operation.buildAuthorizeUrl(GrantType.AUTHORIZATION_CODE, parameters);
+    }
+
+    @Benchmark
+    public String createNonce() {
+        return operation.createNonce();
+    }
+}
@@ -0,0 +1,50 @@
+package org.springframework.social.openidconnect.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.StreamUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Measures reading a user info response into {@link PayPalProfile}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayPalProfileBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private byte[] response;
+
+    @Setup
+    public void setUp() throws IOException {
+        InputStream stream = getClass().getResourceAsStream("/paypal-api-openidconnect-response.json");
+        try {
+            response = StreamUtils.copyToByteArray(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Benchmark
+    public PayPalProfile deserialize() throws IOException {
+        return mapper.readValue(response, PayPalProfile.class);
+    }
+}
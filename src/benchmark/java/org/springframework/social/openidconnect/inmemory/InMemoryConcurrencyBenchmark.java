@@ -0,0 +1,80 @@
+package org.springframework.social.openidconnect.inmemory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.social.connect.ConnectionData;
+import org.springframework.social.openidconnect.BenchmarkSupport;
+
+/**
+ * Measures throughput of concurrent sign in lookups on the in-memory repositories, against the same lookups serialized
+ * on one lock, which is what a synchronized repository would do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class InMemoryConcurrencyBenchmark {
+
+    private static final int USERS = 1000;
+
+    private final Object lock = new Object();
+
+    private InMemoryUsersConnectionRepository repository;
+
+    @Setup
+    public void setUp() {
+        repository = new InMemoryUsersConnectionRepository(null);
+        for (int i = 0; i < USERS; i++) {
+            repository.addConnectionData("user" + i, BenchmarkSupport.connectionData(i), 1);
+        }
+    }
+
+    /**
+     * Per thread position among users.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+
+        int nextUser() {
+            next = (next + 7) % USERS;
+            return next;
+        }
+    }
+
+    private List<ConnectionData> lookup(int user) {
+        InMemoryProviderConnectionRepository providerRepository = repository
+                .createInMemoryConnectionRepository("user" + user).getInMemoryProviderConnectionRepository("paypal");
+        providerRepository.findByProviderUserId(BenchmarkSupport.providerUserId(user));
+        return providerRepository.findAllOrderByRank();
+    }
+
+    @Benchmark
+    public List<ConnectionData> concurrent(Cursor cursor) {
+        return lookup(cursor.nextUser());
+    }
+
+    @Benchmark
+    public List<ConnectionData> synchronizedBaseline(Cursor cursor) {
+        int user = cursor.nextUser();
+        synchronized (lock) {
+            return lookup(user);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.springframework.social.openidconnect.inmemory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.social.connect.Connection;
+import org.springframework.social.connect.ConnectionKey;
+import org.springframework.social.openidconnect.BenchmarkSupport;
+
+/**
+ * Measures lookups done by a sign in against the in-memory repositories, for a growing number of users.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InMemoryConnectionRepositoryBenchmark {
+
+    @Param({ "100", "10000" })
+    private int users;
+
+    private InMemoryUsersConnectionRepository usersConnectionRepository;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        usersConnectionRepository = new InMemoryUsersConnectionRepository(BenchmarkSupport.connectionFactoryLocator());
+        for (int i = 0; i < users; i++) {
+            usersConnectionRepository.addConnectionData("user" + i, BenchmarkSupport.connectionData(i), 1);
+        }
+    }
+
+    private int nextUser() {
+        next = (next + 1) % users;
+        return next;
+    }
+
+    @Benchmark
+    public Set<String> findUserIdsConnectedTo() {
+        return usersConnectionRepository.findUserIdsConnectedTo("paypal",
+                Collections.singleton(BenchmarkSupport.providerUserId(nextUser())));
+    }
+
+    @Benchmark
+    public Connection<?> getConnection() {
+        int user = nextUser();
+        return usersConnectionRepository.createConnectionRepository("user" + user).getConnection(
+                new ConnectionKey("paypal", BenchmarkSupport.providerUserId(user)));
+    }
+
+    @Benchmark
+    public List<Connection<?>> findConnections() {
+        return usersConnectionRepository.createConnectionRepository("user" + nextUser()).findConnections("paypal");
+    }
+}
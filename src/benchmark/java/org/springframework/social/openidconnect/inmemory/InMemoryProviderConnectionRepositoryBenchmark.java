@@ -0,0 +1,74 @@
+package org.springframework.social.openidconnect.inmemory;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.social.connect.ConnectionData;
+import org.springframework.social.openidconnect.BenchmarkSupport;
+
+/**
+ * Measures operations on a single user's provider repository for a growing number of connections per user.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InMemoryProviderConnectionRepositoryBenchmark {
+
+    @Param({ "1", "10", "100", "1000" })
+    private int connections;
+
+    private InMemoryProviderConnectionRepository repository;
+
+    private ConnectionData extra;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        repository = new InMemoryProviderConnectionRepository("user", "paypal");
+        for (int i = 0; i < connections; i++) {
+            repository.add(BenchmarkSupport.connectionData(i));
+        }
+        extra = BenchmarkSupport.connectionData(connections);
+    }
+
+    private int nextConnection() {
+        next = (next + 1) % connections;
+        return next;
+    }
+
+    @Benchmark
+    public ConnectionData findByProviderUserId() {
+        return repository.findByProviderUserId(BenchmarkSupport.providerUserId(nextConnection()));
+    }
+
+    @Benchmark
+    public int getNextRank() {
+        return repository.getNextRank();
+    }
+
+    @Benchmark
+    public void addAndDelete() {
+        repository.add(extra);
+        repository.deleteByProviderUserId(extra.getProviderUserId());
+    }
+
+    @Benchmark
+    public void updateByProviderUserId() {
+        String providerUserId = BenchmarkSupport.providerUserId(nextConnection());
+        repository.updateByProviderUserId(repository.findByProviderUserId(providerUserId), providerUserId);
+    }
+}
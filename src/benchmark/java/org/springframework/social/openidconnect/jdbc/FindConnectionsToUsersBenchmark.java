@@ -0,0 +1,76 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import org.springframework.social.connect.Connection;
+import org.springframework.social.openidconnect.BenchmarkSupport;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+/**
+ * Measures friend style lookups of many provider user ids for one user against an embedded H2 database. Half of the
+ * requested ids are connected. Connections are created by a lightweight factory, so the numbers show query building,
+ * row mapping and result placement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FindConnectionsToUsersBenchmark {
+
+    @Param({ "10", "1000", "50000" })
+    private int ids;
+
+    private EmbeddedDatabase database;
+
+    private OpenIdJdbcUsersConnectionRepository usersConnectionRepository;
+
+    private MultiValueMap<String, String> providerUsers;
+
+    @Setup
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true)
+                .addScript(OpenIdConnectJdbcConnectionRepositoryBenchmark.SCHEMA).build();
+        List<UserConnectionRecord> records = new ArrayList<UserConnectionRecord>();
+        for (int i = 0; i < ids; i += 2) {
+            records.add(new UserConnectionRecord("user", records.size() + 1, BenchmarkSupport.connectionData(i)));
+        }
+        new UserConnectionBulkLoader(database, Encryptors.noOpText()).load(records.iterator());
+        usersConnectionRepository = new OpenIdJdbcUsersConnectionRepository(database,
+                BenchmarkSupport.lightweightConnectionFactoryLocator(), Encryptors.noOpText());
+        providerUsers = new LinkedMultiValueMap<String, String>();
+        for (int i = 0; i < ids; i++) {
+            providerUsers.add("paypal", BenchmarkSupport.providerUserId(i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Benchmark
+    public MultiValueMap<String, Connection<?>> findConnectionsToUsers() {
+        return usersConnectionRepository.createConnectionRepository("user").findConnectionsToUsers(providerUsers);
+    }
+}
@@ -0,0 +1,121 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import org.springframework.social.connect.Connection;
+import org.springframework.social.connect.ConnectionFactoryLocator;
+import org.springframework.social.connect.ConnectionKey;
+import org.springframework.social.connect.ConnectionRepository;
+import org.springframework.social.openidconnect.BenchmarkSupport;
+import org.springframework.social.openidconnect.api.PayPal;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+/**
+ * Measures the JDBC repository against an embedded H2 database, so the numbers show our own overhead (SQL building,
+ * row mapping, decryption and connection creation) rather than network latency to a real database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OpenIdConnectJdbcConnectionRepositoryBenchmark {
+
+    /**
+     * Script creating the UserConnection table.
+     */
+    public static final String SCHEMA = "org/springframework/social/openidconnect/jdbc/OpenIdConnectJdbcConnectionRepository.sql";
+
+    @Param({ "1000" })
+    private int users;
+
+    @Param({ "false", "true" })
+    private boolean cached;
+
+    private EmbeddedDatabase database;
+
+    private OpenIdJdbcUsersConnectionRepository usersConnectionRepository;
+
+    private ConnectionFactoryLocator connectionFactoryLocator;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true)
+                .addScript(SCHEMA).build();
+        connectionFactoryLocator = BenchmarkSupport.connectionFactoryLocator();
+        usersConnectionRepository = new OpenIdJdbcUsersConnectionRepository(database, connectionFactoryLocator,
+                Encryptors.noOpText());
+        if (cached) {
+            usersConnectionRepository.setConnectionDataCache(new ConnectionDataCache(users, 60000));
+        }
+        for (int i = 0; i < users; i++) {
+            usersConnectionRepository.createConnectionRepository("user" + i).addConnection(createConnection(i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    private Connection<?> createConnection(int n) {
+        return connectionFactoryLocator.getConnectionFactory("paypal").createConnection(
+                BenchmarkSupport.connectionData(n));
+    }
+
+    private int nextUser() {
+        next = (next + 1) % users;
+        return next;
+    }
+
+    @Benchmark
+    public Connection<?> getConnection() {
+        int user = nextUser();
+        return usersConnectionRepository.createConnectionRepository("user" + user).getConnection(
+                new ConnectionKey("paypal", BenchmarkSupport.providerUserId(user)));
+    }
+
+    @Benchmark
+    public Connection<?> findPrimaryConnection() {
+        return usersConnectionRepository.createConnectionRepository("user" + nextUser()).findPrimaryConnection(
+                PayPal.class);
+    }
+
+    @Benchmark
+    public MultiValueMap<String, Connection<?>> findConnectionsToUsers() {
+        int user = nextUser();
+        MultiValueMap<String, String> providerUsers = new LinkedMultiValueMap<String, String>();
+        providerUsers.add("paypal", BenchmarkSupport.providerUserId(user));
+        providerUsers.add("paypal", BenchmarkSupport.providerUserId(users + user));
+        return usersConnectionRepository.createConnectionRepository("user" + user).findConnectionsToUsers(providerUsers);
+    }
+
+    @Benchmark
+    public void addAndRemoveConnection() {
+        int user = nextUser();
+        ConnectionRepository repository = usersConnectionRepository.createConnectionRepository("user" + user);
+        Connection<?> connection = createConnection(users + user);
+        repository.addConnection(connection);
+        repository.removeConnection(connection.getKey());
+    }
+}
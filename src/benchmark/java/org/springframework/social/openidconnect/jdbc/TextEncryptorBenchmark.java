@@ -0,0 +1,67 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+
+/**
+ * Compares the default Spring Security text encryptor with {@link AesGcmTextEncryptor} on an access token and an id
+ * token sized value, as read from UserConnection for every row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextEncryptorBenchmark {
+
+    @Param({ "spring", "aesgcm" })
+    private String encryptor;
+
+    @Param({ "60", "900" })
+    private int length;
+
+    private TextEncryptor textEncryptor;
+
+    private String plain;
+
+    private String encrypted;
+
+    @Setup
+    public void setUp() {
+        if ("spring".equals(encryptor)) {
+            textEncryptor = Encryptors.text("password", "5c0744940b5c369b");
+        } else {
+            textEncryptor = new AesGcmTextEncryptor("password", "5c0744940b5c369b");
+        }
+        StringBuilder text = new StringBuilder();
+        while (text.length() < length) {
+            text.append("eyJhbGciOiJSUzI1NiJ9.");
+        }
+        plain = text.substring(0, length);
+        encrypted = textEncryptor.encrypt(plain);
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return textEncryptor.encrypt(plain);
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return textEncryptor.decrypt(encrypted);
+    }
+}
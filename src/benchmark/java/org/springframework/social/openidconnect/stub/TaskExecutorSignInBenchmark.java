@@ -0,0 +1,82 @@
+package org.springframework.social.openidconnect.stub;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.social.openidconnect.HttpClientRegistry;
+import org.springframework.social.openidconnect.PayPalServiceProvider;
+
+/**
+ * Compares sign ins through {@link PayPalServiceProvider#getAsyncApi(String)} and the non-blocking token exchange with
+ * the provider running its calls on a fixed pool of platform threads, and on a virtual thread per task executor passed
+ * via {@link TaskExecutorAdapter}. Drives {@link SignInLoadHarness} against a {@link PayPalStubServer}, so the numbers
+ * show how each executor copes with many sign ins waiting on a slow token service. Virtual threads need JDK 21 or later,
+ * on older JDKs only the fixed pool is measured. Run with the benchmarks profile on the test classpath:
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:... org.springframework.social.openidconnect.stub.TaskExecutorSignInBenchmark \
+ *     [rate per second] [duration in seconds] [client threads] [pool size] [stub latency in ms]
+ * </pre>
+ */
+public final class TaskExecutorSignInBenchmark {
+
+    private TaskExecutorSignInBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int duration = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int clientThreads = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        int poolSize = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        long latency = args.length > 4 ? Long.parseLong(args[4]) : 50;
+        PayPalStubServer server = new PayPalStubServer(clientThreads * 2).withLatency(latency).start();
+        try {
+            run("platform, fixed pool of " + poolSize, server, Executors.newFixedThreadPool(poolSize), rate, duration,
+                    clientThreads);
+            ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+            if (virtualThreads != null) {
+                run("virtual thread per task", server, virtualThreads, rate, duration, clientThreads);
+            } else {
+                System.out.println("virtual threads need JDK 21 or later, running on " + System.getProperty("java.version"));
+            }
+        } finally {
+            server.stop();
+            HttpClientRegistry.closeAll();
+        }
+    }
+
+    private static void run(String name, PayPalStubServer server, ExecutorService executor, int rate, int duration,
+            int clientThreads) throws InterruptedException {
+        try {
+            PayPalServiceProvider serviceProvider = new PayPalServiceProvider("clientId", "appSecret",
+                    "openid profile email address", server.getAuthorizeUrl(), server.getTokenUrl(),
+                    server.getUserInfoUrl(), false);
+            serviceProvider.setTaskExecutor(new TaskExecutorAdapter(executor));
+            SignInLoadHarness harness = new SignInLoadHarness(serviceProvider, server.getAuthorizeUrl());
+            harness.setAsync(true);
+            // warm up pools and JIT before measuring
+            harness.run(rate, Math.min(duration, 2), clientThreads);
+            System.out.println(name + ": " + harness.run(rate, duration, clientThreads));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Looks up <code>Executors.newVirtualThreadPerTaskExecutor()</code>, which this code cannot link against directly.
+     *
+     * @return - executor starting a virtual thread per task, null before JDK 21
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        } catch (Exception ex) {
+            throw new IllegalStateException("Virtual thread executor could not be created", ex);
+        }
+    }
+}
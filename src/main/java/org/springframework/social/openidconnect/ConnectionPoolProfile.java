@@ -0,0 +1,256 @@
+package org.springframework.social.openidconnect;
+
+import org.springframework.util.Assert;
+
+/**
+ * Connection pool and time out settings for http clients talking to PayPal Access. Instances are immutable, every
+ * <code>withXxx</code> method returns a copy with the given value changed, so a profile can safely be shared and used
+ * to look up shared clients in {@link HttpClientRegistry}.
+ * <p>
+ * Defaults match the values used before profiles were configurable: 5 second connect and read time out, 200 connections
+ * in total and 20 per route, with stale connection check on and no idle eviction. Non-blocking clients use 2 I/O
+ * threads.
+ * </p>
+ */
+public final class ConnectionPoolProfile {
+
+    /**
+     * Profile with default settings.
+     */
+    public static final ConnectionPoolProfile DEFAULT = new ConnectionPoolProfile(5000, 5000, -1, 200, 20, true, -1, -1, -1, 2);
+
+    private final int connectTimeout;
+
+    private final int readTimeout;
+
+    private final int connectionRequestTimeout;
+
+    private final int maxTotal;
+
+    private final int maxPerRoute;
+
+    private final boolean staleConnectionCheckEnabled;
+
+    private final long timeToLive;
+
+    private final long evictionInterval;
+
+    private final long maxIdleTime;
+
+    private final int asyncIoThreads;
+
+    private ConnectionPoolProfile(int connectTimeout, int readTimeout, int connectionRequestTimeout, int maxTotal,
+            int maxPerRoute, boolean staleConnectionCheckEnabled, long timeToLive, long evictionInterval,
+            long maxIdleTime, int asyncIoThreads) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.connectionRequestTimeout = connectionRequestTimeout;
+        this.maxTotal = maxTotal;
+        this.maxPerRoute = maxPerRoute;
+        this.staleConnectionCheckEnabled = staleConnectionCheckEnabled;
+        this.timeToLive = timeToLive;
+        this.evictionInterval = evictionInterval;
+        this.maxIdleTime = maxIdleTime;
+        this.asyncIoThreads = asyncIoThreads;
+    }
+
+    /**
+     * Sets connection time out.
+     *
+     * @param connectTimeout - time out in milliseconds for establishing a connection
+     * @return - copy of this profile
+     */
+    public ConnectionPoolProfile withConnectTimeout(int connectTimeout) {
+        return new ConnectionPoolProfile(connectTimeout, readTimeout, connectionRequestTimeout, maxTotal, maxPerRoute,
+                staleConnectionCheckEnabled, timeToLive, evictionInterval, maxIdleTime, asyncIoThreads);
+    }
+
+    /**
+     * Sets read (socket) time out.
+     *
+     * @param readTimeout - time out in milliseconds while waiting for data
+     * @return - copy of this profile
+     */
+    public ConnectionPoolProfile withReadTimeout(int readTimeout) {
+        return new ConnectionPoolProfile(connectTimeout, readTimeout, connectionRequestTimeout, maxTotal, maxPerRoute,
+                staleConnectionCheckEnabled, timeToLive, evictionInterval, maxIdleTime, asyncIoThreads);
+    }
+
+    /**
+     * Sets how long a request waits for a free connection from the pool. A negative value waits indefinitely.
+     *
+     * @param connectionRequestTimeout - time out in milliseconds
+     * @return - copy of this profile
+     */
+    public ConnectionPoolProfile withConnectionRequestTimeout(int connectionRequestTimeout) {
+        return new ConnectionPoolProfile(connectTimeout, readTimeout, connectionRequestTimeout, maxTotal, maxPerRoute,
+                staleConnectionCheckEnabled, timeToLive, evictionInterval, maxIdleTime, asyncIoThreads);
+    }
+
+    /**
+     * Sets maximum number of pooled connections across all routes.
+     *
+     * @param maxTotal - max connections
+     * @return - copy of this profile
+     */
+    public ConnectionPoolProfile withMaxTotal(int maxTotal) {
+        Assert.isTrue(maxTotal > 0, "maxTotal should be positive");
+        return new ConnectionPoolProfile(connectTimeout, readTimeout, connectionRequestTimeout, maxTotal, maxPerRoute,
+                staleConnectionCheckEnabled, timeToLive, evictionInterval, maxIdleTime, asyncIoThreads);
+    }
+
+    /**
+     * Sets maximum number of pooled connections per route. All PayPal Access traffic goes to one or two routes, so
+     * this is usually the effective concurrency limit.
+     *
+     * @param maxPerRoute - max connections per route
+     * @return - copy of this profile
+     */
+    public ConnectionPoolProfile withMaxPerRoute(int maxPerRoute) {
+        Assert.isTrue(maxPerRoute > 0, "maxPerRoute should be positive");
+        return new ConnectionPoolProfile(connectTimeout, readTimeout, connectionRequestTimeout, maxTotal, maxPerRoute,
+                staleConnectionCheckEnabled, timeToLive, evictionInterval, maxIdleTime, asyncIoThreads);
+    }
+
+    /**
+     * Enables checking pooled connections for staleness before they are reused. Costs a short blocking read per
+     * request, but avoids failing on connections closed by the server while idle. Enabled by default.
+     *
+     * @param staleConnectionCheckEnabled - flag to validate connections before reuse
+     * @return - copy of this profile
+     */
+    public ConnectionPoolProfile withStaleConnectionCheck(boolean staleConnectionCheckEnabled) {
+        return new ConnectionPoolProfile(connectTimeout, readTimeout, connectionRequestTimeout, maxTotal, maxPerRoute,
+                staleConnectionCheckEnabled, timeToLive, evictionInterval, maxIdleTime, asyncIoThreads);
+    }
+
+    /**
+     * Sets total time to live of a pooled connection. A non positive value keeps connections as long as they are
+     * reusable.
+     *
+     * @param timeToLive - time to live in milliseconds
+     * @return - copy of this profile
+     */
+    public ConnectionPoolProfile withTimeToLive(long timeToLive) {
+        return new ConnectionPoolProfile(connectTimeout, readTimeout, connectionRequestTimeout, maxTotal, maxPerRoute,
+                staleConnectionCheckEnabled, timeToLive, evictionInterval, maxIdleTime, asyncIoThreads);
+    }
+
+    /**
+     * Enables a background {@link IdleConnectionEvictor} for the pool, which closes expired connections and connections
+     * idle for longer than <code>maxIdleTime</code> every <code>evictionInterval</code>. Disabled by default. Applies
+     * to blocking clients only; non-blocking clients drop connections closed by the server as their I/O reactor
+     * notices them.
+     *
+     * @param evictionInterval - time between eviction runs in milliseconds, non positive disables eviction
+     * @param maxIdleTime - idle time in milliseconds after which a connection is closed, non positive only closes
+     *            expired connections
+     * @return - copy of this profile
+     */
+    public ConnectionPoolProfile withIdleEviction(long evictionInterval, long maxIdleTime) {
+        return new ConnectionPoolProfile(connectTimeout, readTimeout, connectionRequestTimeout, maxTotal, maxPerRoute,
+                staleConnectionCheckEnabled, timeToLive, evictionInterval, maxIdleTime, asyncIoThreads);
+    }
+
+    /**
+     * Sets number of I/O dispatch threads of non-blocking clients. Each thread serves many connections, so a few are
+     * enough unless responses are large.
+     *
+     * @param asyncIoThreads - I/O thread count
+     * @return - copy of this profile
+     */
+    public ConnectionPoolProfile withAsyncIoThreads(int asyncIoThreads) {
+        Assert.isTrue(asyncIoThreads > 0, "asyncIoThreads should be positive");
+        return new ConnectionPoolProfile(connectTimeout, readTimeout, connectionRequestTimeout, maxTotal, maxPerRoute,
+                staleConnectionCheckEnabled, timeToLive, evictionInterval, maxIdleTime, asyncIoThreads);
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public int getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public boolean isStaleConnectionCheckEnabled() {
+        return staleConnectionCheckEnabled;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public long getEvictionInterval() {
+        return evictionInterval;
+    }
+
+    public long getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    public int getAsyncIoThreads() {
+        return asyncIoThreads;
+    }
+
+    /**
+     * Checks whether a background evictor should run for pools with this profile.
+     *
+     * @return - true if idle eviction is enabled
+     */
+    public boolean isIdleEvictionEnabled() {
+        return evictionInterval > 0;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ConnectionPoolProfile)) {
+            return false;
+        }
+        ConnectionPoolProfile other = (ConnectionPoolProfile) obj;
+        return connectTimeout == other.connectTimeout && readTimeout == other.readTimeout
+                && connectionRequestTimeout == other.connectionRequestTimeout && maxTotal == other.maxTotal
+                && maxPerRoute == other.maxPerRoute && staleConnectionCheckEnabled == other.staleConnectionCheckEnabled
+                && timeToLive == other.timeToLive && evictionInterval == other.evictionInterval
+                && maxIdleTime == other.maxIdleTime && asyncIoThreads == other.asyncIoThreads;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = connectTimeout;
+        result = 31 * result + readTimeout;
+        result = 31 * result + connectionRequestTimeout;
+        result = 31 * result + maxTotal;
+        result = 31 * result + maxPerRoute;
+        result = 31 * result + (staleConnectionCheckEnabled ? 1 : 0);
+        result = 31 * result + (int) (timeToLive ^ (timeToLive >>> 32));
+        result = 31 * result + (int) (evictionInterval ^ (evictionInterval >>> 32));
+        result = 31 * result + (int) (maxIdleTime ^ (maxIdleTime >>> 32));
+        result = 31 * result + asyncIoThreads;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "connectTimeout=" + connectTimeout + ", readTimeout=" + readTimeout + ", connectionRequestTimeout="
+                + connectionRequestTimeout + ", maxTotal=" + maxTotal + ", maxPerRoute=" + maxPerRoute
+                + ", staleConnectionCheck=" + staleConnectionCheckEnabled + ", timeToLive=" + timeToLive
+                + ", evictionInterval=" + evictionInterval + ", maxIdleTime=" + maxIdleTime + ", asyncIoThreads="
+                + asyncIoThreads;
+    }
+}
@@ -0,0 +1,32 @@
+package org.springframework.social.openidconnect;
+
+import org.springframework.social.connect.ConnectionData;
+
+/**
+ * Stored connection found by an {@link ExpiringConnectionSource}: the local user and the connection data.
+ */
+public final class ExpiringConnection {
+
+    private final String userId;
+
+    private final ConnectionData connectionData;
+
+    /**
+     * Constructor which accepts the local user and the connection data.
+     *
+     * @param userId - Local user id
+     * @param connectionData - Stored connection data, with expire time and refresh token
+     */
+    public ExpiringConnection(String userId, ConnectionData connectionData) {
+        this.userId = userId;
+        this.connectionData = connectionData;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public ConnectionData getConnectionData() {
+        return connectionData;
+    }
+}
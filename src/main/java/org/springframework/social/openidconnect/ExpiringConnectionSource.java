@@ -0,0 +1,25 @@
+package org.springframework.social.openidconnect;
+
+import java.util.List;
+
+/**
+ * Finds stored connections whose access token expires soon, for {@link TokenRefreshScheduler}. Implemented by
+ * {@link org.springframework.social.openidconnect.inmemory.InMemoryUsersConnectionRepository} and, for the
+ * <code>UserConnection</code> table, by {@link org.springframework.social.openidconnect.jdbc.JdbcExpiringConnectionSource}.
+ */
+public interface ExpiringConnectionSource {
+
+    /**
+     * Finds connections of a provider having a refresh token and expiring before the given time, ordered by expire time,
+     * user id and provider user id. Connections sharing an expire time are paged through like any others: each page
+     * starts after the last connection of the previous one.
+     *
+     * @param providerId - Provider id
+     * @param after - Last connection of the previous page, null for the first page
+     * @param expiresBefore - Largest expire time in milliseconds since epoch, exclusive
+     * @param maxResults - Maximum number of connections returned
+     * @return - connections ordered by expire time, user id and provider user id
+     */
+    List<ExpiringConnection> findExpiringConnections(String providerId, ExpiringConnection after, long expiresBefore,
+            int maxResults);
+}
@@ -2,6 +2,7 @@ package org.springframework.social.openidconnect;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.HttpClientConnectionManager;
@@ -11,11 +12,21 @@ import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLContexts;
 import org.apache.http.conn.ssl.X509HostnameVerifier;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
 import org.apache.log4j.Logger;
+import org.springframework.http.client.HttpComponentsAsyncClientHttpRequestFactory;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.apache.http.impl.client.HttpClientBuilder;
 
 import javax.net.ssl.SSLContext;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.http.conn.ssl.SSLConnectionSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
 
@@ -43,14 +54,41 @@ public final class HttpClientFactory {
      * @return - {@link HttpComponentsClientHttpRequestFactory}
      */
     public static HttpComponentsClientHttpRequestFactory getRequestFactory(boolean isStrict){
-        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory();
-        factory.setConnectTimeout(5000);
-        factory.setReadTimeout(5000);
+        return getRequestFactory(isStrict, ConnectionPoolProfile.DEFAULT);
+    }
+
+    /**
+     * Creates a Http Request Factory with time outs and pool sizes from given profile.
+     * @param isStrict -   Flag which determines Host name verifier
+     * @param profile - Connection pool and time out settings
+     * @return - {@link HttpComponentsClientHttpRequestFactory}
+     */
+    public static HttpComponentsClientHttpRequestFactory getRequestFactory(boolean isStrict, ConnectionPoolProfile profile){
+        return getRequestFactory(getPooledConnectionManager(isStrict, profile), profile);
+    }
 
-        HttpClient httpClient = HttpClientBuilder.create().setConnectionManager(getPooledConnectionManager(isStrict)).build();
+    /**
+     * Creates a Http Request Factory on top of given connection manager with time outs from given profile.
+     * @param connectionManager - Connection manager used by the client
+     * @param profile - Connection pool and time out settings
+     * @return - {@link HttpComponentsClientHttpRequestFactory}
+     */
+    public static HttpComponentsClientHttpRequestFactory getRequestFactory(HttpClientConnectionManager connectionManager, ConnectionPoolProfile profile){
+        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory();
+        factory.setConnectTimeout(profile.getConnectTimeout());
+        factory.setReadTimeout(profile.getReadTimeout());
+        factory.setConnectionRequestTimeout(profile.getConnectionRequestTimeout());
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setStaleConnectionCheckEnabled(profile.isStaleConnectionCheckEnabled())
+                .build();
+        HttpClient httpClient = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
         factory.setHttpClient(httpClient);
         if(logger.isDebugEnabled()){
-            logger.debug("Factory is set to use connection time out and read time out");
+            logger.debug("Factory is set to use " + profile);
         }
         return factory;
     }
@@ -61,6 +99,17 @@ public final class HttpClientFactory {
      * @see org.apache.http.conn.ssl.X509HostnameVerifier
      */
     public static HttpClientConnectionManager getPooledConnectionManager(boolean isStrict){
+        return getPooledConnectionManager(isStrict, ConnectionPoolProfile.DEFAULT);
+    }
+
+    /**
+     * Pooled connection manager sized by given profile.  Has been setup for both HTTP and HTTPS connections.
+     * @param isStrict -   Flag which determines Host name verifier
+     * @param profile - Connection pool settings
+     * @return - Client connection manager
+     * @see org.apache.http.conn.ssl.X509HostnameVerifier
+     */
+    public static PoolingHttpClientConnectionManager getPooledConnectionManager(boolean isStrict, ConnectionPoolProfile profile){
         try {
             HttpClientBuilder builder = HttpClientBuilder.create();
 
@@ -80,12 +129,15 @@ public final class HttpClientFactory {
                     .register("https", sslConnectionFactory)
                     .build();
 
-            PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager(registry);
+            PoolingHttpClientConnectionManager cm;
+            if (profile.getTimeToLive() > 0) {
+                cm = new PoolingHttpClientConnectionManager(registry, null, null, null, profile.getTimeToLive(), TimeUnit.MILLISECONDS);
+            } else {
+                cm = new PoolingHttpClientConnectionManager(registry);
+            }
 
-            // Increase max total connection to 200
-            cm.setMaxTotal(200);
-            // Increase default max connection per route to 20
-            cm.setDefaultMaxPerRoute(20);
+            cm.setMaxTotal(profile.getMaxTotal());
+            cm.setDefaultMaxPerRoute(profile.getMaxPerRoute());
             if(logger.isDebugEnabled()){
                 logger.debug("Pooling connection manager configured successfully.");
             }
@@ -97,6 +149,56 @@ public final class HttpClientFactory {
     }
 
 
+    /**
+     * Creates a non-blocking Http Request Factory with time outs, pool sizes and I/O thread count from given profile.
+     * Requests are executed by a small number of I/O dispatch threads instead of the calling thread.
+     * @param isStrict -   Flag which determines Host name verifier
+     * @param profile - Connection pool and time out settings
+     * @return - {@link HttpComponentsAsyncClientHttpRequestFactory}
+     */
+    public static HttpComponentsAsyncClientHttpRequestFactory getAsyncRequestFactory(boolean isStrict, ConnectionPoolProfile profile){
+        try {
+            SSLContext sslContext = SSLContexts.custom()
+                    .useTLS()
+                    .build();
+
+            SSLIOSessionStrategy sslSessionStrategy = new SSLIOSessionStrategy(
+                    sslContext,
+                    new String[]{getTlsVersion()},
+                    null,
+                    SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+
+            Registry<SchemeIOSessionStrategy> registry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                    .register("http", NoopIOSessionStrategy.INSTANCE)
+                    .register("https", sslSessionStrategy)
+                    .build();
+
+            IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                    .setIoThreadCount(profile.getAsyncIoThreads())
+                    .setConnectTimeout(profile.getConnectTimeout())
+                    .setSoTimeout(profile.getReadTimeout())
+                    .build();
+
+            PoolingNHttpClientConnectionManager cm = new PoolingNHttpClientConnectionManager(
+                    new DefaultConnectingIOReactor(ioReactorConfig), registry);
+            cm.setMaxTotal(profile.getMaxTotal());
+            cm.setDefaultMaxPerRoute(profile.getMaxPerRoute());
+
+            CloseableHttpAsyncClient asyncClient = HttpAsyncClients.custom().setConnectionManager(cm).build();
+            HttpComponentsAsyncClientHttpRequestFactory factory = new HttpComponentsAsyncClientHttpRequestFactory(asyncClient);
+            factory.setConnectTimeout(profile.getConnectTimeout());
+            factory.setReadTimeout(profile.getReadTimeout());
+            factory.setConnectionRequestTimeout(profile.getConnectionRequestTimeout());
+            if(logger.isDebugEnabled()){
+                logger.debug("Async factory is set to use " + profile);
+            }
+            return factory;
+        }catch (Exception ex){
+            logger.error("Exception thrown while configuring async HttpConnectionFactory", ex);
+            throw new PayPalAccessException("Not able to get async HTTP Connection factory", ex);
+        }
+    }
+
     /**
      * Gets HostName verifier
      * @param isStrict - Flag which determines Host name verifier
@@ -117,7 +219,8 @@ public final class HttpClientFactory {
     }
 
     /**
-     * Gets the TLS version from jdk parameter.  Defaults to version 1.2 if not provided
+     * Gets the TLS version from jdk parameter.  Defaults to version 1.2 if not provided. Read on every call, so changing
+     * the property takes effect for clients created afterwards.
      * @return
      */
     public static String getTlsVersion() {
@@ -125,7 +228,10 @@ public final class HttpClientFactory {
         String tlsVer = System.getProperty("tls.protocol");
 
         if(StringUtils.isEmpty(tlsVer)) {
-            logger.info("defaulting to TLSv1.2 on jdk " + System.getProperty("java.specification.version"));
+            // called on every registry lookup, so only log at debug level
+            if(logger.isDebugEnabled()){
+                logger.debug("defaulting to TLSv1.2 on jdk " + System.getProperty("java.specification.version"));
+            }
             // note: java 7 defaults to version 1 but supports 1.2
             tlsVer = "TLSv1.2";
         }
@@ -0,0 +1,230 @@
+package org.springframework.social.openidconnect;
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.client.HttpComponentsAsyncClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of shared, pooled request factories. {@link HttpClientFactory} builds a new connection pool and SSL context
+ * on every call, so creating one per template throws away warm keep-alive connections. Templates and operations get
+ * their request factory from this registry instead, which hands out one factory per distinct client configuration
+ * (host name verification, TLS version and {@link ConnectionPoolProfile}).
+ * <p>
+ * When the profile enables idle eviction, one {@link IdleConnectionEvictor} is started per shared blocking pool.
+ * </p>
+ * <p>
+ * Declare this class as a bean to have all shared clients closed when the application context shuts down, or call
+ * {@link #closeAll()} directly.
+ * </p>
+ */
+public class HttpClientRegistry implements DisposableBean {
+
+    /**
+     * Logger for {@link HttpClientRegistry}
+     */
+    private static final Logger logger = Logger.getLogger(HttpClientRegistry.class);
+
+    /**
+     * Shared request factories by client configuration.
+     */
+    private static final ConcurrentMap<ClientKey, HttpComponentsClientHttpRequestFactory> FACTORIES = new ConcurrentHashMap<ClientKey, HttpComponentsClientHttpRequestFactory>();
+
+    /**
+     * Shared non-blocking request factories by client configuration.
+     */
+    private static final ConcurrentMap<ClientKey, HttpComponentsAsyncClientHttpRequestFactory> ASYNC_FACTORIES = new ConcurrentHashMap<ClientKey, HttpComponentsAsyncClientHttpRequestFactory>();
+
+    /**
+     * Evictors of shared pools which have idle eviction enabled.
+     */
+    private static final ConcurrentMap<ClientKey, IdleConnectionEvictor> EVICTORS = new ConcurrentHashMap<ClientKey, IdleConnectionEvictor>();
+
+    /**
+     * Guards creating and closing clients. Lookups of existing clients do not lock.
+     */
+    private static final Object LOCK = new Object();
+
+    /**
+     * Gets the shared request factory for given host name verification flag using default pool settings, creating it
+     * on first use.
+     *
+     * @param isStrict - Flag which determines Host name verifier
+     * @return - shared {@link HttpComponentsClientHttpRequestFactory}
+     */
+    public static HttpComponentsClientHttpRequestFactory getRequestFactory(boolean isStrict) {
+        return getRequestFactory(isStrict, ConnectionPoolProfile.DEFAULT);
+    }
+
+    /**
+     * Gets the shared request factory for given host name verification flag and pool profile, creating it on first use.
+     *
+     * @param isStrict - Flag which determines Host name verifier
+     * @param profile - Connection pool and time out settings
+     * @return - shared {@link HttpComponentsClientHttpRequestFactory}
+     */
+    public static HttpComponentsClientHttpRequestFactory getRequestFactory(boolean isStrict, ConnectionPoolProfile profile) {
+        ClientKey key = new ClientKey(isStrict, HttpClientFactory.getTlsVersion(), profile);
+        HttpComponentsClientHttpRequestFactory factory = FACTORIES.get(key);
+        if (factory == null) {
+            synchronized (LOCK) {
+                // factory and its evictor are registered together, so closeAll sees both or neither
+                factory = FACTORIES.get(key);
+                if (factory == null) {
+                    PoolingHttpClientConnectionManager connectionManager = HttpClientFactory.getPooledConnectionManager(isStrict, profile);
+                    factory = HttpClientFactory.getRequestFactory(connectionManager, profile);
+                    if (profile.isIdleEvictionEnabled()) {
+                        IdleConnectionEvictor evictor = new IdleConnectionEvictor(connectionManager,
+                                profile.getEvictionInterval(), profile.getMaxIdleTime());
+                        EVICTORS.put(key, evictor);
+                        evictor.start();
+                    }
+                    FACTORIES.put(key, factory);
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Created shared request factory for " + key);
+                    }
+                }
+            }
+        }
+        return factory;
+    }
+
+    /**
+     * Gets the shared non-blocking request factory for given host name verification flag and pool profile, creating it
+     * on first use. Idle eviction settings of the profile are ignored, see
+     * {@link ConnectionPoolProfile#withIdleEviction(long, long)}.
+     *
+     * @param isStrict - Flag which determines Host name verifier
+     * @param profile - Connection pool, time out and I/O thread settings
+     * @return - shared {@link HttpComponentsAsyncClientHttpRequestFactory}
+     */
+    public static HttpComponentsAsyncClientHttpRequestFactory getAsyncRequestFactory(boolean isStrict, ConnectionPoolProfile profile) {
+        ClientKey key = new ClientKey(isStrict, HttpClientFactory.getTlsVersion(), profile);
+        HttpComponentsAsyncClientHttpRequestFactory factory = ASYNC_FACTORIES.get(key);
+        if (factory == null) {
+            synchronized (LOCK) {
+                factory = ASYNC_FACTORIES.get(key);
+                if (factory == null) {
+                    factory = HttpClientFactory.getAsyncRequestFactory(isStrict, profile);
+                    ASYNC_FACTORIES.put(key, factory);
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Created shared async request factory for " + key);
+                    }
+                }
+            }
+        }
+        return factory;
+    }
+
+    /**
+     * Closes all shared clients and their connection pools. Factories handed out before this call must not be used
+     * afterwards; subsequent calls to {@link #getRequestFactory(boolean)} create fresh clients.
+     */
+    public static void closeAll() {
+        synchronized (LOCK) {
+            for (Map.Entry<ClientKey, HttpComponentsClientHttpRequestFactory> entry : FACTORIES.entrySet()) {
+                FACTORIES.remove(entry.getKey());
+                IdleConnectionEvictor evictor = EVICTORS.remove(entry.getKey());
+                if (evictor != null) {
+                    evictor.shutdown();
+                }
+                destroyQuietly(entry.getValue());
+            }
+            for (Map.Entry<ClientKey, HttpComponentsAsyncClientHttpRequestFactory> entry : ASYNC_FACTORIES.entrySet()) {
+                ASYNC_FACTORIES.remove(entry.getKey());
+                destroyQuietly(entry.getValue());
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("All shared http clients closed");
+        }
+    }
+
+    /**
+     * Number of shared clients currently open.
+     *
+     * @return - count of registered clients
+     */
+    public static int size() {
+        return FACTORIES.size() + ASYNC_FACTORIES.size();
+    }
+
+    /**
+     * Total number of connections closed by idle connection evictors of currently open pools.
+     *
+     * @return - evicted connection count
+     */
+    public static long getEvictedConnections() {
+        long evicted = 0;
+        for (IdleConnectionEvictor evictor : EVICTORS.values()) {
+            evicted += evictor.getEvictedConnections();
+        }
+        return evicted;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.springframework.beans.factory.DisposableBean#destroy()
+     */
+    @Override
+    public void destroy() {
+        closeAll();
+    }
+
+    private static void destroyQuietly(HttpComponentsClientHttpRequestFactory factory) {
+        try {
+            factory.destroy();
+        } catch (Exception ex) {
+            logger.warn("Exception thrown while closing shared http client", ex);
+        }
+    }
+
+    /**
+     * Identifies a client configuration.
+     */
+    private static final class ClientKey {
+
+        private final boolean isStrict;
+
+        private final String tlsVersion;
+
+        private final ConnectionPoolProfile profile;
+
+        ClientKey(boolean isStrict, String tlsVersion, ConnectionPoolProfile profile) {
+            this.isStrict = isStrict;
+            this.tlsVersion = tlsVersion;
+            this.profile = profile;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ClientKey)) {
+                return false;
+            }
+            ClientKey other = (ClientKey) obj;
+            return isStrict == other.isStrict && tlsVersion.equals(other.tlsVersion) && profile.equals(other.profile);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = isStrict ? 1 : 0;
+            result = 31 * result + tlsVersion.hashCode();
+            result = 31 * result + profile.hashCode();
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "isStrict=" + isStrict + ", tls=" + tlsVersion + ", " + profile;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.springframework.social.openidconnect;
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background thread which periodically closes expired connections and connections idle for longer than a given time
+ * in a connection pool. Without it, keep-alive sockets closed by PayPal while idle stay in the pool and fail the first
+ * request that leases them after a quiet period.
+ * <p>
+ * One evictor is started per shared pool by {@link HttpClientRegistry} when the {@link ConnectionPoolProfile} enables
+ * idle eviction. Pools of non-blocking clients need none: their I/O reactor notices connections closed by the server
+ * and drops them from the pool.
+ * </p>
+ */
+public class IdleConnectionEvictor extends Thread {
+
+    /**
+     * Logger for {@link IdleConnectionEvictor}
+     */
+    private static final Logger logger = Logger.getLogger(IdleConnectionEvictor.class);
+
+    /**
+     * Pool to clean up.
+     */
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    /**
+     * Time between eviction runs in milliseconds.
+     */
+    private final long evictionInterval;
+
+    /**
+     * Idle time in milliseconds after which a pooled connection is closed.
+     */
+    private final long maxIdleTime;
+
+    /**
+     * Number of pooled connections closed so far.
+     */
+    private final AtomicLong evictedConnections = new AtomicLong();
+
+    /**
+     * Number of eviction runs so far.
+     */
+    private final AtomicLong evictionRuns = new AtomicLong();
+
+    private volatile boolean shutdown;
+
+    /**
+     * Monitor waited on between runs. Not the thread itself, whose monitor {@link Thread#join()} uses.
+     */
+    private final Object monitor = new Object();
+
+    /**
+     * Creates a daemon evictor for given pool. Call {@link #start()} to begin evicting.
+     *
+     * @param connectionManager - Pool to clean up
+     * @param evictionInterval - Time between eviction runs in milliseconds
+     * @param maxIdleTime - Idle time in milliseconds after which a pooled connection is closed
+     */
+    public IdleConnectionEvictor(PoolingHttpClientConnectionManager connectionManager, long evictionInterval,
+            long maxIdleTime) {
+        super("paypal-connection-evictor");
+        setDaemon(true);
+        this.connectionManager = connectionManager;
+        this.evictionInterval = evictionInterval;
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!shutdown) {
+                synchronized (monitor) {
+                    if (!shutdown) {
+                        monitor.wait(evictionInterval);
+                    }
+                }
+                if (!shutdown) {
+                    try {
+                        evict();
+                    } catch (RuntimeException ex) {
+                        // keep the thread alive, the next run may well succeed
+                        logger.error("Connection eviction failed", ex);
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Connection evictor stopped after evicting " + evictedConnections.get() + " connections");
+        }
+    }
+
+    /**
+     * Closes expired and idle connections once. Failures are logged by the evictor thread, which keeps running. Connections leased or released concurrently can make the evicted count
+     * slightly inaccurate.
+     */
+    void evict() {
+        int availableBefore = connectionManager.getTotalStats().getAvailable();
+        connectionManager.closeExpiredConnections();
+        if (maxIdleTime > 0) {
+            connectionManager.closeIdleConnections(maxIdleTime, TimeUnit.MILLISECONDS);
+        }
+        int evicted = availableBefore - connectionManager.getTotalStats().getAvailable();
+        evictionRuns.incrementAndGet();
+        if (evicted > 0) {
+            evictedConnections.addAndGet(evicted);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Evicted " + evicted + " idle or expired connections");
+            }
+        }
+    }
+
+    /**
+     * Stops the evictor. The pool itself is not closed.
+     */
+    public void shutdown() {
+        shutdown = true;
+        synchronized (monitor) {
+            monitor.notifyAll();
+        }
+    }
+
+    /**
+     * Gets number of pooled connections closed so far.
+     *
+     * @return - evicted connection count
+     */
+    public long getEvictedConnections() {
+        return evictedConnections.get();
+    }
+
+    /**
+     * Gets number of eviction runs so far.
+     *
+     * @return - eviction run count
+     */
+    public long getEvictionRuns() {
+        return evictionRuns.get();
+    }
+}
@@ -1,5 +1,8 @@
 package org.springframework.social.openidconnect;
 
+import org.springframework.core.task.AsyncListenableTaskExecutor;
+import org.springframework.social.openidconnect.api.impl.PayPalProfileAuditLogger;
+import org.springframework.social.openidconnect.api.impl.PayPalProfileCache;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
@@ -45,6 +48,26 @@ public class PayPalConnectionFactoryBuilder {
      */
     private boolean strictHostNameVerifier = true;
 
+    /**
+     * Connection pool and time out settings for calls to PayPal Access.
+     */
+    private ConnectionPoolProfile poolProfile = ConnectionPoolProfile.DEFAULT;
+
+    /**
+     * Executor for non-blocking calls, if they should run on threads rather than a non-blocking http client.
+     */
+    private AsyncListenableTaskExecutor taskExecutor;
+
+    /**
+     * Cache for user profiles, null if profiles should not be cached.
+     */
+    private PayPalProfileCache profileCache;
+
+    /**
+     * Log one of every so many user profiles at INFO level.
+     */
+    private int profileAuditSampleRate = 1;
+
     /**
      * Builds a {@link PayPalConnectionFactory}. ClientId, AppSecret and scope are mandatory values, hence asserts for the
      * same. Other properteis are optional, but you need to set all 3 urls together. Assertion for that requirement is
@@ -63,9 +86,18 @@ public class PayPalConnectionFactoryBuilder {
             Assert.hasText(authUrl, msg);
             Assert.hasText(tokenUrl, msg);
             Assert.hasText(userInfoUrl, msg);
-            serviceProvider = new PayPalServiceProvider(clientId, appSecret, scope, authUrl, tokenUrl, userInfoUrl, strictHostNameVerifier);
+            serviceProvider = new PayPalServiceProvider(clientId, appSecret, scope, authUrl, tokenUrl, userInfoUrl, strictHostNameVerifier, poolProfile);
         } else {
-            serviceProvider = new PayPalServiceProvider(clientId, appSecret, scope, strictHostNameVerifier);
+            serviceProvider = new PayPalServiceProvider(clientId, appSecret, scope, strictHostNameVerifier, poolProfile);
+        }
+        if (taskExecutor != null) {
+            serviceProvider.setTaskExecutor(taskExecutor);
+        }
+        if (profileCache != null) {
+            serviceProvider.setProfileCache(profileCache);
+        }
+        if (profileAuditSampleRate != 1) {
+            serviceProvider.setAuditLogger(new PayPalProfileAuditLogger(profileAuditSampleRate));
         }
         factory = new PayPalConnectionFactory(serviceProvider);
         return factory;
@@ -148,4 +180,55 @@ public class PayPalConnectionFactoryBuilder {
         this.strictHostNameVerifier = isStrict;
         return this;
     }
+
+    /**
+     * Sets connection pool and time out settings. Only set this if you want to override default.
+     *
+     * @param poolProfile - Connection pool profile.
+     * @return - {@link PayPalConnectionFactoryBuilder}
+     */
+    public PayPalConnectionFactoryBuilder withConnectionPoolProfile(ConnectionPoolProfile poolProfile) {
+        Assert.notNull(poolProfile, "poolProfile cannot be null");
+        this.poolProfile = poolProfile;
+        return this;
+    }
+
+    /**
+     * Sets executor on which non-blocking token and user info calls run their blocking counterparts. Only set this if
+     * threads are cheap, e.g. an executor starting a virtual thread per task on JDK 21 or later. By default a
+     * non-blocking http client is used.
+     *
+     * @param taskExecutor - Executor for non-blocking calls
+     * @return - {@link PayPalConnectionFactoryBuilder}
+     */
+    public PayPalConnectionFactoryBuilder withTaskExecutor(AsyncListenableTaskExecutor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+        return this;
+    }
+
+    /**
+     * Enables caching of user profiles by access token, so one sign in calls user info endpoint once rather than once
+     * per profile lookup. Disabled by default.
+     *
+     * @param maxSize - Maximum number of tokens cached
+     * @param timeToLive - Time in milliseconds a profile is cached at most, less if the token expires earlier
+     * @return - {@link PayPalConnectionFactoryBuilder}
+     */
+    public PayPalConnectionFactoryBuilder withProfileCache(int maxSize, long timeToLive) {
+        this.profileCache = new PayPalProfileCache(maxSize, timeToLive);
+        return this;
+    }
+
+    /**
+     * Sets how many user profiles are logged at INFO level. Only set this if you want to override default, which logs
+     * every profile.
+     *
+     * @param sampleRate - Log one of every <code>sampleRate</code> profiles, 0 to disable profile logging
+     * @return - {@link PayPalConnectionFactoryBuilder}
+     */
+    public PayPalConnectionFactoryBuilder withProfileAuditSampleRate(int sampleRate) {
+        Assert.isTrue(sampleRate >= 0, "sampleRate cannot be negative");
+        this.profileAuditSampleRate = sampleRate;
+        return this;
+    }
 }
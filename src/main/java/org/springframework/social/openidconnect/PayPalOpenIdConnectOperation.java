@@ -1,7 +1,14 @@
 package org.springframework.social.openidconnect;
 
 import org.apache.log4j.Logger;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.task.AsyncListenableTaskExecutor;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.http.converter.FormHttpMessageConverter;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
@@ -10,18 +17,26 @@ import org.springframework.social.oauth2.AccessGrant;
 import org.springframework.social.oauth2.GrantType;
 import org.springframework.social.oauth2.OAuth2Parameters;
 import org.springframework.social.oauth2.OAuth2Template;
+import org.springframework.social.openidconnect.api.impl.PayPalProfileCache;
 import org.springframework.social.openidconnect.support.OpenIdAccessGrant;
 import org.springframework.social.support.ClientHttpRequestFactorySelector;
+import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.util.Assert;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureAdapter;
+import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.client.RestTemplate;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Implements an OAuth facility for PayPal with the predefined API URLs.
@@ -33,6 +48,14 @@ public class PayPalOpenIdConnectOperation extends OAuth2Template {
      */
     private static Logger logger = Logger.getLogger(PayPalOpenIdConnectOperation.class);
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Body type of token service responses.
+     */
+    private static final ParameterizedTypeReference<Map<String, Object>> TOKEN_RESPONSE_TYPE = new ParameterizedTypeReference<Map<String, Object>>() {
+    };
+
     /**
      * Scope to be included in auth request.
      */
@@ -41,6 +64,40 @@ public class PayPalOpenIdConnectOperation extends OAuth2Template {
     private String clientId;
     private String clientSecret;
 
+    /**
+     * Basic authorization header value for client credentials, computed once.
+     */
+    private final String authorization;
+
+    /**
+     * Shared request factory, set before the rest template is lazily created.
+     */
+    private ClientHttpRequestFactory requestFactory;
+
+    /**
+     * Token endpoint, used by non-blocking token exchange.
+     */
+    private String tokenUrl;
+
+    private boolean isStrict;
+
+    private ConnectionPoolProfile poolProfile;
+
+    /**
+     * Non-blocking rest template, created on first non-blocking call.
+     */
+    private volatile AsyncRestTemplate asyncRestTemplate;
+
+    /**
+     * Executor for non-blocking calls. If null, a non-blocking http client is used instead.
+     */
+    private AsyncListenableTaskExecutor taskExecutor;
+
+    /**
+     * Profile cache to register token expiry times with, may be null.
+     */
+    private PayPalProfileCache profileCache;
+
     /**
      * Sets up Template to connect PayPal Access.
      *
@@ -50,15 +107,22 @@ public class PayPalOpenIdConnectOperation extends OAuth2Template {
      * @param isStrict     -   Flag which determines Host name verifier
      */
     public PayPalOpenIdConnectOperation(String clientId, String clientSecret, String scope, boolean isStrict) {
-        super(clientId, clientSecret, PayPalConnectionProperties.getAuthorizeEndpoint(), PayPalConnectionProperties
-                .getTokenEndpoint());
-        this.setUseParametersForClientAuthentication(false);
-        this.clientId = clientId;
-        this.clientSecret = clientSecret;
-        this.scope = scope;
-        //Override request factory after rest template has been initialized
-        setRequestFactory(HttpClientFactory.getRequestFactory(isStrict));
+        this(clientId, clientSecret, scope, isStrict, ConnectionPoolProfile.DEFAULT);
+    }
 
+    /**
+     * Sets up Template to connect PayPal Access with given connection pool settings.
+     *
+     * @param clientId     - Provided by developer portal when you register your application.
+     * @param clientSecret - Provided by developer portal when you register your application.
+     * @param scope        - List with scopes
+     * @param isStrict     -   Flag which determines Host name verifier
+     * @param poolProfile  - Connection pool and time out settings
+     */
+    public PayPalOpenIdConnectOperation(String clientId, String clientSecret, String scope, boolean isStrict,
+                                        ConnectionPoolProfile poolProfile) {
+        this(clientId, clientSecret, scope, PayPalConnectionProperties.getAuthorizeEndpoint(),
+                PayPalConnectionProperties.getTokenEndpoint(), isStrict, poolProfile);
     }
 
     /**
@@ -74,13 +138,34 @@ public class PayPalOpenIdConnectOperation extends OAuth2Template {
      */
     public PayPalOpenIdConnectOperation(String clientId, String clientSecret, String scope, String authorizeEndPoint,
                                         String tokenEndPoint, boolean isStrict) {
+        this(clientId, clientSecret, scope, authorizeEndPoint, tokenEndPoint, isStrict, ConnectionPoolProfile.DEFAULT);
+    }
+
+    /**
+     * Sets up Template to connect PayPal Access using injected endpoints and connection pool settings.
+     *
+     * @param clientId          - Provided by developer portal when you register your application.
+     * @param clientSecret      - Provided by developer portal when you register your application.
+     * @param authorizeEndPoint - PayPal Access authorize end point.
+     * @param scope             - List with scopes
+     * @param tokenEndPoint     - PayPal Access token end point.
+     * @param isStrict          -   Flag which determines Host name verifier
+     * @param poolProfile       - Connection pool and time out settings
+     */
+    public PayPalOpenIdConnectOperation(String clientId, String clientSecret, String scope, String authorizeEndPoint,
+                                        String tokenEndPoint, boolean isStrict, ConnectionPoolProfile poolProfile) {
         super(clientId, clientSecret, authorizeEndPoint, tokenEndPoint);
         this.scope = scope;
         this.setUseParametersForClientAuthentication(false);
         this.clientId = clientId;
         this.clientSecret = clientSecret;
-        //Override request factory after rest template has been initialized
-        setRequestFactory(HttpClientFactory.getRequestFactory(isStrict));
+        this.authorization = PreemptiveBasicAuthClientHttpRequestInterceptor.createAuthorization(clientId, clientSecret, UTF8);
+        this.tokenUrl = tokenEndPoint;
+        this.isStrict = isStrict;
+        this.poolProfile = poolProfile;
+        //Rest template is created lazily on first access, so it picks up the shared request factory
+        this.requestFactory = HttpClientRegistry.getRequestFactory(isStrict, poolProfile);
+        setRequestFactory(requestFactory);
     }
 
     /**
@@ -96,7 +181,12 @@ public class PayPalOpenIdConnectOperation extends OAuth2Template {
      */
     @Override
     protected AccessGrant createAccessGrant	(String accessToken, String scope, String refreshToken, Long expiresIn, Map<String, Object> response) {
-        return new OpenIdAccessGrant(accessToken, scope, refreshToken, expiresIn, (String) response.get("id_token"));
+        OpenIdAccessGrant accessGrant = new OpenIdAccessGrant(accessToken, scope, refreshToken, expiresIn,
+                (String) response.get("id_token"));
+        if (profileCache != null) {
+            profileCache.setTokenExpireTime(accessToken, accessGrant.getExpireTime());
+        }
+        return accessGrant;
     }
 
     /*
@@ -129,9 +219,114 @@ public class PayPalOpenIdConnectOperation extends OAuth2Template {
         return authorizeUrl;
     }
 
+    /**
+     * Exchanges authorization code for an access grant without blocking the calling thread. Does the same token
+     * service call as {@link #exchangeForAccess(String, String, MultiValueMap)}, either on the task executor if one is
+     * set or on a shared non-blocking client.
+     *
+     * @param authorizationCode    - the authorization code returned by PayPal Access upon user authorization
+     * @param redirectUri          - the authorization callback url
+     * @param additionalParameters - any additional parameters to be sent when exchanging the authorization code, may
+     *                             be null
+     * @return - future completed with {@link OpenIdAccessGrant}
+     */
+    public ListenableFuture<AccessGrant> exchangeForAccessAsync(final String authorizationCode, final String redirectUri,
+                                                                final MultiValueMap<String, String> additionalParameters) {
+        if (taskExecutor != null) {
+            return taskExecutor.submitListenable(new Callable<AccessGrant>() {
+                @Override
+                public AccessGrant call() {
+                    return exchangeForAccess(authorizationCode, redirectUri, additionalParameters);
+                }
+            });
+        }
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<String, String>();
+        params.set("code", authorizationCode);
+        params.set("redirect_uri", redirectUri);
+        params.set("grant_type", "authorization_code");
+        if (additionalParameters != null) {
+            params.putAll(additionalParameters);
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        headers.set("Authorization", authorization);
+        ListenableFuture<ResponseEntity<Map<String, Object>>> response = getAsyncRestTemplate().exchange(tokenUrl,
+                HttpMethod.POST, new HttpEntity<MultiValueMap<String, String>>(params, headers), TOKEN_RESPONSE_TYPE);
+        return new ListenableFutureAdapter<AccessGrant, ResponseEntity<Map<String, Object>>>(response) {
+            @Override
+            protected AccessGrant adapt(ResponseEntity<Map<String, Object>> entity) throws ExecutionException {
+                Map<String, Object> result = entity.getBody();
+                if (result == null) {
+                    throw new PayPalAccessException("Access token response was empty", null);
+                }
+                return createAccessGrant((String) result.get("access_token"), (String) result.get("scope"),
+                        (String) result.get("refresh_token"), getLongValue(result, "expires_in"), result);
+            }
+        };
+    }
+
+    /**
+     * Sets executor used by {@link #exchangeForAccessAsync(String, String, MultiValueMap)} instead of a non-blocking
+     * http client.
+     *
+     * @param taskExecutor - Executor running blocking calls, null to use a non-blocking http client
+     */
+    public void setTaskExecutor(AsyncListenableTaskExecutor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+    }
+
+    /**
+     * Sets profile cache which is told when issued access tokens expire.
+     *
+     * @param profileCache - Profile cache, may be null
+     */
+    public void setProfileCache(PayPalProfileCache profileCache) {
+        this.profileCache = profileCache;
+    }
+
+    /**
+     * Gets Basic authorization header value for the client credentials, shared by token and user info calls.
+     *
+     * @return - Authorization header value
+     */
+    public String getAuthorization() {
+        return authorization;
+    }
+
     @Override
     protected RestTemplate createRestTemplate() {
-        RestTemplate restTemplate = new RestTemplate(ClientHttpRequestFactorySelector.getRequestFactory());
+        RestTemplate restTemplate = new RestTemplate(requestFactory != null ? requestFactory : ClientHttpRequestFactorySelector.getRequestFactory());
+        restTemplate.setMessageConverters(createMessageConverters());
+        restTemplate.getInterceptors().add(new PreemptiveBasicAuthClientHttpRequestInterceptor(authorization));
+        return restTemplate;
+    }
+
+    /**
+     * Gets non-blocking rest template, creating it on first use with a shared non-blocking request factory.
+     *
+     * @return - {@link AsyncRestTemplate}
+     */
+    private AsyncRestTemplate getAsyncRestTemplate() {
+        AsyncRestTemplate template = asyncRestTemplate;
+        if (template == null) {
+            synchronized (this) {
+                template = asyncRestTemplate;
+                if (template == null) {
+                    template = new AsyncRestTemplate(HttpClientRegistry.getAsyncRequestFactory(isStrict, poolProfile));
+                    template.setMessageConverters(createMessageConverters());
+                    asyncRestTemplate = template;
+                }
+            }
+        }
+        return template;
+    }
+
+    /**
+     * Message converters for token service responses.
+     *
+     * @return - form and json converters
+     */
+    private List<HttpMessageConverter<?>> createMessageConverters() {
         FormHttpMessageConverter formMessageConverter = new FormHttpMessageConverter() {
             public boolean canRead(Class<?> clazz, MediaType mediaType) {
                 if (mediaType != null && mediaType.includes(MediaType.APPLICATION_JSON)) {
@@ -147,10 +342,19 @@ public class PayPalOpenIdConnectOperation extends OAuth2Template {
         List<HttpMessageConverter<?>> converters = new ArrayList<HttpMessageConverter<?>>();
         converters.add(formMessageConverter);
         converters.add(jsonConverter);
+        return converters;
+    }
 
-        restTemplate.setMessageConverters(converters);
-        restTemplate.getInterceptors().add(new PreemptiveBasicAuthClientHttpRequestInterceptor(clientId, clientSecret));
-        return restTemplate;
+    /**
+     * Reads a numeric token response value which may come back as a number or a string.
+     *
+     * @param map - token response
+     * @param key - parameter name
+     * @return - value or null if absent
+     */
+    private static Long getLongValue(Map<String, Object> map, String key) {
+        Object value = map.get(key);
+        return value != null ? Long.valueOf(String.valueOf(value)) : null;
     }
 
     /**
@@ -171,7 +375,7 @@ public class PayPalOpenIdConnectOperation extends OAuth2Template {
      *
      * @return - generated nonce
      */
-    private String createNonce() {
+    String createNonce() {
         Random random = new Random();
         int randomInt = random.nextInt();
         byte[] randomByte = {Integer.valueOf(randomInt).byteValue()};
@@ -1,8 +1,16 @@
 package org.springframework.social.openidconnect;
 
+import org.springframework.core.task.AsyncListenableTaskExecutor;
 import org.springframework.social.oauth2.AbstractOAuth2ServiceProvider;
+import org.springframework.social.openidconnect.api.AsyncPayPal;
 import org.springframework.social.openidconnect.api.PayPal;
+import org.springframework.social.openidconnect.api.impl.AsyncPayPalTemplate;
+import org.springframework.social.openidconnect.api.impl.ExecutorPayPalTemplate;
+import org.springframework.social.openidconnect.api.impl.PayPalProfileAuditLogger;
+import org.springframework.social.openidconnect.api.impl.PayPalProfileCache;
 import org.springframework.social.openidconnect.api.impl.PayPalTemplate;
+import org.springframework.social.openidconnect.api.impl.UserInfoRequestCoalescer;
+import org.springframework.util.Assert;
 
 /**
  * Registers paypal as service provider.
@@ -15,10 +23,40 @@ public class PayPalServiceProvider extends AbstractOAuth2ServiceProvider<PayPal>
     private String userInfoUrl;
 
     private boolean isStrict;
+
+    /**
+     * Connection pool settings shared by token and user info calls.
+     */
+    private ConnectionPoolProfile poolProfile;
+
+    /**
+     * Executor for non-blocking calls. If null, a non-blocking http client is used instead.
+     */
+    private AsyncListenableTaskExecutor taskExecutor;
+
+    /**
+     * Profile cache shared by all templates, may be null.
+     */
+    private PayPalProfileCache profileCache;
+
+    /**
+     * Lets concurrent user info calls for the same token share one call, may be null.
+     */
+    private UserInfoRequestCoalescer requestCoalescer = new UserInfoRequestCoalescer();
+
+    /**
+     * Logs profiles returned by user info endpoint.
+     */
+    private PayPalProfileAuditLogger auditLogger = PayPalProfileAuditLogger.DEFAULT;
     
     private String clientId;
     private String appSecret;
 
+    /**
+     * Basic authorization header value for client credentials, computed once and shared by token and user info calls.
+     */
+    private String authorization;
+
     /**
      * Creates a new instance of {@linkplain PayPalOpenIdConnectOperation} and passes it to superclass.
      * 
@@ -28,10 +66,27 @@ public class PayPalServiceProvider extends AbstractOAuth2ServiceProvider<PayPal>
      * @param isStrict -   Flag which determines Host name verifier
      */
     public PayPalServiceProvider(String clientId, String appSecret, String scope, boolean isStrict) {
-        super(new PayPalOpenIdConnectOperation(clientId, appSecret, scope, isStrict));
+        this(clientId, appSecret, scope, isStrict, ConnectionPoolProfile.DEFAULT);
+    }
+
+    /**
+     * Creates a new instance of {@linkplain PayPalOpenIdConnectOperation} with given connection pool settings and
+     * passes it to superclass.
+     *
+     * @param clientId - Provided by developer portal when you register your application.
+     * @param appSecret - Provided by developer portal when you register your application.
+     * @param scope - List with scopes
+     * @param isStrict -   Flag which determines Host name verifier
+     * @param poolProfile - Connection pool and time out settings
+     */
+    public PayPalServiceProvider(String clientId, String appSecret, String scope, boolean isStrict,
+            ConnectionPoolProfile poolProfile) {
+        super(new PayPalOpenIdConnectOperation(clientId, appSecret, scope, isStrict, poolProfile));
         this.clientId = clientId;
         this.appSecret = appSecret;
+        this.authorization = ((PayPalOpenIdConnectOperation) getOAuthOperations()).getAuthorization();
         this.isStrict = isStrict;
+        this.poolProfile = poolProfile;
     }
 
     /**
@@ -47,19 +102,128 @@ public class PayPalServiceProvider extends AbstractOAuth2ServiceProvider<PayPal>
      */
     public PayPalServiceProvider(String clientId, String appSecret, String scope, String authorizeEndPoint,
             String tokenServiceEndPoint, String userInfoEndPoint, boolean isStrict) {
-        super(new PayPalOpenIdConnectOperation(clientId, appSecret, scope, authorizeEndPoint, tokenServiceEndPoint, isStrict));
+        this(clientId, appSecret, scope, authorizeEndPoint, tokenServiceEndPoint, userInfoEndPoint, isStrict,
+                ConnectionPoolProfile.DEFAULT);
+    }
+
+    /**
+     * Creates a new instance of {@linkplain PayPalOpenIdConnectOperation} with given endpoints and connection pool
+     * settings and passes it to superclass.
+     *
+     * @param clientId - Provided by developer portal when you register your application.
+     * @param appSecret - Provided by developer portal when you register your application.
+     * @param authorizeEndPoint - Autorize endpoint for PayPal Access
+     * @param tokenServiceEndPoint - Token service endpoint
+     * @param userInfoEndPoint - User info end point
+     * @param scope - List with scopes
+     * @param isStrict -   Flag which determines Host name verifier
+     * @param poolProfile - Connection pool and time out settings
+     */
+    public PayPalServiceProvider(String clientId, String appSecret, String scope, String authorizeEndPoint,
+            String tokenServiceEndPoint, String userInfoEndPoint, boolean isStrict, ConnectionPoolProfile poolProfile) {
+        super(new PayPalOpenIdConnectOperation(clientId, appSecret, scope, authorizeEndPoint, tokenServiceEndPoint,
+                isStrict, poolProfile));
         this.clientId = clientId;
         this.appSecret = appSecret;
+        this.authorization = ((PayPalOpenIdConnectOperation) getOAuthOperations()).getAuthorization();
         this.userInfoUrl = userInfoEndPoint;
         this.isStrict = isStrict;
+        this.poolProfile = poolProfile;
     }
 
     @Override
     public PayPal getApi(String accessToken) {
-        PayPalTemplate template = new PayPalTemplate(accessToken, userInfoUrl, isStrict);
+        PayPalTemplate template = new PayPalTemplate(accessToken, userInfoUrl, isStrict, poolProfile);
         template.setClientId(clientId);
         template.setAppSecret(appSecret);
+        template.setAuthorization(authorization);
+        template.setProfileCache(profileCache);
+        template.setRequestCoalescer(requestCoalescer);
+        template.setAuditLogger(auditLogger);
 		return template;
     }
 
+    /**
+     * Gets a non-blocking binding to PayPal Access for given access token. If a task executor is set, blocking calls
+     * run on it, otherwise one non-blocking client is shared per pool profile. Either way calls do not hold the calling
+     * thread while waiting on PayPal.
+     *
+     * @param accessToken - Access token given by PayPal Access.
+     * @return - {@link AsyncPayPal}
+     */
+    public AsyncPayPal getAsyncApi(String accessToken) {
+        if (taskExecutor != null) {
+            return new ExecutorPayPalTemplate(getApi(accessToken), taskExecutor);
+        }
+        AsyncPayPalTemplate template = new AsyncPayPalTemplate(accessToken, userInfoUrl,
+                HttpClientRegistry.getAsyncRequestFactory(isStrict, poolProfile));
+        template.setClientId(clientId);
+        template.setAppSecret(appSecret);
+        template.setAuthorization(authorization);
+        template.setProfileCache(profileCache);
+        template.setRequestCoalescer(requestCoalescer);
+        template.setAuditLogger(auditLogger);
+        return template;
+    }
+
+    /**
+     * Sets executor used for non-blocking calls, instead of a non-blocking http client. Blocking token and user info
+     * calls are submitted to it, which pays off when its threads are cheap, e.g. virtual threads on JDK 21 or later.
+     *
+     * @param taskExecutor - Executor running blocking calls, null to use a non-blocking http client
+     */
+    public void setTaskExecutor(AsyncListenableTaskExecutor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+        ((PayPalOpenIdConnectOperation) getOAuthOperations()).setTaskExecutor(taskExecutor);
+    }
+
+    /**
+     * Sets cache for user profiles, shared by all templates of this provider so that each token triggers one user info
+     * call. Token expiry times from the token exchange are registered with the cache.
+     *
+     * @param profileCache - Profile cache, null to disable caching
+     */
+    public void setProfileCache(PayPalProfileCache profileCache) {
+        this.profileCache = profileCache;
+        ((PayPalOpenIdConnectOperation) getOAuthOperations()).setProfileCache(profileCache);
+    }
+
+    /**
+     * Gets profile cache shared by all templates, e.g. to read its statistics.
+     *
+     * @return - profile cache, null if caching is disabled
+     */
+    public PayPalProfileCache getProfileCache() {
+        return profileCache;
+    }
+
+    /**
+     * Sets coalescer shared by all templates of this provider. By default concurrent user info calls for the same token
+     * share one call.
+     *
+     * @param requestCoalescer - Request coalescer, null to let every call go to user info endpoint
+     */
+    public void setRequestCoalescer(UserInfoRequestCoalescer requestCoalescer) {
+        this.requestCoalescer = requestCoalescer;
+    }
+
+    /**
+     * Gets coalescer shared by all templates, e.g. to read its statistics.
+     *
+     * @return - request coalescer, null if disabled
+     */
+    public UserInfoRequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /**
+     * Sets audit logger for profiles returned by user info endpoint. By default every profile is logged at INFO level.
+     *
+     * @param auditLogger - Profile audit logger
+     */
+    public void setAuditLogger(PayPalProfileAuditLogger auditLogger) {
+        Assert.notNull(auditLogger, "auditLogger cannot be null");
+        this.auditLogger = auditLogger;
+    }
+
 }
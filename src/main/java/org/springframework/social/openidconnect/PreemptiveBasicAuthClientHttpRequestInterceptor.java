@@ -16,25 +16,47 @@ import org.springframework.security.crypto.codec.Base64;
  */
 public class PreemptiveBasicAuthClientHttpRequestInterceptor implements ClientHttpRequestInterceptor {
 	
-	private final String username;
-	
-	private final String password;
-	
-	private final Charset charset;
+	private final String authorization;
 
 	public PreemptiveBasicAuthClientHttpRequestInterceptor(String username, String password) {
 		this(username, password, Charset.forName("UTF-8"));
 	}
 	
 	public PreemptiveBasicAuthClientHttpRequestInterceptor(String username, String password, Charset charset) {
-		this.username = username;
-		this.password = password;	
-		this.charset = charset;
+		this(createAuthorization(username, password, charset));
+	}
+
+	/**
+	 * Creates interceptor with a precomputed Authorization header value, as returned by
+	 * {@link #createAuthorization(String, String, Charset)}.
+	 * @param authorization the Authorization header value
+	 */
+	public PreemptiveBasicAuthClientHttpRequestInterceptor(String authorization) {
+		this.authorization = authorization;
 	}
 
 	public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
-		request.getHeaders().set("Authorization", "Basic " + new String(Base64.encode((username + ":" + password).getBytes(charset)), charset));
+		request.getHeaders().set("Authorization", authorization);
 		return execution.execute(request, body);
 	}
 
+	/**
+	 * @return the Authorization header value set on every request
+	 */
+	public String getAuthorization() {
+		return authorization;
+	}
+
+	/**
+	 * Encodes HTTP Basic credentials as Authorization header value. Credentials do not change, so callers compute this
+	 * once and reuse it for every request.
+	 * @param username the user name, e.g. client id
+	 * @param password the password, e.g. app secret
+	 * @param charset charset of the credentials
+	 * @return the Authorization header value
+	 */
+	public static String createAuthorization(String username, String password, Charset charset) {
+		return "Basic " + new String(Base64.encode((username + ":" + password).getBytes(charset)), charset);
+	}
+
 }
@@ -0,0 +1,33 @@
+package org.springframework.social.openidconnect;
+
+import org.springframework.social.connect.ConnectionData;
+
+/**
+ * Stored connection found by a {@link RankedConnectionSource}: the connection data and its rank among the connections
+ * of the same user and provider.
+ */
+public final class RankedConnection {
+
+    private final ConnectionData connectionData;
+
+    private final int rank;
+
+    /**
+     * Constructor which accepts the connection data and its rank.
+     *
+     * @param connectionData - Stored connection data
+     * @param rank - Stored rank, 1 for the primary connection
+     */
+    public RankedConnection(ConnectionData connectionData, int rank) {
+        this.connectionData = connectionData;
+        this.rank = rank;
+    }
+
+    public ConnectionData getConnectionData() {
+        return connectionData;
+    }
+
+    public int getRank() {
+        return rank;
+    }
+}
@@ -0,0 +1,21 @@
+package org.springframework.social.openidconnect;
+
+import java.util.List;
+
+/**
+ * Finds stored connections of a user together with their ranks, so a copy of the user, like the one loaded by
+ * {@link org.springframework.social.openidconnect.inmemory.BoundedInMemoryUsersConnectionRepository}, keeps the ranks of
+ * the repository of record instead of renumbering them. Implemented by
+ * {@link org.springframework.social.openidconnect.inmemory.InMemoryUsersConnectionRepository} and
+ * {@link org.springframework.social.openidconnect.jdbc.OpenIdJdbcUsersConnectionRepository}.
+ */
+public interface RankedConnectionSource {
+
+    /**
+     * Finds all connections of given user.
+     *
+     * @param userId - Local user id
+     * @return - connections ordered by provider id and rank, empty if none
+     */
+    List<RankedConnection> findRankedConnections(String userId);
+}
@@ -0,0 +1,296 @@
+package org.springframework.social.openidconnect;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.social.connect.Connection;
+import org.springframework.social.connect.ConnectionData;
+import org.springframework.social.connect.UsersConnectionRepository;
+import org.springframework.social.oauth2.AccessGrant;
+import org.springframework.social.oauth2.OAuth2Operations;
+import org.springframework.social.openidconnect.support.OpenIdAccessGrant;
+import org.springframework.social.openidconnect.support.OpenIdConnectionData;
+import org.springframework.util.Assert;
+
+/**
+ * Refreshes access tokens of stored PayPal connections before they expire, so user requests do not wait for the token
+ * service. Every run asks the {@link ExpiringConnectionSource} for connections expiring within the refresh ahead time,
+ * in pages of <code>batchSize</code>, refreshes each through
+ * {@link PayPalOpenIdConnectOperation#refreshAccess(String, org.springframework.util.MultiValueMap)} and writes the new
+ * tokens back with {@link org.springframework.social.connect.ConnectionRepository#updateConnection(Connection)}.
+ * <p>
+ * Refreshes are paced to at most <code>maxRefreshesPerSecond</code>, so a large number of tokens expiring together does
+ * not flood the token service. A failed refresh is logged and retried in the next run. When the token service returns no
+ * new refresh or id token, the stored ones are kept.
+ * </p>
+ * <p>
+ * Call {@link #start()} to run periodically on a daemon thread, and {@link #stop()} or declare this class as a bean to
+ * stop it.
+ * </p>
+ */
+public class TokenRefreshScheduler implements DisposableBean {
+
+    /**
+     * Logger for {@link TokenRefreshScheduler}
+     */
+    private static final Logger logger = Logger.getLogger(TokenRefreshScheduler.class);
+
+    private final ExpiringConnectionSource connectionSource;
+
+    private final UsersConnectionRepository usersConnectionRepository;
+
+    private final PayPalConnectionFactory connectionFactory;
+
+    private final OAuth2Operations oauthOperations;
+
+    private long refreshAhead = 5 * 60 * 1000;
+
+    private long interval = 60 * 1000;
+
+    private int batchSize = 100;
+
+    private int maxRefreshesPerSecond = 10;
+
+    /**
+     * Time in nanoseconds before which the next refresh may not start.
+     */
+    private long nextRefreshAt = System.nanoTime();
+
+    /**
+     * Guards starting and stopping, as runs hold the monitor of this scheduler.
+     */
+    private final Object lifecycleMonitor = new Object();
+
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong runs = new AtomicLong();
+
+    private final AtomicLong refreshed = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Constructor which accepts where connections are stored and the connection factory refreshing them.
+     *
+     * @param connectionSource - Finds connections nearing expiry
+     * @param usersConnectionRepository - Repository refreshed connections are written to
+     * @param connectionFactory - PayPal connection factory, its operations call the token service
+     */
+    public TokenRefreshScheduler(ExpiringConnectionSource connectionSource,
+            UsersConnectionRepository usersConnectionRepository, PayPalConnectionFactory connectionFactory) {
+        this.connectionSource = connectionSource;
+        this.usersConnectionRepository = usersConnectionRepository;
+        this.connectionFactory = connectionFactory;
+        this.oauthOperations = connectionFactory.getOAuthOperations();
+    }
+
+    /**
+     * Sets how long before expiry tokens are refreshed. Defaults to 5 minutes, and should be larger than the interval.
+     *
+     * @param refreshAhead - Time in milliseconds
+     */
+    public void setRefreshAhead(long refreshAhead) {
+        Assert.isTrue(refreshAhead > 0, "refreshAhead should be positive");
+        this.refreshAhead = refreshAhead;
+    }
+
+    /**
+     * Sets time between runs when started. Defaults to 1 minute.
+     *
+     * @param interval - Time in milliseconds
+     */
+    public void setInterval(long interval) {
+        Assert.isTrue(interval > 0, "interval should be positive");
+        this.interval = interval;
+    }
+
+    /**
+     * Sets number of connections fetched from the source at once. Defaults to 100.
+     *
+     * @param batchSize - connections per page
+     */
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "batchSize should be positive");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Limits calls to the token service. Defaults to 10 per second.
+     *
+     * @param maxRefreshesPerSecond - refreshes per second, non positive for no limit
+     */
+    public void setMaxRefreshesPerSecond(int maxRefreshesPerSecond) {
+        this.maxRefreshesPerSecond = maxRefreshesPerSecond;
+    }
+
+    /**
+     * Refreshes all connections expiring within the refresh ahead time once, on the calling thread.
+     *
+     * @return - number of connections refreshed
+     */
+    public synchronized int refreshExpiring() {
+        long expiresBefore = System.currentTimeMillis() + refreshAhead;
+        String providerId = connectionFactory.getProviderId();
+        ExpiringConnection after = null;
+        int count = 0;
+        int failed = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            List<ExpiringConnection> page = connectionSource.findExpiringConnections(providerId, after, expiresBefore,
+                    batchSize);
+            for (ExpiringConnection connection : page) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                if (refresh(connection)) {
+                    count++;
+                } else {
+                    failed++;
+                }
+            }
+            if (page.size() < batchSize) {
+                break;
+            }
+            // failed connections keep their expire time, so the next page starts after this one rather than at a time
+            after = page.get(page.size() - 1);
+        }
+        runs.incrementAndGet();
+        if (logger.isDebugEnabled() && (count > 0 || failed > 0)) {
+            logger.debug("Refreshed " + count + " connections, " + failed + " failed");
+        }
+        return count;
+    }
+
+    /**
+     * Refreshes one connection and stores the new tokens.
+     *
+     * @return - false if the token service or the repository failed
+     */
+    private boolean refresh(ExpiringConnection connection) {
+        ConnectionData data = connection.getConnectionData();
+        pace();
+        try {
+            AccessGrant grant = oauthOperations.refreshAccess(data.getRefreshToken(), null);
+            String refreshToken = grant.getRefreshToken() != null ? grant.getRefreshToken() : data.getRefreshToken();
+            String idToken = grant instanceof OpenIdAccessGrant ? ((OpenIdAccessGrant) grant).getIdToken() : null;
+            if (idToken == null && data instanceof OpenIdConnectionData) {
+                idToken = ((OpenIdConnectionData) data).getIdToken();
+            }
+            Connection<?> refreshedConnection = connectionFactory.createConnection(new OpenIdConnectionData(
+                    data.getProviderId(), data.getProviderUserId(), data.getDisplayName(), data.getProfileUrl(),
+                    data.getImageUrl(), grant.getAccessToken(), data.getSecret(), refreshToken, grant.getExpireTime(),
+                    idToken));
+            usersConnectionRepository.createConnectionRepository(connection.getUserId()).updateConnection(
+                    refreshedConnection);
+            refreshed.incrementAndGet();
+            return true;
+        } catch (RuntimeException ex) {
+            failures.incrementAndGet();
+            logger.warn("Access token of a " + data.getProviderId() + " connection could not be refreshed: "
+                    + ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Waits until the next refresh is allowed by <code>maxRefreshesPerSecond</code>.
+     */
+    private void pace() {
+        if (maxRefreshesPerSecond <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long wait = nextRefreshAt - now;
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        nextRefreshAt = Math.max(now, nextRefreshAt) + TimeUnit.SECONDS.toNanos(1) / maxRefreshesPerSecond;
+    }
+
+    /**
+     * Starts refreshing periodically on a daemon thread.
+     */
+    public void start() {
+        synchronized (lifecycleMonitor) {
+            if (scheduler != null) {
+                return;
+            }
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "paypal-token-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refreshExpiring();
+                    } catch (RuntimeException ex) {
+                        logger.error("Exception thrown while refreshing expiring connections", ex);
+                    }
+                }
+            }, 0, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops refreshing, interrupting a run in progress.
+     */
+    public void stop() {
+        synchronized (lifecycleMonitor) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.springframework.beans.factory.DisposableBean#destroy()
+     */
+    @Override
+    public void destroy() {
+        stop();
+    }
+
+    /**
+     * Gets number of completed runs so far.
+     *
+     * @return - run count
+     */
+    public long getRuns() {
+        return runs.get();
+    }
+
+    /**
+     * Gets number of connections refreshed so far.
+     *
+     * @return - refreshed count
+     */
+    public long getRefreshed() {
+        return refreshed.get();
+    }
+
+    /**
+     * Gets number of failed refreshes so far.
+     *
+     * @return - failure count
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+}
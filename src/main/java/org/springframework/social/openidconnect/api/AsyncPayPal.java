@@ -0,0 +1,18 @@
+package org.springframework.social.openidconnect.api;
+
+import org.springframework.util.concurrent.ListenableFuture;
+
+/**
+ * Non-blocking variant of {@link PayPal}. Calls return immediately and complete on the I/O threads of a non-blocking
+ * http client, so the calling thread is not held while waiting on PayPal Access.
+ */
+public interface AsyncPayPal {
+
+    /**
+     * Gets the userprofile by contacting userinfo endpoint of PayPal access.
+     * 
+     * @return - future completed with {@linkplain PayPalProfile}
+     */
+    ListenableFuture<PayPalProfile> getUserProfile();
+
+}
@@ -0,0 +1,225 @@
+package org.springframework.social.openidconnect.api.impl;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.log4j.Logger;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.AsyncClientHttpRequestFactory;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.social.openidconnect.PayPalAccessException;
+import org.springframework.social.openidconnect.PreemptiveBasicAuthClientHttpRequestInterceptor;
+import org.springframework.social.openidconnect.api.AsyncPayPal;
+import org.springframework.social.openidconnect.api.PayPalProfile;
+import org.springframework.util.Assert;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureAdapter;
+import org.springframework.util.concurrent.SettableListenableFuture;
+import org.springframework.web.client.AsyncRestTemplate;
+
+/**
+ * Non-blocking counterpart of {@link PayPalTemplate}. Uses an {@link AsyncRestTemplate} on top of a shared
+ * non-blocking request factory to get {@code PayPalProfile} from userinfo endpoint.
+ * <p>
+ * Unlike {@link PayPalTemplate#getUserProfile()}, client errors returned by userinfo endpoint fail the future instead of
+ * producing a null profile, and so does a response without body. Like {@link PayPalTemplate}, profiles are served from a
+ * {@link PayPalProfileCache} and concurrent calls for a token are shared through a {@link UserInfoRequestCoalescer}
+ * when set.
+ * </p>
+ */
+public class AsyncPayPalTemplate implements AsyncPayPal {
+
+    /**
+     * Logger for AsyncPayPalTemplate
+     */
+    private static final Logger logger = Logger.getLogger(AsyncPayPalTemplate.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Access token given by PayPal Access.
+     */
+    private final String accessToken;
+
+    /**
+     * User Info end point.
+     */
+    private final String userInfoUrl;
+
+    private final AsyncRestTemplate asyncRestTemplate;
+
+    private String clientId;
+
+    private String appSecret;
+
+    /**
+     * Basic authorization header value for client credentials, computed on first use unless set.
+     */
+    private String authorization;
+
+    /**
+     * Cache shared by templates of a service provider, may be null.
+     */
+    private PayPalProfileCache profileCache;
+
+    /**
+     * Coalescer shared by templates of a service provider, may be null.
+     */
+    private UserInfoRequestCoalescer requestCoalescer;
+
+    /**
+     * Logs returned profiles.
+     */
+    private PayPalProfileAuditLogger auditLogger = PayPalProfileAuditLogger.DEFAULT;
+
+    /**
+     * Constructor which accepts access token and a non-blocking request factory.
+     *
+     * @param accessToken - Access token given by PayPal Access.
+     * @param userInfoUrl - User Info endpoint, default one is used if null.
+     * @param requestFactory - Non-blocking request factory, usually shared.
+     */
+    public AsyncPayPalTemplate(String accessToken, String userInfoUrl, AsyncClientHttpRequestFactory requestFactory) {
+        this.accessToken = accessToken;
+        this.userInfoUrl = userInfoUrl;
+        this.asyncRestTemplate = new AsyncRestTemplate(requestFactory);
+        List<HttpMessageConverter<?>> converters = new ArrayList<HttpMessageConverter<?>>();
+        converters.add(new MappingJackson2HttpMessageConverter());
+        asyncRestTemplate.setMessageConverters(converters);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.springframework.social.openidconnect.api.AsyncPayPal#getUserProfile()
+     */
+    @Override
+    public ListenableFuture<PayPalProfile> getUserProfile() {
+        if (profileCache != null) {
+            PayPalProfile cached = profileCache.get(accessToken);
+            if (cached != null) {
+                SettableListenableFuture<PayPalProfile> result = new SettableListenableFuture<PayPalProfile>();
+                result.set(cached);
+                return result;
+            }
+        }
+        if (requestCoalescer != null) {
+            return requestCoalescer.fetchAsync(accessToken, new Callable<ListenableFuture<PayPalProfile>>() {
+                @Override
+                public ListenableFuture<PayPalProfile> call() {
+                    return fetchUserProfile();
+                }
+            });
+        }
+        return fetchUserProfile();
+    }
+
+    /**
+     * Calls user info endpoint and caches the returned profile.
+     *
+     * @return - future completing with the profile
+     */
+    private ListenableFuture<PayPalProfile> fetchUserProfile() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Authorization", getAuthorization());
+        ListenableFuture<ResponseEntity<PayPalProfile>> response = asyncRestTemplate.exchange(
+                PayPalTemplate.buildURI(userInfoUrl, accessToken), HttpMethod.GET, new HttpEntity<byte[]>(headers),
+                PayPalProfile.class);
+        return new ListenableFutureAdapter<PayPalProfile, ResponseEntity<PayPalProfile>>(response) {
+            @Override
+            protected PayPalProfile adapt(ResponseEntity<PayPalProfile> jsonResponse) throws ExecutionException {
+                PayPalProfile profile = jsonResponse.getBody();
+                if (profile == null) {
+                    throw new PayPalAccessException("User info response was empty", null);
+                }
+                // Password cannot be blank for Spring security. Setting it to access token rather keeping it as "N/A".
+                profile.setPassword(accessToken);
+                auditLogger.log(profile);
+                PayPalTemplate.validatePayPalAccessResponse(profile);
+                if (profileCache != null) {
+                    profileCache.put(accessToken, profile);
+                }
+                if (logger.isDebugEnabled()) {
+                    logger.debug("UserProfile fetched asynchronously for userId:" + profile.getUserId());
+                }
+                return profile;
+            }
+        };
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+        this.authorization = null;
+    }
+
+    public String getAppSecret() {
+        return appSecret;
+    }
+
+    public void setAppSecret(String appSecret) {
+        this.appSecret = appSecret;
+        this.authorization = null;
+    }
+
+    /**
+     * Sets cache consulted before calling user info endpoint.
+     *
+     * @param profileCache - Profile cache, null to always call user info endpoint
+     */
+    public void setProfileCache(PayPalProfileCache profileCache) {
+        this.profileCache = profileCache;
+    }
+
+    /**
+     * Sets coalescer through which concurrent user info calls for the same token share one call.
+     *
+     * @param requestCoalescer - Request coalescer, null to let every call go to user info endpoint
+     */
+    public void setRequestCoalescer(UserInfoRequestCoalescer requestCoalescer) {
+        this.requestCoalescer = requestCoalescer;
+    }
+
+    /**
+     * Sets audit logger for returned profiles.
+     *
+     * @param auditLogger - Profile audit logger
+     */
+    public void setAuditLogger(PayPalProfileAuditLogger auditLogger) {
+        Assert.notNull(auditLogger, "auditLogger cannot be null");
+        this.auditLogger = auditLogger;
+    }
+
+    /**
+     * Sets precomputed Basic authorization header value for client credentials, so it is not encoded per call.
+     *
+     * @param authorization - Authorization header value
+     */
+    public void setAuthorization(String authorization) {
+        this.authorization = authorization;
+    }
+
+    /**
+     * Gets Basic authorization header value, encoding client id and app secret as UTF-8 if not set.
+     *
+     * @return - Authorization header value
+     */
+    private String getAuthorization() {
+        String value = authorization;
+        if (value == null) {
+            value = PreemptiveBasicAuthClientHttpRequestInterceptor.createAuthorization(clientId, appSecret, UTF8);
+            authorization = value;
+        }
+        return value;
+    }
+}
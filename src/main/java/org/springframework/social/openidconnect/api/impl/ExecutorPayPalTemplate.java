@@ -0,0 +1,57 @@
+package org.springframework.social.openidconnect.api.impl;
+
+import java.util.concurrent.Callable;
+
+import org.springframework.core.task.AsyncListenableTaskExecutor;
+import org.springframework.social.openidconnect.api.AsyncPayPal;
+import org.springframework.social.openidconnect.api.PayPal;
+import org.springframework.social.openidconnect.api.PayPalProfile;
+import org.springframework.util.concurrent.ListenableFuture;
+
+/**
+ * {@link AsyncPayPal} which runs the blocking calls of a {@link PayPal} binding on a task executor instead of a
+ * non-blocking http client. Useful when threads are cheap, e.g. with an executor creating a virtual thread per task
+ * on JDK 21 or later:
+ * 
+ * <pre>
+ * new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor())
+ * </pre>
+ */
+public class ExecutorPayPalTemplate implements AsyncPayPal {
+
+    /**
+     * Blocking binding doing the actual calls.
+     */
+    private final PayPal delegate;
+
+    /**
+     * Executor running the blocking calls.
+     */
+    private final AsyncListenableTaskExecutor taskExecutor;
+
+    /**
+     * Constructor which accepts blocking binding and the executor to run it on.
+     *
+     * @param delegate - Blocking binding, usually a {@link PayPalTemplate}
+     * @param taskExecutor - Executor running the blocking calls
+     */
+    public ExecutorPayPalTemplate(PayPal delegate, AsyncListenableTaskExecutor taskExecutor) {
+        this.delegate = delegate;
+        this.taskExecutor = taskExecutor;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.springframework.social.openidconnect.api.AsyncPayPal#getUserProfile()
+     */
+    @Override
+    public ListenableFuture<PayPalProfile> getUserProfile() {
+        return taskExecutor.submitListenable(new Callable<PayPalProfile>() {
+            @Override
+            public PayPalProfile call() {
+                return delegate.getUserProfile();
+            }
+        });
+    }
+}
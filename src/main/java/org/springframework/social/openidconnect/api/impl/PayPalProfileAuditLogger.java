@@ -0,0 +1,208 @@
+package org.springframework.social.openidconnect.api.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.springframework.social.openidconnect.api.PayPalProfile;
+import org.springframework.util.Assert;
+
+/**
+ * Logs user profiles returned by user info endpoint at INFO level, as one line per profile. Profile fields are read
+ * through a fixed accessor table rather than reflection, personal data such as email, phone and address is redacted
+ * and the password (which holds the access token) is never logged.
+ * <p>
+ * Only one of every <code>sampleRate</code> profiles is logged, so audit logging can stay on under load.
+ * </p>
+ */
+public class PayPalProfileAuditLogger {
+
+    /**
+     * Logger for {@link PayPalProfileAuditLogger}
+     */
+    private static final Logger logger = Logger.getLogger(PayPalProfileAuditLogger.class);
+
+    /**
+     * Audit logger logging every profile.
+     */
+    public static final PayPalProfileAuditLogger DEFAULT = new PayPalProfileAuditLogger(1);
+
+    private static final String REDACTED = "***";
+
+    /**
+     * Logged fields, in log order.
+     */
+    private static final ProfileField[] FIELDS = new ProfileField[] {
+        new ProfileField("user_id", false) {
+            Object get(PayPalProfile profile) {
+                return profile.getUserId();
+            }
+        },
+        new ProfileField("name", false) {
+            Object get(PayPalProfile profile) {
+                return profile.getName();
+            }
+        },
+        new ProfileField("given_name", false) {
+            Object get(PayPalProfile profile) {
+                return profile.getGivenName();
+            }
+        },
+        new ProfileField("family_name", false) {
+            Object get(PayPalProfile profile) {
+                return profile.getFamilyName();
+            }
+        },
+        new ProfileField("email", true) {
+            Object get(PayPalProfile profile) {
+                return profile.getEmail();
+            }
+        },
+        new ProfileField("verified", false) {
+            Object get(PayPalProfile profile) {
+                return profile.isVerified() ? Boolean.TRUE : Boolean.FALSE;
+            }
+        },
+        new ProfileField("locale", false) {
+            Object get(PayPalProfile profile) {
+                return profile.getLocale();
+            }
+        },
+        new ProfileField("zoneinfo", false) {
+            Object get(PayPalProfile profile) {
+                return profile.getZoneinfo();
+            }
+        },
+        new ProfileField("language", false) {
+            Object get(PayPalProfile profile) {
+                return profile.getLanguage();
+            }
+        },
+        new ProfileField("birthday", true) {
+            Object get(PayPalProfile profile) {
+                return profile.getBirthday();
+            }
+        },
+        new ProfileField("address", true) {
+            Object get(PayPalProfile profile) {
+                return profile.getAddress();
+            }
+        },
+        new ProfileField("phone_number", true) {
+            Object get(PayPalProfile profile) {
+                return profile.getPhoneNumber();
+            }
+        },
+        new ProfileField("payer_id", false) {
+            Object get(PayPalProfile profile) {
+                return profile.getPayerId();
+            }
+        },
+        new ProfileField("account_type", false) {
+            Object get(PayPalProfile profile) {
+                return profile.getAccountType();
+            }
+        },
+        new ProfileField("account_number", true) {
+            Object get(PayPalProfile profile) {
+                return profile.getAccountNumber();
+            }
+        },
+        new ProfileField("account_creation_date", false) {
+            Object get(PayPalProfile profile) {
+                return profile.getAccountCreationDate();
+            }
+        },
+        new ProfileField("business_name", false) {
+            Object get(PayPalProfile profile) {
+                return profile.getBusinessName();
+            }
+        },
+        new ProfileField("business_category", false) {
+            Object get(PayPalProfile profile) {
+                return profile.getBusinessCategory();
+            }
+        },
+        new ProfileField("business_sub_category", false) {
+            Object get(PayPalProfile profile) {
+                return profile.getBusinessSubCategory();
+            }
+        }
+    };
+
+    private final int sampleRate;
+
+    /**
+     * Number of profiles seen, used for sampling.
+     */
+    private final AtomicLong profiles = new AtomicLong();
+
+    /**
+     * Creates an audit logger with given sampling.
+     *
+     * @param sampleRate - Log one of every <code>sampleRate</code> profiles, 0 disables audit logging
+     */
+    public PayPalProfileAuditLogger(int sampleRate) {
+        Assert.isTrue(sampleRate >= 0, "sampleRate cannot be negative");
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Logs given profile if INFO is enabled and the profile is sampled.
+     *
+     * @param profile - Profile returned by user info endpoint
+     */
+    public void log(PayPalProfile profile) {
+        if (sampleRate == 0 || !logger.isInfoEnabled()) {
+            return;
+        }
+        if (sampleRate > 1 && profiles.getAndIncrement() % sampleRate != 0) {
+            return;
+        }
+        logger.info(format(profile));
+    }
+
+    /**
+     * Formats given profile as one line with personal data redacted.
+     *
+     * @param profile - Profile returned by user info endpoint
+     * @return - formatted profile
+     */
+    static String format(PayPalProfile profile) {
+        StringBuilder line = new StringBuilder(256).append("User info {");
+        for (int i = 0; i < FIELDS.length; i++) {
+            ProfileField field = FIELDS[i];
+            Object value = field.get(profile);
+            if (i > 0) {
+                line.append(", ");
+            }
+            line.append(field.name).append('=');
+            if (value != null && field.redacted) {
+                line.append(REDACTED);
+            } else {
+                line.append(value);
+            }
+        }
+        return line.append('}').toString();
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Reads one profile field.
+     */
+    private abstract static class ProfileField {
+
+        private final String name;
+
+        private final boolean redacted;
+
+        ProfileField(String name, boolean redacted) {
+            this.name = name;
+            this.redacted = redacted;
+        }
+
+        abstract Object get(PayPalProfile profile);
+    }
+}
@@ -0,0 +1,154 @@
+package org.springframework.social.openidconnect.api.impl;
+
+import org.apache.log4j.Logger;
+import org.springframework.social.openidconnect.api.PayPalProfile;
+import org.springframework.social.openidconnect.support.ExpiringLruMap;
+import org.springframework.util.Assert;
+
+/**
+ * Bounded cache of {@link PayPalProfile} by access token. During one sign in Spring Social asks the
+ * {@link org.springframework.social.openidconnect.PayPalAdapter} for the profile several times, each of which used to
+ * call the user info endpoint. With a cache shared by all templates of a service provider, each token triggers one
+ * user info call.
+ * <p>
+ * Entries expire after the configured time to live, or earlier when the token expires, if its expiry time was
+ * registered through {@link #setTokenExpireTime(String, Long)}. The least recently used entry is dropped once the cache
+ * is full. Cached profiles are shared between callers and should not be modified.
+ * </p>
+ */
+public class PayPalProfileCache {
+
+    /**
+     * Logger for {@link PayPalProfileCache}
+     */
+    private static final Logger logger = Logger.getLogger(PayPalProfileCache.class);
+
+    private final long timeToLive;
+
+    /**
+     * Profiles by access token. Guards compound updates of both maps.
+     */
+    private final ExpiringLruMap<String, PayPalProfile> profiles;
+
+    /**
+     * Registered expiry times by access token, kept until dropped as least recently used.
+     */
+    private final ExpiringLruMap<String, Long> tokenExpireTimes;
+
+    /**
+     * Creates a cache with given bounds.
+     *
+     * @param maxSize - Maximum number of tokens held
+     * @param timeToLive - Time in milliseconds a profile is kept at most
+     */
+    public PayPalProfileCache(int maxSize, long timeToLive) {
+        Assert.isTrue(timeToLive > 0, "timeToLive should be positive");
+        this.timeToLive = timeToLive;
+        this.profiles = new ExpiringLruMap<String, PayPalProfile>(maxSize);
+        this.tokenExpireTimes = new ExpiringLruMap<String, Long>(maxSize);
+    }
+
+    /**
+     * Gets cached profile for given token.
+     *
+     * @param accessToken - Access token given by PayPal Access.
+     * @return - cached profile, null if not cached or expired
+     */
+    public PayPalProfile get(String accessToken) {
+        return profiles.get(accessToken);
+    }
+
+    /**
+     * Caches profile for given token.
+     *
+     * @param accessToken - Access token given by PayPal Access.
+     * @param profile - Profile fetched with the token
+     */
+    public void put(String accessToken, PayPalProfile profile) {
+        long expiresAt = System.currentTimeMillis() + timeToLive;
+        synchronized (profiles) {
+            Long tokenExpireTime = tokenExpireTimes.peek(accessToken);
+            if (tokenExpireTime != null && tokenExpireTime.longValue() < expiresAt) {
+                expiresAt = tokenExpireTime.longValue();
+            }
+            profiles.put(accessToken, profile, expiresAt);
+        }
+    }
+
+    /**
+     * Registers when a token expires, so its profile is not kept beyond that time. Called by the token exchange before
+     * the profile is fetched.
+     *
+     * @param accessToken - Access token given by PayPal Access.
+     * @param expireTime - Expiry time of the token in milliseconds since epoch, may be null if unknown
+     */
+    public void setTokenExpireTime(String accessToken, Long expireTime) {
+        if (expireTime == null) {
+            return;
+        }
+        synchronized (profiles) {
+            tokenExpireTimes.put(accessToken, expireTime, Long.MAX_VALUE);
+            profiles.expireAt(accessToken, expireTime.longValue());
+        }
+    }
+
+    /**
+     * Removes cached profile for given token.
+     *
+     * @param accessToken - Access token given by PayPal Access.
+     */
+    public void invalidate(String accessToken) {
+        synchronized (profiles) {
+            profiles.remove(accessToken);
+            tokenExpireTimes.remove(accessToken);
+        }
+    }
+
+    /**
+     * Removes all cached profiles.
+     */
+    public void clear() {
+        synchronized (profiles) {
+            profiles.clear();
+            tokenExpireTimes.clear();
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Profile cache cleared after " + getHits() + " hits and " + getMisses() + " misses");
+        }
+    }
+
+    /**
+     * Number of profiles currently held, including expired entries not yet removed.
+     *
+     * @return - cache size
+     */
+    public int size() {
+        return profiles.size();
+    }
+
+    public int getMaxSize() {
+        return profiles.getMaxSize();
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Number of lookups answered from the cache.
+     *
+     * @return - hit count
+     */
+    public long getHits() {
+        return profiles.getHits();
+    }
+
+    /**
+     * Number of lookups which had to call user info endpoint.
+     *
+     * @return - miss count
+     */
+    public long getMisses() {
+        return profiles.getMisses();
+    }
+}
@@ -1,11 +1,11 @@
 package org.springframework.social.openidconnect.api.impl;
 
 import java.net.URI;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Iterator;
+import java.util.concurrent.Callable;
 
-import org.apache.commons.beanutils.BeanMap;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.springframework.http.MediaType;
@@ -16,14 +16,16 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.codec.Base64;
 import org.springframework.social.oauth2.AbstractOAuth2ApiBinding;
-import org.springframework.social.openidconnect.HttpClientFactory;
+import org.springframework.social.openidconnect.ConnectionPoolProfile;
+import org.springframework.social.openidconnect.HttpClientRegistry;
 import org.springframework.social.openidconnect.PayPalAccessException;
 import org.springframework.social.openidconnect.PayPalConnectionProperties;
+import org.springframework.social.openidconnect.PreemptiveBasicAuthClientHttpRequestInterceptor;
 import org.springframework.social.openidconnect.api.PayPal;
 import org.springframework.social.openidconnect.api.PayPalProfile;
 import org.springframework.social.support.URIBuilder;
+import org.springframework.util.Assert;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
@@ -39,6 +41,8 @@ public class PayPalTemplate extends AbstractOAuth2ApiBinding implements PayPal {
      */
     private static Logger logger = Logger.getLogger(PayPalTemplate.class);
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     /**
      * Access token given by PayPal Access.
      */
@@ -52,6 +56,26 @@ public class PayPalTemplate extends AbstractOAuth2ApiBinding implements PayPal {
     private String clientId;
 	private String appSecret;
 
+    /**
+     * Basic authorization header value for client credentials, computed on first use unless set.
+     */
+    private String authorization;
+
+    /**
+     * Profile cache shared by templates of a service provider, may be null.
+     */
+    private PayPalProfileCache profileCache;
+
+    /**
+     * Coalescer shared by templates of a service provider, may be null.
+     */
+    private UserInfoRequestCoalescer requestCoalescer;
+
+    /**
+     * Logs returned profiles.
+     */
+    private PayPalProfileAuditLogger auditLogger = PayPalProfileAuditLogger.DEFAULT;
+
 
     /**
      * Default constructor.
@@ -67,6 +91,18 @@ public class PayPalTemplate extends AbstractOAuth2ApiBinding implements PayPal {
      * @param userInfoUrl - User Info endpoint.
      */
     public PayPalTemplate(String accessToken, String userInfoUrl, boolean isStrict) {
+        this(accessToken, userInfoUrl, isStrict, ConnectionPoolProfile.DEFAULT);
+    }
+
+    /**
+     * Constructors which accept acess token and connection pool settings.
+     *
+     * @param accessToken - Access token given by PayPal Access.
+     * @param userInfoUrl - User Info endpoint.
+     * @param isStrict - Flag which determines Host name verifier
+     * @param poolProfile - Connection pool and time out settings
+     */
+    public PayPalTemplate(String accessToken, String userInfoUrl, boolean isStrict, ConnectionPoolProfile poolProfile) {
         super(accessToken);
         this.accessToken = accessToken;
         this.userInfoUrl = userInfoUrl;
@@ -74,8 +110,8 @@ public class PayPalTemplate extends AbstractOAuth2ApiBinding implements PayPal {
             logger.debug("user info url is " + userInfoUrl + " and host name verifier isStrict = " + isStrict);
         }
         //could not override request factory using configureRestTemplate method as isStrict instance variable is not
-        //initialized before constructor completes.  So setting request factory just before constructor completes
-        setRequestFactory(HttpClientFactory.getRequestFactory(isStrict));
+        //initialized before constructor completes.  So setting shared request factory just before constructor completes
+        setRequestFactory(HttpClientRegistry.getRequestFactory(isStrict, poolProfile));
     }
 
     /*
@@ -85,32 +121,48 @@ public class PayPalTemplate extends AbstractOAuth2ApiBinding implements PayPal {
      */
     @Override
     public PayPalProfile getUserProfile() {
+        if (profileCache != null) {
+            PayPalProfile cached = profileCache.get(accessToken);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        if (requestCoalescer != null) {
+            return requestCoalescer.fetch(accessToken, new Callable<PayPalProfile>() {
+                @Override
+                public PayPalProfile call() {
+                    return fetchUserProfile();
+                }
+            });
+        }
+        return fetchUserProfile();
+    }
+
+    /**
+     * Calls user info endpoint and caches the returned profile.
+     *
+     * @return - profile, null if user info could not be retrieved
+     */
+    private PayPalProfile fetchUserProfile() {
         HttpHeaders headers = new HttpHeaders();
-		String authorisation = clientId + ":" + appSecret;
-		byte[] encodedAuthorisation = Base64.encode(authorisation.getBytes());
-		headers.add("Authorization", "Basic "
-				+ new String(encodedAuthorisation));
+		headers.add("Authorization", getAuthorization());
 		PayPalProfile profile = null;
 		RestTemplate restTemplate = getRestTemplate();
 		try {
 			ResponseEntity<PayPalProfile> jsonResponse = restTemplate.exchange(
-					buildURI(accessToken), HttpMethod.GET,
+					buildURI(userInfoUrl, accessToken), HttpMethod.GET,
 					new HttpEntity<byte[]>(headers), PayPalProfile.class);
 			profile = jsonResponse.getBody();
             // Password cannot be blank for Spring security. Setting it to access token rather keeping it as "N/A".
             profile.setPassword(this.accessToken);
 
             //logging returned back user info
-            if(logger.isInfoEnabled()) {
-                BeanMap beanMap = new BeanMap(profile);
-                for (Iterator i = beanMap.keySet().iterator(); i.hasNext();) {
-                    String property = (String) i.next();
-                    Object value = beanMap.get(property);
-                    logger.info(property + " -> " + value);
-                }
-            }
+            auditLogger.log(profile);
 
             validatePayPalAccessResponse(profile);
+            if (profileCache != null) {
+                profileCache.put(accessToken, profile);
+            }
 
           } catch (HttpClientErrorException ex){
             logger.error("User info could not be retrieved " + ex.getMessage() + "  " + ex.getResponseBodyAsString());
@@ -129,7 +181,7 @@ public class PayPalTemplate extends AbstractOAuth2ApiBinding implements PayPal {
      * https://github.com/FasterXML/jackson-databind/issues/230
      *
      */
-    private void validatePayPalAccessResponse(PayPalProfile profile) {
+    static void validatePayPalAccessResponse(PayPalProfile profile) {
         if (StringUtils.isEmpty(profile.getUserId())) {
             logger.error("user_id is coming as null from PPAccess response");
               throw new PayPalAccessException("user_id is coming as null from PPAccess response", new NullPointerException());
@@ -163,9 +215,11 @@ public class PayPalTemplate extends AbstractOAuth2ApiBinding implements PayPal {
      * Builds uri for user info service endpoint. Default one given by {@linkplain PayPalConnectionProperties} will be
      * {@code userInfoUrl} if null.
      * 
+     * @param userInfoUrl - User Info endpoint, may be null
+     * @param accessToken - Access token given by PayPal Access
      * @return - Uri with parameter
      */
-    private URI buildURI(String accesToken) {
+    static URI buildURI(String userInfoUrl, String accessToken) {
         URIBuilder uriBuilder;
         if (userInfoUrl == null) {
             if (logger.isDebugEnabled()) {
@@ -173,11 +227,11 @@ public class PayPalTemplate extends AbstractOAuth2ApiBinding implements PayPal {
             }
             uriBuilder = URIBuilder.fromUri(PayPalConnectionProperties.getUserInfoEndpoint());
         } else {
-            uriBuilder = URIBuilder.fromUri(this.userInfoUrl);
+            uriBuilder = URIBuilder.fromUri(userInfoUrl);
         }
         URI returnURI = uriBuilder.queryParam("schema", "openid").queryParam("code", accessToken).build();
-        if(logger.isInfoEnabled()){
-            logger.info("User info uri " + returnURI.toString());
+        if(logger.isDebugEnabled()){
+            logger.debug("User info uri " + StringUtils.replace(returnURI.toString(), accessToken, "***"));
         }
         return returnURI;
     }
@@ -206,6 +260,7 @@ public class PayPalTemplate extends AbstractOAuth2ApiBinding implements PayPal {
 
 	public void setClientId(String clientId) {
 		this.clientId = clientId;
+		this.authorization = null;
 	}
 
 	public String getAppSecret() {
@@ -214,5 +269,57 @@ public class PayPalTemplate extends AbstractOAuth2ApiBinding implements PayPal {
 
 	public void setAppSecret(String appSecret) {
 		this.appSecret = appSecret;
+		this.authorization = null;
 	}
+
+    /**
+     * Sets cache consulted before calling user info endpoint.
+     *
+     * @param profileCache - Profile cache, null to always call user info endpoint
+     */
+    public void setProfileCache(PayPalProfileCache profileCache) {
+        this.profileCache = profileCache;
+    }
+
+    /**
+     * Sets coalescer through which concurrent user info calls for the same token share one call.
+     *
+     * @param requestCoalescer - Request coalescer, null to let every call go to user info endpoint
+     */
+    public void setRequestCoalescer(UserInfoRequestCoalescer requestCoalescer) {
+        this.requestCoalescer = requestCoalescer;
+    }
+
+    /**
+     * Sets audit logger for returned profiles.
+     *
+     * @param auditLogger - Profile audit logger
+     */
+    public void setAuditLogger(PayPalProfileAuditLogger auditLogger) {
+        Assert.notNull(auditLogger, "auditLogger cannot be null");
+        this.auditLogger = auditLogger;
+    }
+
+    /**
+     * Sets precomputed Basic authorization header value for client credentials, so it is not encoded per call.
+     *
+     * @param authorization - Authorization header value
+     */
+    public void setAuthorization(String authorization) {
+        this.authorization = authorization;
+    }
+
+    /**
+     * Gets Basic authorization header value, encoding client id and app secret as UTF-8 if not set.
+     *
+     * @return - Authorization header value
+     */
+    private String getAuthorization() {
+        String value = authorization;
+        if (value == null) {
+            value = PreemptiveBasicAuthClientHttpRequestInterceptor.createAuthorization(clientId, appSecret, UTF8);
+            authorization = value;
+        }
+        return value;
+    }
 }
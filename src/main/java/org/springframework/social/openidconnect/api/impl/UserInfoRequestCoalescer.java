@@ -0,0 +1,162 @@
+package org.springframework.social.openidconnect.api.impl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.springframework.social.openidconnect.PayPalAccessException;
+import org.springframework.social.openidconnect.api.PayPalProfile;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+/**
+ * Lets concurrent user info requests for the same access token share one call. The first caller for a token does the
+ * call, callers arriving while it is in flight wait for and get the same result, or the same exception. Once the call
+ * completes the next request for the token makes a new call, so this only removes duplicate calls that overlap in time;
+ * combine it with {@link PayPalProfileCache} to also reuse completed results.
+ * <p>
+ * Non-blocking calls are shared through {@link #fetchAsync(String, Callable)}, which hands every caller for a token the
+ * same future while the call is in flight.
+ * </p>
+ */
+public class UserInfoRequestCoalescer {
+
+    /**
+     * Logger for {@link UserInfoRequestCoalescer}
+     */
+    private static final Logger logger = Logger.getLogger(UserInfoRequestCoalescer.class);
+
+    /**
+     * Calls in flight by access token.
+     */
+    private final ConcurrentMap<String, FutureTask<PayPalProfile>> inFlight = new ConcurrentHashMap<String, FutureTask<PayPalProfile>>();
+
+    /**
+     * Non-blocking calls in flight by access token.
+     */
+    private final ConcurrentMap<String, SettableListenableFuture<PayPalProfile>> asyncInFlight = new ConcurrentHashMap<String, SettableListenableFuture<PayPalProfile>>();
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final AtomicLong coalescedCalls = new AtomicLong();
+
+    /**
+     * Gets profile for given token, either by running the given call or by joining one already in flight.
+     *
+     * @param accessToken - Access token given by PayPal Access.
+     * @param call - Call fetching the profile
+     * @return - profile returned by the shared call
+     */
+    public PayPalProfile fetch(String accessToken, Callable<PayPalProfile> call) {
+        FutureTask<PayPalProfile> task = new FutureTask<PayPalProfile>(call);
+        FutureTask<PayPalProfile> existing = inFlight.putIfAbsent(accessToken, task);
+        if (existing == null) {
+            calls.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(accessToken, task);
+            }
+        } else {
+            coalescedCalls.incrementAndGet();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Joining user info call already in flight");
+            }
+            task = existing;
+        }
+        return getResult(task);
+    }
+
+    /**
+     * Gets profile for given token, either by starting the given non-blocking call or by joining one already in flight.
+     *
+     * @param accessToken - Access token given by PayPal Access.
+     * @param call - Call starting to fetch the profile
+     * @return - future completing with the result of the shared call
+     */
+    public ListenableFuture<PayPalProfile> fetchAsync(final String accessToken,
+            Callable<ListenableFuture<PayPalProfile>> call) {
+        final SettableListenableFuture<PayPalProfile> shared = new SettableListenableFuture<PayPalProfile>();
+        SettableListenableFuture<PayPalProfile> existing = asyncInFlight.putIfAbsent(accessToken, shared);
+        if (existing != null) {
+            coalescedCalls.incrementAndGet();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Joining non-blocking user info call already in flight");
+            }
+            return existing;
+        }
+        calls.incrementAndGet();
+        ListenableFuture<PayPalProfile> result;
+        try {
+            result = call.call();
+        } catch (Exception ex) {
+            asyncInFlight.remove(accessToken, shared);
+            shared.setException(ex);
+            return shared;
+        }
+        result.addCallback(new ListenableFutureCallback<PayPalProfile>() {
+            @Override
+            public void onSuccess(PayPalProfile profile) {
+                asyncInFlight.remove(accessToken, shared);
+                shared.set(profile);
+            }
+
+            @Override
+            public void onFailure(Throwable ex) {
+                asyncInFlight.remove(accessToken, shared);
+                shared.setException(ex);
+            }
+        });
+        return shared;
+    }
+
+    private static PayPalProfile getResult(FutureTask<PayPalProfile> task) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException ex) {
+                    // keep waiting, the call is done by another thread which must not be abandoned halfway
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new PayPalAccessException("User info call failed", (Exception) cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Number of user info calls actually made.
+     *
+     * @return - call count
+     */
+    public long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * Number of requests which joined a call already in flight instead of making their own.
+     *
+     * @return - coalesced request count
+     */
+    public long getCoalescedCalls() {
+        return coalescedCalls.get();
+    }
+}
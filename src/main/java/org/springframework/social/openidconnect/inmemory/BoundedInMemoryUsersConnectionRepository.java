@@ -0,0 +1,343 @@
+package org.springframework.social.openidconnect.inmemory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.springframework.social.connect.Connection;
+import org.springframework.social.connect.ConnectionFactoryLocator;
+import org.springframework.social.connect.ConnectionRepository;
+import org.springframework.social.connect.UsersConnectionRepository;
+import org.springframework.social.openidconnect.RankedConnection;
+import org.springframework.social.openidconnect.RankedConnectionSource;
+import org.springframework.util.Assert;
+import org.springframework.util.MultiValueMap;
+
+/**
+ * {@link InMemoryUsersConnectionRepository} which keeps at most a given number of users in memory. The least recently
+ * used user is dropped once the limit is exceeded, and users not accessed for longer than the idle time are dropped on
+ * the next access or on {@link #evictIdle()}.
+ * <p>
+ * Given a backing {@link UsersConnectionRepository}, such as
+ * {@link org.springframework.social.openidconnect.jdbc.OpenIdJdbcUsersConnectionRepository}, this repository acts as a
+ * hot user cache in front of it: connection repositories write through to the backing repository, users are loaded
+ * from it when not in memory, and user id lookups are answered by it, since memory only holds some users. Configure
+ * connection sign up on the backing repository in this case.
+ * </p>
+ * <p>
+ * Without a backing repository, connections of dropped users are lost.
+ * </p>
+ */
+public class BoundedInMemoryUsersConnectionRepository extends InMemoryUsersConnectionRepository {
+
+    /**
+     * Logger for {@link BoundedInMemoryUsersConnectionRepository}
+     */
+    private static final Logger logger = Logger.getLogger(BoundedInMemoryUsersConnectionRepository.class);
+
+    /**
+     * Maximum number of users kept in memory.
+     */
+    private final int maxUsers;
+
+    /**
+     * Time in milliseconds after which a user not accessed is dropped, non positive keeps users until the limit is hit.
+     */
+    private final long maxIdleTime;
+
+    /**
+     * Repository of record, may be null.
+     */
+    private final UsersConnectionRepository backingRepository;
+
+    /**
+     * Last access time by user id, least recently used first. Guarded by itself.
+     */
+    private final LinkedHashMap<String, Long> lastAccessByUserId = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+    /**
+     * Loads in progress by user id, so concurrent misses of a user share one load.
+     */
+    private final ConcurrentMap<String, FutureTask<InMemoryConnectionRepository>> loadsByUserId = new ConcurrentHashMap<String, FutureTask<InMemoryConnectionRepository>>();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong loads = new AtomicLong();
+
+    /**
+     * Constructor for a bounded repository without backing repository.
+     *
+     * @param connectionFactoryLocator - {@link org.springframework.social.connect.ConnectionFactoryLocator}
+     * @param maxUsers - Maximum number of users kept in memory
+     * @param maxIdleTime - Time in milliseconds after which a user not accessed is dropped, non positive disables
+     */
+    public BoundedInMemoryUsersConnectionRepository(ConnectionFactoryLocator connectionFactoryLocator, int maxUsers,
+            long maxIdleTime) {
+        this(connectionFactoryLocator, maxUsers, maxIdleTime, null);
+    }
+
+    /**
+     * Constructor for a bounded repository in front of a backing repository.
+     *
+     * @param connectionFactoryLocator - {@link org.springframework.social.connect.ConnectionFactoryLocator}
+     * @param maxUsers - Maximum number of users kept in memory
+     * @param maxIdleTime - Time in milliseconds after which a user not accessed is dropped, non positive disables
+     * @param backingRepository - Repository of record, null to keep connections in memory only
+     */
+    public BoundedInMemoryUsersConnectionRepository(ConnectionFactoryLocator connectionFactoryLocator, int maxUsers,
+            long maxIdleTime, UsersConnectionRepository backingRepository) {
+        super(connectionFactoryLocator);
+        Assert.isTrue(maxUsers > 0, "maxUsers should be positive");
+        this.maxUsers = maxUsers;
+        this.maxIdleTime = maxIdleTime;
+        this.backingRepository = backingRepository;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.springframework.social.openidconnect.inmemory.InMemoryUsersConnectionRepository#findUserIdsWithConnection(org
+     * .springframework.social.connect.Connection)
+     */
+    @Override
+    public List<String> findUserIdsWithConnection(Connection<?> connection) {
+        if (backingRepository != null) {
+            return backingRepository.findUserIdsWithConnection(connection);
+        }
+        return super.findUserIdsWithConnection(connection);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.springframework.social.openidconnect.inmemory.InMemoryUsersConnectionRepository#findUserIdsConnectedTo(java
+     * .lang.String, java.util.Set)
+     */
+    @Override
+    public Set<String> findUserIdsConnectedTo(String providerId, Set<String> providerUserIds) {
+        if (backingRepository != null) {
+            return backingRepository.findUserIdsConnectedTo(providerId, providerUserIds);
+        }
+        return super.findUserIdsConnectedTo(providerId, providerUserIds);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.springframework.social.openidconnect.inmemory.InMemoryUsersConnectionRepository#createConnectionRepository(
+     * java.lang.String)
+     */
+    @Override
+    public ConnectionRepository createConnectionRepository(String userId) {
+        ConnectionRepository connectionRepository = super.createConnectionRepository(userId);
+        if (backingRepository == null) {
+            return connectionRepository;
+        }
+        return new WriteThroughConnectionRepository(connectionRepository,
+                backingRepository.createConnectionRepository(userId));
+    }
+
+    /**
+     * Gets or creates the in memory repository of given user and marks the user as most recently used, dropping least
+     * recently used and idle users if needed. Registering, marking and dropping happen under one lock, so a user being
+     * accessed is never dropped from memory while still marked as used, or the other way round. Users missing from
+     * memory are loaded from the backing repository before taking that lock, so a slow load only delays callers asking
+     * for the same user.
+     * 
+     * @param userId - User id
+     * @return - User Connection repository.
+     */
+    @Override
+    protected InMemoryConnectionRepository createInMemoryConnectionRepository(String userId) {
+        while (true) {
+            FutureTask<InMemoryConnectionRepository> load = null;
+            InMemoryConnectionRepository loaded = null;
+            if (!connectionRepositoriesByUserId.containsKey(userId)) {
+                load = startLoad(userId);
+                loaded = awaitLoad(userId, load);
+            }
+            synchronized (lastAccessByUserId) {
+                // only the first caller of a load registers it, a later one may find it registered and dropped already
+                boolean registers = load != null && loadsByUserId.remove(userId, load);
+                InMemoryConnectionRepository connectionRepository = connectionRepositoriesByUserId.get(userId);
+                if (connectionRepository == null && registers) {
+                    connectionRepository = loaded;
+                    connectionRepositoriesByUserId.put(userId, connectionRepository);
+                }
+                if (connectionRepository != null) {
+                    long now = System.currentTimeMillis();
+                    lastAccessByUserId.put(userId, now);
+                    evict(collectVictims(now));
+                    return connectionRepository;
+                }
+            }
+            // dropped before the lock was taken, load again
+        }
+    }
+
+    /**
+     * Gets the load in progress for given user, or starts one on the calling thread.
+     */
+    private FutureTask<InMemoryConnectionRepository> startLoad(final String userId) {
+        FutureTask<InMemoryConnectionRepository> load = new FutureTask<InMemoryConnectionRepository>(
+                new Callable<InMemoryConnectionRepository>() {
+                    @Override
+                    public InMemoryConnectionRepository call() {
+                        return newInMemoryConnectionRepository(userId);
+                    }
+                });
+        FutureTask<InMemoryConnectionRepository> existing = loadsByUserId.putIfAbsent(userId, load);
+        if (existing != null) {
+            return existing;
+        }
+        load.run();
+        return load;
+    }
+
+    /**
+     * Waits for given load, dropping it if it failed so the next access tries again.
+     */
+    private InMemoryConnectionRepository awaitLoad(String userId, FutureTask<InMemoryConnectionRepository> load) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return load.get();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException ex) {
+            loadsByUserId.remove(userId, load);
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Connections of user " + userId + " could not be loaded", cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Creates the in memory repository of given user, loading the user's connections from the backing repository. The
+     * stored ranks are kept if the backing repository is a {@link RankedConnectionSource}, otherwise connections are
+     * ranked from 1 in the order the backing repository returns them.
+     * 
+     * @param userId - User id
+     * @return - User Connection repository.
+     */
+    @Override
+    protected InMemoryConnectionRepository newInMemoryConnectionRepository(String userId) {
+        InMemoryConnectionRepository connectionRepository = super.newInMemoryConnectionRepository(userId);
+        if (backingRepository instanceof RankedConnectionSource) {
+            for (RankedConnection rankedConnection : ((RankedConnectionSource) backingRepository)
+                    .findRankedConnections(userId)) {
+                connectionRepository.addConnectionData(rankedConnection.getConnectionData(), rankedConnection.getRank());
+            }
+            loads.incrementAndGet();
+        } else if (backingRepository != null) {
+            MultiValueMap<String, Connection<?>> connections = backingRepository.createConnectionRepository(userId)
+                    .findAllConnections();
+            for (List<Connection<?>> providerConnections : connections.values()) {
+                int rank = 1;
+                for (Connection<?> connection : providerConnections) {
+                    connectionRepository.addConnectionData(connection.createData(), rank++);
+                }
+            }
+            loads.incrementAndGet();
+        }
+        return connectionRepository;
+    }
+
+    /**
+     * Drops all users not accessed for longer than the idle time.
+     */
+    public void evictIdle() {
+        synchronized (lastAccessByUserId) {
+            evict(collectVictims(System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Removes users over the limit or idle from the access order. Caller holds the access order lock.
+     * 
+     * @param now - Current time in milliseconds
+     * @return - user ids to drop
+     */
+    private List<String> collectVictims(long now) {
+        List<String> victims = new ArrayList<String>();
+        Iterator<Map.Entry<String, Long>> it = lastAccessByUserId.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            boolean idle = maxIdleTime > 0 && now - entry.getValue().longValue() > maxIdleTime;
+            if (!idle && lastAccessByUserId.size() <= maxUsers) {
+                break;
+            }
+            victims.add(entry.getKey());
+            it.remove();
+        }
+        return victims;
+    }
+
+    /**
+     * Drops given users and their reverse index entries. Caller holds the access order lock.
+     * 
+     * @param victims - user ids collected by {@link #collectVictims(long)}
+     */
+    private void evict(List<String> victims) {
+        for (String userId : victims) {
+            if (removeInMemoryConnectionRepository(userId) != null) {
+                evictions.incrementAndGet();
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Dropped connections of user " + userId + " from memory");
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets number of users currently kept in memory.
+     * 
+     * @return - resident user count
+     */
+    public int size() {
+        return connectionRepositoriesByUserId.size();
+    }
+
+    /**
+     * Gets number of users dropped from memory so far.
+     * 
+     * @return - eviction count
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Gets number of users loaded from the backing repository so far.
+     * 
+     * @return - load count
+     */
+    public long getLoads() {
+        return loads.get();
+    }
+}
@@ -0,0 +1,28 @@
+package org.springframework.social.openidconnect.inmemory;
+
+import org.springframework.social.connect.ConnectionKey;
+
+/**
+ * Gets notified when connections are added to or removed from in-memory repositories. Used to keep indexes across users,
+ * such as the reverse index of {@link InMemoryUsersConnectionRepository}, in line with the per user repositories.
+ * Called while the provider repository holds its write lock, so notifications for one user and provider arrive in
+ * order.
+ */
+public interface InMemoryConnectionListener {
+
+    /**
+     * Called after a connection was added for a user.
+     *
+     * @param userId - Local user id
+     * @param connectionKey - Provider id and provider user id of the connection
+     */
+    void connectionAdded(String userId, ConnectionKey connectionKey);
+
+    /**
+     * Called after a connection was removed for a user.
+     *
+     * @param userId - Local user id
+     * @param connectionKey - Provider id and provider user id of the connection
+     */
+    void connectionRemoved(String userId, ConnectionKey connectionKey);
+}
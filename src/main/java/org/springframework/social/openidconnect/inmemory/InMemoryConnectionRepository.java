@@ -20,6 +20,8 @@ import org.springframework.util.MultiValueMap;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * Repository which manages user connections in memory instead of database.
@@ -42,10 +44,15 @@ public class InMemoryConnectionRepository implements ConnectionRepository {
      */
     protected final ConnectionFactoryLocator connectionFactoryLocator;
 
+    /**
+     * Notified of added and removed connections, may be null.
+     */
+    private final InMemoryConnectionListener listener;
+
     /**
      * Map which holds user connections
      */
-    protected SortedMap<String, InMemoryProviderConnectionRepository> providerRepositories = new TreeMap<String, InMemoryProviderConnectionRepository>();
+    protected ConcurrentNavigableMap<String, InMemoryProviderConnectionRepository> providerRepositories = new ConcurrentSkipListMap<String, InMemoryProviderConnectionRepository>();
 
     /**
      * Constructor which requires a locator and user id to find connection.
@@ -54,13 +61,26 @@ public class InMemoryConnectionRepository implements ConnectionRepository {
      * @param connectionFactoryLocator - Connection Factory locator.
      */
     public InMemoryConnectionRepository(String userId, ConnectionFactoryLocator connectionFactoryLocator) {
+        this(userId, connectionFactoryLocator, null);
+    }
+
+    /**
+     * Constructor which requires a locator and user id to find connection, and a listener for connection changes.
+     * 
+     * @param userId - PayPal Access user id
+     * @param connectionFactoryLocator - Connection Factory locator.
+     * @param listener - Notified of added and removed connections, may be null
+     */
+    public InMemoryConnectionRepository(String userId, ConnectionFactoryLocator connectionFactoryLocator,
+            InMemoryConnectionListener listener) {
         this.userId = userId;
         this.connectionFactoryLocator = connectionFactoryLocator;
+        this.listener = listener;
     }
 
     /**
      * Gets connection repository if it already exists for given provider id. Else creates a new one for given provider
-     * and returns.
+     * and returns. Concurrent callers for the same provider get the same repository.
      * 
      * @param providerId - OpenId Connect service provider id
      * @return - Connection repository
@@ -68,8 +88,11 @@ public class InMemoryConnectionRepository implements ConnectionRepository {
     public InMemoryProviderConnectionRepository getInMemoryProviderConnectionRepository(String providerId) {
         InMemoryProviderConnectionRepository repository = providerRepositories.get(providerId);
         if (repository == null) {
-            repository = new InMemoryProviderConnectionRepository(userId, providerId);
-            providerRepositories.put(providerId, repository);
+            repository = new InMemoryProviderConnectionRepository(userId, providerId, listener);
+            InMemoryProviderConnectionRepository existing = providerRepositories.putIfAbsent(providerId, repository);
+            if (existing != null) {
+                repository = existing;
+            }
         }
         return repository;
     }
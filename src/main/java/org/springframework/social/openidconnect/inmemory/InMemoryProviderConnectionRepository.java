@@ -19,9 +19,22 @@ import org.springframework.social.connect.ConnectionKey;
 import org.springframework.social.connect.DuplicateConnectionException;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * Stroes user connection data such as provider data and connection data in memory instead of database.
+ * <p>
+ * Connection data is indexed twice: by rank in a sorted map, and by provider user id in a hash map pointing at the
+ * rank. Lookups by either key and the next rank take O(1) or O(log n) instead of scanning all connections.
+ * </p>
+ * <p>
+ * Thread safe: writers are serialized on this repository and update the rank map before adding to the provider user id
+ * index, and remove from the index before the rank map. Readers never lock; a lookup racing with a removal finds either
+ * the connection or nothing.
+ * </p>
  * 
  * @author Michael Lavelle
  */
@@ -35,7 +48,12 @@ public class InMemoryProviderConnectionRepository {
     /**
      * Stores {@linkplain org.springframework.social.connect.ConnectionData} base don given rank
      */
-    protected SortedMap<Integer, ConnectionData> connectionDataByRank = new TreeMap<Integer, ConnectionData>();
+    protected final ConcurrentNavigableMap<Integer, ConnectionData> connectionDataByRank = new ConcurrentSkipListMap<Integer, ConnectionData>();
+
+    /**
+     * Rank of each connection by provider user id.
+     */
+    private final ConcurrentMap<String, Integer> rankByProviderUserId = new ConcurrentHashMap<String, Integer>();
 
     /**
      * User id.
@@ -47,6 +65,11 @@ public class InMemoryProviderConnectionRepository {
      */
     private final String providerId;
 
+    /**
+     * Notified of added and removed connections, may be null.
+     */
+    private final InMemoryConnectionListener listener;
+
     /**
      * Constructor which accepts user id for given provider
      *
@@ -54,8 +77,20 @@ public class InMemoryProviderConnectionRepository {
      * @param providerId - Service provider id
      */
     public InMemoryProviderConnectionRepository(String userId, String providerId) {
+        this(userId, providerId, null);
+    }
+
+    /**
+     * Constructor which accepts user id for given provider and a listener for connection changes.
+     *
+     * @param userId - User id
+     * @param providerId - Service provider id
+     * @param listener - Notified of added and removed connections, may be null
+     */
+    public InMemoryProviderConnectionRepository(String userId, String providerId, InMemoryConnectionListener listener) {
         this.userId = userId;
         this.providerId = providerId;
+        this.listener = listener;
     }
 
     /**
@@ -74,9 +109,7 @@ public class InMemoryProviderConnectionRepository {
      * @return - List of connections
      */
     public List<ConnectionData> findAllOrderByRank() {
-        List<ConnectionData> connectionDatas = new ArrayList<ConnectionData>();
-        connectionDatas.addAll(connectionDataByRank.values());
-        return connectionDatas;
+        return new ArrayList<ConnectionData>(connectionDataByRank.values());
     }
 
     /**
@@ -86,12 +119,8 @@ public class InMemoryProviderConnectionRepository {
      * @return - {@link org.springframework.social.connect.ConnectionData}
      */
     public ConnectionData findByProviderUserId(String providerUserId) {
-        for (ConnectionData connectionData : connectionDataByRank.values()) {
-            if (connectionData.getProviderUserId().equals(providerUserId)) {
-                return connectionData;
-            }
-        }
-        return null;
+        Integer rank = rankByProviderUserId.get(providerUserId);
+        return rank == null ? null : connectionDataByRank.get(rank);
     }
 
     /**
@@ -109,19 +138,14 @@ public class InMemoryProviderConnectionRepository {
      *
      * @param providerUserId - User id and provider id combination
      */
-    public void deleteByProviderUserId(String providerUserId) {
-        Integer rankOfMatchingConnectionData = null;
-        for (Map.Entry<Integer, ConnectionData> connectionDataWithRank : connectionDataByRank.entrySet()) {
-            if (connectionDataWithRank.getValue().getProviderUserId().equals(providerUserId)) {
-                rankOfMatchingConnectionData = connectionDataWithRank.getKey();
-            }
-        }
-
+    public synchronized void deleteByProviderUserId(String providerUserId) {
         if (logger.isDebugEnabled()) {
             logger.debug("Removing connectionData in map for providerUserId:"+providerUserId);
         }
+        Integer rankOfMatchingConnectionData = rankByProviderUserId.remove(providerUserId);
         if (rankOfMatchingConnectionData != null) {
             connectionDataByRank.remove(rankOfMatchingConnectionData);
+            fireConnectionRemoved(providerUserId);
         }
 
     }
@@ -129,12 +153,17 @@ public class InMemoryProviderConnectionRepository {
     /**
      * Resets connection repository.
      */
-    public void deleteAll() {
+    public synchronized void deleteAll() {
 
         if (logger.isDebugEnabled()) {
             logger.debug("Removing connectionData for all providers");
         }
-        connectionDataByRank = new TreeMap<Integer, ConnectionData>();
+        List<ConnectionData> removed = findAllOrderByRank();
+        rankByProviderUserId.clear();
+        connectionDataByRank.clear();
+        for (ConnectionData connectionData : removed) {
+            fireConnectionRemoved(connectionData.getProviderUserId());
+        }
     }
 
     /**
@@ -142,17 +171,29 @@ public class InMemoryProviderConnectionRepository {
      *
      * @param connection - {@linkplain org.springframework.social.connect.Connection}
      * @param providerUserId
+     * @throws org.springframework.social.connect.DuplicateConnectionException - If the connection changes its provider
+     *             user id to one already connected at another rank
      */
-    public void updateByProviderUserId(ConnectionData connection, String providerUserId) {
+    public synchronized void updateByProviderUserId(ConnectionData connection, String providerUserId)
+            throws DuplicateConnectionException {
 
         if (logger.isDebugEnabled()) {
             logger.debug("UpdateByProviderUserid for providerUserId:"+providerUserId);
         }
+        String newProviderUserId = connection.getProviderUserId();
+        if (!providerUserId.equals(newProviderUserId) && rankByProviderUserId.containsKey(providerUserId)
+                && rankByProviderUserId.containsKey(newProviderUserId)) {
+            throw new DuplicateConnectionException(new ConnectionKey(connection.getProviderId(), newProviderUserId));
+        }
         try {
-            for (Map.Entry<Integer, ConnectionData> cd : connectionDataByRank.entrySet()) {
-                ConnectionData tempConnectionData = cd.getValue();
-                if (tempConnectionData.getProviderUserId().equals(providerUserId)) {
-                    connectionDataByRank.put(cd.getKey(), connection);
+            Integer rank = rankByProviderUserId.get(providerUserId);
+            if (rank != null) {
+                connectionDataByRank.put(rank, connection);
+                if (!providerUserId.equals(connection.getProviderUserId())) {
+                    rankByProviderUserId.remove(providerUserId);
+                    rankByProviderUserId.put(connection.getProviderUserId(), rank);
+                    fireConnectionRemoved(providerUserId);
+                    fireConnectionAdded(connection.getProviderUserId());
                 }
             }
         } catch (Exception exc) {
@@ -168,13 +209,17 @@ public class InMemoryProviderConnectionRepository {
      * @return - List of connection data.
      */
     public List<ConnectionData> findByProviderUserIdsOrderByProviderIdAndRank(List<String> providerUserIdsByProviderId) {
-        List<ConnectionData> returnConnectionDatas = new ArrayList<ConnectionData>();
-        for (ConnectionData connectionData : connectionDataByRank.values()) {
-            if (providerUserIdsByProviderId.contains(connectionData.getProviderUserId())) {
-                returnConnectionDatas.add(connectionData);
+        SortedMap<Integer, ConnectionData> matches = new TreeMap<Integer, ConnectionData>();
+        for (String providerUserId : providerUserIdsByProviderId) {
+            Integer rank = rankByProviderUserId.get(providerUserId);
+            if (rank != null) {
+                ConnectionData connectionData = connectionDataByRank.get(rank);
+                if (connectionData != null) {
+                    matches.put(rank, connectionData);
+                }
             }
         }
-        return returnConnectionDatas;
+        return new ArrayList<ConnectionData>(matches.values());
     }
 
     /**
@@ -183,19 +228,11 @@ public class InMemoryProviderConnectionRepository {
      * @param connectionData - Given connection data
      * @throws org.springframework.social.connect.DuplicateConnectionException - If given connection already exits5
      */
-    public void add(ConnectionData connectionData) throws DuplicateConnectionException {
-        for (ConnectionData cd : connectionDataByRank.values()) {
-            if (cd.getProviderUserId().equals(connectionData.getProviderUserId())) {
-                throw new DuplicateConnectionException(new ConnectionKey(connectionData.getProviderId(),
-                        connectionData.getProviderUserId()));
-            }
-        }
-
+    public synchronized void add(ConnectionData connectionData) throws DuplicateConnectionException {
         if (logger.isDebugEnabled()) {
             logger.debug("Adding connectionData in map for providerUserId:"+connectionData.getProviderUserId());
         }
-        connectionDataByRank.put(getNextRank(), connectionData);
-
+        add(connectionData, getNextRank());
     }
 
     /**
@@ -205,14 +242,18 @@ public class InMemoryProviderConnectionRepository {
      * @param rank - value which aids in sorting
      * @throws org.springframework.social.connect.DuplicateConnectionException - If given connection already exists
      */
-    public void add(ConnectionData connectionData, int rank) throws DuplicateConnectionException {
-        for (ConnectionData cd : connectionDataByRank.values()) {
-            if (cd.getProviderUserId().equals(connectionData.getProviderUserId())) {
-                throw new DuplicateConnectionException(new ConnectionKey(connectionData.getProviderId(),
-                        connectionData.getProviderUserId()));
-            }
+    public synchronized void add(ConnectionData connectionData, int rank) throws DuplicateConnectionException {
+        String providerUserId = connectionData.getProviderUserId();
+        if (rankByProviderUserId.containsKey(providerUserId)) {
+            throw new DuplicateConnectionException(new ConnectionKey(connectionData.getProviderId(), providerUserId));
+        }
+        ConnectionData replaced = connectionDataByRank.put(rank, connectionData);
+        if (replaced != null) {
+            rankByProviderUserId.remove(replaced.getProviderUserId());
+            fireConnectionRemoved(replaced.getProviderUserId());
         }
-        connectionDataByRank.put(rank, connectionData);
+        rankByProviderUserId.put(providerUserId, rank);
+        fireConnectionAdded(providerUserId);
 
     }
 
@@ -222,13 +263,23 @@ public class InMemoryProviderConnectionRepository {
      * @return - Next rank.
      */
     protected int getNextRank() {
-        Integer maxRank = null;
-        for (Integer rank : connectionDataByRank.keySet()) {
-            if (maxRank == null || rank.intValue() > maxRank.intValue()) {
-                maxRank = rank.intValue();
-            }
+        try {
+            return connectionDataByRank.lastKey().intValue() + 1;
+        } catch (NoSuchElementException e) {
+            return 1;
+        }
+    }
+
+    private void fireConnectionAdded(String providerUserId) {
+        if (listener != null) {
+            listener.connectionAdded(userId, new ConnectionKey(providerId, providerUserId));
+        }
+    }
+
+    private void fireConnectionRemoved(String providerUserId) {
+        if (listener != null) {
+            listener.connectionRemoved(userId, new ConnectionKey(providerId, providerUserId));
         }
-        return maxRank == null ? 1 : (maxRank.intValue() + 1);
     }
 
 }
@@ -14,15 +14,42 @@ package org.springframework.social.openidconnect.inmemory;
  */
 
 import org.springframework.social.connect.*;
+import org.springframework.social.openidconnect.ExpiringConnection;
+import org.springframework.social.openidconnect.ExpiringConnectionSource;
+import org.springframework.social.openidconnect.RankedConnection;
+import org.springframework.social.openidconnect.RankedConnectionSource;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
- * {@link org.springframework.social.connect.UsersConnectionRepository} that stores Connection data in a simple in-memory map structure
+ * {@link org.springframework.social.connect.UsersConnectionRepository} that stores Connection data in a simple in-memory map structure.
+ * Safe for concurrent sign ins: per user and per provider repositories are created atomically and lookups do not lock.
  *
  * @author Michael Lavelle
  */
-public class InMemoryUsersConnectionRepository implements UsersConnectionRepository {
+public class InMemoryUsersConnectionRepository implements UsersConnectionRepository, ExpiringConnectionSource,
+        RankedConnectionSource {
+
+    private static final SortedSet<String> NO_USER_IDS = Collections.unmodifiableSortedSet(new TreeSet<String>());
+
+    private static final Comparator<ExpiringConnection> EXPIRING_ORDER = new Comparator<ExpiringConnection>() {
+        @Override
+        public int compare(ExpiringConnection first, ExpiringConnection second) {
+            int order = first.getConnectionData().getExpireTime().compareTo(second.getConnectionData().getExpireTime());
+            if (order == 0) {
+                order = first.getUserId().compareTo(second.getUserId());
+            }
+            if (order == 0) {
+                order = first.getConnectionData().getProviderUserId().compareTo(
+                        second.getConnectionData().getProviderUserId());
+            }
+            return order;
+        }
+    };
 
     /**
      * User Connection factory locator
@@ -37,7 +64,46 @@ public class InMemoryUsersConnectionRepository implements UsersConnectionReposit
     /**
      * Repositories map
      */
-    protected SortedMap<String, InMemoryConnectionRepository> connectionRepositoriesByUserId;
+    protected ConcurrentNavigableMap<String, InMemoryConnectionRepository> connectionRepositoriesByUserId;
+
+    /**
+     * Reverse index from connection to the sorted local user ids holding it. Sets are never modified once published,
+     * writers replace them under the index lock, so lookups do not lock.
+     */
+    private final ConcurrentMap<ConnectionKey, SortedSet<String>> userIdsByConnectionKey = new ConcurrentHashMap<ConnectionKey, SortedSet<String>>();
+
+    /**
+     * Keeps the reverse index in line with per user repositories.
+     */
+    private final InMemoryConnectionListener indexUpdater = new InMemoryConnectionListener() {
+
+        @Override
+        public void connectionAdded(String userId, ConnectionKey connectionKey) {
+            synchronized (userIdsByConnectionKey) {
+                SortedSet<String> userIds = userIdsByConnectionKey.get(connectionKey);
+                SortedSet<String> copy = userIds == null ? new TreeSet<String>() : new TreeSet<String>(userIds);
+                copy.add(userId);
+                userIdsByConnectionKey.put(connectionKey, Collections.unmodifiableSortedSet(copy));
+            }
+        }
+
+        @Override
+        public void connectionRemoved(String userId, ConnectionKey connectionKey) {
+            synchronized (userIdsByConnectionKey) {
+                SortedSet<String> userIds = userIdsByConnectionKey.get(connectionKey);
+                if (userIds == null || !userIds.contains(userId)) {
+                    return;
+                }
+                if (userIds.size() == 1) {
+                    userIdsByConnectionKey.remove(connectionKey);
+                } else {
+                    SortedSet<String> copy = new TreeSet<String>(userIds);
+                    copy.remove(userId);
+                    userIdsByConnectionKey.put(connectionKey, Collections.unmodifiableSortedSet(copy));
+                }
+            }
+        }
+    };
 
     /**
      * connection factory locator is needed to find existing connections.
@@ -46,7 +112,7 @@ public class InMemoryUsersConnectionRepository implements UsersConnectionReposit
      */
     public InMemoryUsersConnectionRepository(ConnectionFactoryLocator connectionFactoryLocator) {
         this.connectionFactoryLocator = connectionFactoryLocator;
-        this.connectionRepositoriesByUserId = new TreeMap<String, InMemoryConnectionRepository>();
+        this.connectionRepositoriesByUserId = new ConcurrentSkipListMap<String, InMemoryConnectionRepository>();
     }
 
     /**
@@ -80,13 +146,7 @@ public class InMemoryUsersConnectionRepository implements UsersConnectionReposit
      */
     @Override
     public List<String> findUserIdsWithConnection(Connection<?> connection) {
-        ConnectionKey key = connection.getKey();
-        List<String> localUserIds = new ArrayList<String>();
-        for (Map.Entry<String, InMemoryConnectionRepository> entry : connectionRepositoriesByUserId.entrySet()) {
-            if (entry.getValue().hasConnection(key)) {
-                localUserIds.add(entry.getKey());
-            }
-        }
+        List<String> localUserIds = new ArrayList<String>(getUserIds(connection.getKey()));
         if (localUserIds.size() == 0 && connectionSignUp != null) {
             String newUserId = connectionSignUp.execute(connection);
             if (newUserId != null) {
@@ -106,12 +166,8 @@ public class InMemoryUsersConnectionRepository implements UsersConnectionReposit
     @Override
     public Set<String> findUserIdsConnectedTo(String providerId, Set<String> providerUserIds) {
         final Set<String> localUserIds = new HashSet<String>();
-        for (Map.Entry<String, InMemoryConnectionRepository> entry : connectionRepositoriesByUserId.entrySet()) {
-            for (String providerUserId : providerUserIds) {
-                if (entry.getValue().hasConnection(new ConnectionKey(providerId, providerUserId))) {
-                    localUserIds.add(entry.getKey());
-                }
-            }
+        for (String providerUserId : providerUserIds) {
+            localUserIds.addAll(getUserIds(new ConnectionKey(providerId, providerUserId)));
         }
         return localUserIds;
     }
@@ -130,7 +186,56 @@ public class InMemoryUsersConnectionRepository implements UsersConnectionReposit
     }
 
     /**
-     * Creates in memory connection repository for given user id
+     * Finds expiring connections by scanning the connections of all users held in memory.
+     * 
+     * @see org.springframework.social.openidconnect.ExpiringConnectionSource#findExpiringConnections(java.lang.String,
+     * org.springframework.social.openidconnect.ExpiringConnection, long, int)
+     */
+    @Override
+    public List<ExpiringConnection> findExpiringConnections(String providerId, ExpiringConnection after, long expiresBefore, int maxResults) {
+        List<ExpiringConnection> expiring = new ArrayList<ExpiringConnection>();
+        for (Map.Entry<String, InMemoryConnectionRepository> entry : connectionRepositoriesByUserId.entrySet()) {
+            InMemoryProviderConnectionRepository providerRepository = entry.getValue().providerRepositories.get(providerId);
+            if (providerRepository == null) {
+                continue;
+            }
+            for (ConnectionData connectionData : providerRepository.findAllOrderByRank()) {
+                Long expireTime = connectionData.getExpireTime();
+                if (expireTime == null || expireTime >= expiresBefore || connectionData.getRefreshToken() == null) {
+                    continue;
+                }
+                ExpiringConnection connection = new ExpiringConnection(entry.getKey(), connectionData);
+                if (after == null || EXPIRING_ORDER.compare(connection, after) > 0) {
+                    expiring.add(connection);
+                }
+            }
+        }
+        Collections.sort(expiring, EXPIRING_ORDER);
+        return expiring.size() > maxResults ? new ArrayList<ExpiringConnection>(expiring.subList(0, maxResults)) : expiring;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.springframework.social.openidconnect.RankedConnectionSource#findRankedConnections(java.lang.String)
+     */
+    @Override
+    public List<RankedConnection> findRankedConnections(String userId) {
+        List<RankedConnection> rankedConnections = new ArrayList<RankedConnection>();
+        InMemoryConnectionRepository connectionRepository = connectionRepositoriesByUserId.get(userId);
+        if (connectionRepository != null) {
+            for (InMemoryProviderConnectionRepository providerRepository : connectionRepository.providerRepositories.values()) {
+                for (Map.Entry<Integer, ConnectionData> entry : providerRepository.connectionDataByRank.entrySet()) {
+                    rankedConnections.add(new RankedConnection(entry.getValue(), entry.getKey()));
+                }
+            }
+        }
+        return rankedConnections;
+    }
+
+    /**
+     * Creates in memory connection repository for given user id, or gets the existing one. Concurrent callers for the
+     * same user id get the same repository.
      * 
      * @param userId - User id
      * @return - User Connection repository.
@@ -138,11 +243,56 @@ public class InMemoryUsersConnectionRepository implements UsersConnectionReposit
     protected InMemoryConnectionRepository createInMemoryConnectionRepository(String userId) {
         InMemoryConnectionRepository connectionRepository = connectionRepositoriesByUserId.get(userId);
         if (connectionRepository == null) {
-            connectionRepository = new InMemoryConnectionRepository(userId, connectionFactoryLocator);
-            connectionRepositoriesByUserId.put(userId, connectionRepository);
+            connectionRepository = newInMemoryConnectionRepository(userId);
+            InMemoryConnectionRepository existing = connectionRepositoriesByUserId.putIfAbsent(userId, connectionRepository);
+            if (existing != null) {
+                connectionRepository = existing;
+            }
         }
 
         return connectionRepository;
     }
 
-}
\ No newline at end of file
+    /**
+     * Creates a new, not yet registered, in memory connection repository for given user id. Connections added to it
+     * are indexed for {@link #findUserIdsConnectedTo(String, Set)}.
+     * 
+     * @param userId - User id
+     * @return - User Connection repository.
+     */
+    protected InMemoryConnectionRepository newInMemoryConnectionRepository(String userId) {
+        return new InMemoryConnectionRepository(userId, connectionFactoryLocator, indexUpdater);
+    }
+
+    /**
+     * Drops the connection repository of given user id from memory, together with its reverse index entries. The
+     * connections are not removed from the dropped repository itself.
+     * 
+     * @param userId - User id
+     * @return - dropped repository, null if none was registered
+     */
+    protected InMemoryConnectionRepository removeInMemoryConnectionRepository(String userId) {
+        InMemoryConnectionRepository connectionRepository = connectionRepositoriesByUserId.remove(userId);
+        if (connectionRepository != null) {
+            for (InMemoryProviderConnectionRepository providerRepository : connectionRepository.providerRepositories.values()) {
+                for (ConnectionData connectionData : providerRepository.findAllOrderByRank()) {
+                    indexUpdater.connectionRemoved(userId,
+                            new ConnectionKey(connectionData.getProviderId(), connectionData.getProviderUserId()));
+                }
+            }
+        }
+        return connectionRepository;
+    }
+
+    /**
+     * Looks up local user ids holding given connection in the reverse index.
+     * 
+     * @param connectionKey - Provider id and provider user id
+     * @return - sorted user ids, empty if none
+     */
+    private SortedSet<String> getUserIds(ConnectionKey connectionKey) {
+        SortedSet<String> userIds = userIdsByConnectionKey.get(connectionKey);
+        return userIds == null ? NO_USER_IDS : userIds;
+    }
+
+}
@@ -0,0 +1,100 @@
+package org.springframework.social.openidconnect.inmemory;
+
+import java.util.List;
+
+import org.springframework.social.connect.Connection;
+import org.springframework.social.connect.ConnectionKey;
+import org.springframework.social.connect.ConnectionRepository;
+import org.springframework.util.MultiValueMap;
+
+/**
+ * Connection repository which reads from an in memory repository and writes to a backing repository before the in
+ * memory one. A failed write to the backing repository leaves the in memory repository unchanged.
+ */
+class WriteThroughConnectionRepository implements ConnectionRepository {
+
+    /**
+     * Repository reads are served from.
+     */
+    private final ConnectionRepository cache;
+
+    /**
+     * Repository of record.
+     */
+    private final ConnectionRepository backing;
+
+    /**
+     * Constructor which accepts both repositories of one user.
+     *
+     * @param cache - In memory repository
+     * @param backing - Repository of record
+     */
+    WriteThroughConnectionRepository(ConnectionRepository cache, ConnectionRepository backing) {
+        this.cache = cache;
+        this.backing = backing;
+    }
+
+    @Override
+    public MultiValueMap<String, Connection<?>> findAllConnections() {
+        return cache.findAllConnections();
+    }
+
+    @Override
+    public List<Connection<?>> findConnections(String providerId) {
+        return cache.findConnections(providerId);
+    }
+
+    @Override
+    public <A> List<Connection<A>> findConnections(Class<A> apiType) {
+        return cache.findConnections(apiType);
+    }
+
+    @Override
+    public MultiValueMap<String, Connection<?>> findConnectionsToUsers(MultiValueMap<String, String> providerUserIds) {
+        return cache.findConnectionsToUsers(providerUserIds);
+    }
+
+    @Override
+    public Connection<?> getConnection(ConnectionKey connectionKey) {
+        return cache.getConnection(connectionKey);
+    }
+
+    @Override
+    public <A> Connection<A> getConnection(Class<A> apiType, String providerUserId) {
+        return cache.getConnection(apiType, providerUserId);
+    }
+
+    @Override
+    public <A> Connection<A> getPrimaryConnection(Class<A> apiType) {
+        return cache.getPrimaryConnection(apiType);
+    }
+
+    @Override
+    public <A> Connection<A> findPrimaryConnection(Class<A> apiType) {
+        return cache.findPrimaryConnection(apiType);
+    }
+
+    @Override
+    public void addConnection(Connection<?> connection) {
+        backing.addConnection(connection);
+        cache.addConnection(connection);
+    }
+
+    @Override
+    public void updateConnection(Connection<?> connection) {
+        backing.updateConnection(connection);
+        cache.updateConnection(connection);
+    }
+
+    @Override
+    public void removeConnections(String providerId) {
+        backing.removeConnections(providerId);
+        cache.removeConnections(providerId);
+    }
+
+    @Override
+    public void removeConnection(ConnectionKey connectionKey) {
+        backing.removeConnection(connectionKey);
+        cache.removeConnection(connectionKey);
+    }
+}
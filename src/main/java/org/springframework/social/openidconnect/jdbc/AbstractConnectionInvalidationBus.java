@@ -0,0 +1,56 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps the subscribers of a {@link ConnectionInvalidationBus}.
+ */
+public abstract class AbstractConnectionInvalidationBus implements ConnectionInvalidationBus {
+
+    /**
+     * Logger for {@link AbstractConnectionInvalidationBus}
+     */
+    private static final Logger logger = Logger.getLogger(AbstractConnectionInvalidationBus.class);
+
+    private final List<ConnectionInvalidationListener> listeners = new CopyOnWriteArrayList<ConnectionInvalidationListener>();
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.springframework.social.openidconnect.jdbc.ConnectionInvalidationBus#subscribe(org.springframework.social.
+     * openidconnect.jdbc.ConnectionInvalidationListener)
+     */
+    @Override
+    public void subscribe(ConnectionInvalidationListener listener) {
+        listeners.add(listener);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.springframework.social.openidconnect.jdbc.ConnectionInvalidationBus#unsubscribe(org.springframework.social.
+     * openidconnect.jdbc.ConnectionInvalidationListener)
+     */
+    @Override
+    public void unsubscribe(ConnectionInvalidationListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Notifies all subscribers of this node. A failing subscriber does not keep the others from being notified.
+     *
+     * @param userId - Local user id
+     */
+    protected void notifyListeners(String userId) {
+        for (ConnectionInvalidationListener listener : listeners) {
+            try {
+                listener.connectionsChanged(userId);
+            } catch (RuntimeException ex) {
+                logger.error("Exception thrown while notifying invalidation of user " + userId, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.security.crypto.codec.Hex;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+
+/**
+ * {@link TextEncryptor} for the token columns of <code>UserConnection</code> using 256 bit AES in GCM mode. The key is
+ * derived once, when the encryptor is created, and each thread reuses its own {@link Cipher} and buffers, so encrypting
+ * or decrypting a token costs one cipher initialization, the AES work and one Base64 pass straight between the string
+ * and the buffer. Every encryption uses a fresh random 12 byte IV, and decryption rejects tampered values.
+ * <p>
+ * Encrypted values are the IV followed by ciphertext and tag, Base64 encoded: a 900 character id token takes 1240
+ * characters, against 1856 for the hex encoding of {@link org.springframework.security.crypto.encrypt.Encryptors#text(
+ * CharSequence, CharSequence)}. Values are not compatible with that encryptor. Requires a JCE provider supporting
+ * AES/GCM/NoPadding, included in Java 8 and later; the constructors fail otherwise.
+ * </p>
+ * <p>
+ * Encrypting and decrypting id tokens is about as fast as that encryptor or faster, but decrypting short access tokens
+ * is slower, as the JDK sets up GCM for each value. Choose this encryptor for tamper detection and the smaller columns,
+ * not for speed.
+ * </p>
+ */
+public class AesGcmTextEncryptor implements TextEncryptor {
+
+    private static final String ALGORITHM = "AES/GCM/NoPadding";
+
+    private static final int IV_LENGTH = 12;
+
+    private static final int TAG_LENGTH = 16;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final char[] BASE64_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+            .toCharArray();
+
+    /**
+     * Value of each Base64 character, -1 for other characters.
+     */
+    private static final int[] BASE64_VALUES = new int[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, -1);
+        for (int i = 0; i < BASE64_CHARS.length; i++) {
+            BASE64_VALUES[BASE64_CHARS[i]] = i;
+        }
+    }
+
+    private final SecretKey key;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final ThreadLocal<CipherState> states = new ThreadLocal<CipherState>() {
+        @Override
+        protected CipherState initialValue() {
+            try {
+                return new CipherState(Cipher.getInstance(ALGORITHM));
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException("Unable to create " + ALGORITHM + " cipher", ex);
+            }
+        }
+    };
+
+    /**
+     * Creates an encryptor with given AES key.
+     *
+     * @param key - 128, 192 or 256 bit AES key
+     * @throws IllegalStateException - If this JVM does not support AES/GCM/NoPadding
+     */
+    public AesGcmTextEncryptor(SecretKey key) {
+        checkAvailable();
+        this.key = key;
+    }
+
+    /**
+     * Creates an encryptor with a 256 bit key derived from given password and salt with PBKDF2, like
+     * {@link org.springframework.security.crypto.encrypt.Encryptors#text(CharSequence, CharSequence)}.
+     *
+     * @param password - Password the key is derived from
+     * @param salt - Hex encoded salt
+     * @throws IllegalStateException - If this JVM does not support AES/GCM/NoPadding
+     */
+    public AesGcmTextEncryptor(CharSequence password, CharSequence salt) {
+        this(deriveKey(password, salt));
+    }
+
+    /**
+     * Derives a 256 bit AES key with 1024 iterations of PBKDF2WithHmacSHA1.
+     *
+     * @param password - Password the key is derived from
+     * @param salt - Hex encoded salt
+     * @return - AES key
+     */
+    public static SecretKey deriveKey(CharSequence password, CharSequence salt) {
+        try {
+            PBEKeySpec keySpec = new PBEKeySpec(password.toString().toCharArray(), Hex.decode(salt), 1024, 256);
+            SecretKey secretKey = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1").generateSecret(keySpec);
+            return new SecretKeySpec(secretKey.getEncoded(), "AES");
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Unable to derive AES key", ex);
+        }
+    }
+
+    /**
+     * Fails if the JVM lacks GCM, as on Java 6 and 7 without an extra JCE provider, instead of on the first token.
+     */
+    private static void checkAvailable() {
+        try {
+            Class.forName("javax.crypto.spec.GCMParameterSpec");
+            Cipher.getInstance(ALGORITHM);
+        } catch (ClassNotFoundException ex) {
+            throw new IllegalStateException(ALGORITHM + " is not available, it requires Java 8 or later", ex);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ALGORITHM + " is not available, install a JCE provider supporting it", ex);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.springframework.security.crypto.encrypt.TextEncryptor#encrypt(java.lang.String)
+     */
+    @Override
+    public String encrypt(String text) {
+        byte[] plain = text.getBytes(UTF8);
+        CipherState state = states.get();
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        try {
+            state.cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, iv));
+            byte[] encrypted = state.encryptedBuffer(IV_LENGTH + state.cipher.getOutputSize(plain.length));
+            System.arraycopy(iv, 0, encrypted, 0, IV_LENGTH);
+            int length = IV_LENGTH + state.cipher.doFinal(plain, 0, plain.length, encrypted, IV_LENGTH);
+            return encodeBase64(encrypted, length);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Unable to encrypt", ex);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.springframework.security.crypto.encrypt.TextEncryptor#decrypt(java.lang.String)
+     */
+    @Override
+    public String decrypt(String encryptedText) {
+        CipherState state = states.get();
+        byte[] encrypted = state.encryptedBuffer(encryptedText.length() / 4 * 3);
+        int length = decodeBase64(encryptedText, encrypted);
+        if (length < IV_LENGTH + TAG_LENGTH) {
+            throw new IllegalArgumentException("Encrypted text is too short");
+        }
+        byte[] plain = state.plainBuffer(length - IV_LENGTH - TAG_LENGTH);
+        try {
+            state.cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, encrypted, 0, IV_LENGTH));
+            int plainLength = state.cipher.doFinal(encrypted, IV_LENGTH, length - IV_LENGTH, plain, 0);
+            return new String(plain, 0, plainLength, UTF8);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Unable to decrypt, wrong key or tampered value", ex);
+        }
+    }
+
+    /**
+     * Encodes given bytes as padded Base64.
+     */
+    private static String encodeBase64(byte[] bytes, int length) {
+        char[] chars = new char[(length + 2) / 3 * 4];
+        int c = 0;
+        int i = 0;
+        for (; i + 2 < length; i += 3) {
+            int bits = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+            chars[c++] = BASE64_CHARS[bits >>> 18];
+            chars[c++] = BASE64_CHARS[(bits >>> 12) & 0x3f];
+            chars[c++] = BASE64_CHARS[(bits >>> 6) & 0x3f];
+            chars[c++] = BASE64_CHARS[bits & 0x3f];
+        }
+        if (i < length) {
+            int bits = (bytes[i] & 0xff) << 16 | (i + 1 < length ? (bytes[i + 1] & 0xff) << 8 : 0);
+            chars[c++] = BASE64_CHARS[bits >>> 18];
+            chars[c++] = BASE64_CHARS[(bits >>> 12) & 0x3f];
+            chars[c++] = i + 1 < length ? BASE64_CHARS[(bits >>> 6) & 0x3f] : '=';
+            chars[c] = '=';
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Decodes padded Base64 into given buffer.
+     *
+     * @return - number of bytes decoded
+     * @throws IllegalArgumentException - If the text is not Base64
+     */
+    private static int decodeBase64(String text, byte[] bytes) {
+        int length = text.length();
+        if (length % 4 != 0) {
+            throw new IllegalArgumentException("Encrypted text is not Base64 encoded");
+        }
+        int padding = length > 0 && text.charAt(length - 1) == '=' ? (text.charAt(length - 2) == '=' ? 2 : 1) : 0;
+        int b = 0;
+        for (int i = 0; i < length; i += 4) {
+            int bits = base64Value(text, i) << 18 | base64Value(text, i + 1) << 12;
+            if (i + 4 < length || padding == 0) {
+                bits |= base64Value(text, i + 2) << 6 | base64Value(text, i + 3);
+                bytes[b++] = (byte) (bits >>> 16);
+                bytes[b++] = (byte) (bits >>> 8);
+                bytes[b++] = (byte) bits;
+            } else if (padding == 1) {
+                bits |= base64Value(text, i + 2) << 6;
+                bytes[b++] = (byte) (bits >>> 16);
+                bytes[b++] = (byte) (bits >>> 8);
+            } else {
+                bytes[b++] = (byte) (bits >>> 16);
+            }
+        }
+        return b;
+    }
+
+    private static int base64Value(String text, int index) {
+        char c = text.charAt(index);
+        int value = c < 128 ? BASE64_VALUES[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("Encrypted text is not Base64 encoded");
+        }
+        return value;
+    }
+
+    /**
+     * Cipher and buffers of one thread, grown to the largest value seen.
+     */
+    private static final class CipherState {
+
+        private final Cipher cipher;
+
+        private byte[] encrypted = new byte[256];
+
+        private byte[] plain = new byte[256];
+
+        CipherState(Cipher cipher) {
+            this.cipher = cipher;
+        }
+
+        byte[] encryptedBuffer(int length) {
+            if (encrypted.length < length) {
+                encrypted = new byte[length];
+            }
+            return encrypted;
+        }
+
+        byte[] plainBuffer(int length) {
+            if (plain.length < length) {
+                plain = new byte[length];
+            }
+            return plain;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Runs cache invalidations once the writes they follow are visible to other readers: after the current transaction
+ * completes, committed or rolled back, or right away outside of transactions.
+ */
+final class AfterTransaction {
+
+    private AfterTransaction() {
+    }
+
+    /**
+     * Runs given action after the current transaction, or now if transaction synchronization is not active.
+     *
+     * @param action - Action to run
+     */
+    static void run(final Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,45 @@
+package org.springframework.social.openidconnect.jdbc;
+
+/**
+ * Outcome or progress of a batch job over <code>UserConnection</code>, such as a {@link UserConnectionBulkLoader},
+ * {@link UserConnectionReencryptor} or {@link UserConnectionExporter} run.
+ */
+public final class BatchJobReport {
+
+    private final long rows;
+
+    private final long elapsedMillis;
+
+    /**
+     * Constructor which accepts the processed row count and duration.
+     *
+     * @param rows - Number of rows processed
+     * @param elapsedMillis - Duration in milliseconds
+     */
+    public BatchJobReport(long rows, long elapsedMillis) {
+        this.rows = rows;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * Gets the throughput.
+     *
+     * @return - rows processed per second
+     */
+    public double getRowsPerSecond() {
+        return elapsedMillis == 0 ? rows * 1000d : rows * 1000d / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return rows + " rows in " + elapsedMillis + " ms (" + Math.round(getRowsPerSecond()) + " rows/s)";
+    }
+}
@@ -0,0 +1,286 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.social.connect.Connection;
+import org.springframework.social.connect.ConnectionData;
+import org.springframework.social.connect.ConnectionFactoryLocator;
+import org.springframework.social.connect.ConnectionKey;
+import org.springframework.social.connect.ConnectionRepository;
+import org.springframework.social.connect.NoSuchConnectionException;
+import org.springframework.social.connect.NotConnectedException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+/**
+ * Decorates {@link OpenIdConnectJdbcConnectionRepository} with a {@link ConnectionDataCache}. Reads are answered from
+ * the cached connection data of the user, loading all connections of the user with one query on a
+ * miss. Writes go to the database and invalidate the user, through the {@link ConnectionInvalidationBus} if one is
+ * given so other nodes drop the user as well. Within a transaction, reads of a user written in it bypass the cache, and
+ * the user is invalidated again, and announced, once the transaction completed, so readers do not keep the rows
+ * committed before.
+ * <p>
+ * Every read creates new {@link Connection} instances, as connections are not safe to share between callers.
+ * </p>
+ */
+public class CachingConnectionRepository implements ConnectionRepository {
+
+    private final String userId;
+
+    private final OpenIdConnectJdbcConnectionRepository delegate;
+
+    private final ConnectionDataCache cache;
+
+    private final ConnectionFactoryLocator connectionFactoryLocator;
+
+    private final ConnectionInvalidationBus invalidationBus;
+
+    /**
+     * Constructor which accepts the repository to decorate and the cache shared by all users.
+     *
+     * @param userId - Local user id
+     * @param delegate - JDBC repository of the same user
+     * @param cache - Connection data cache
+     * @param connectionFactoryLocator - Connection factory locator
+     */
+    public CachingConnectionRepository(String userId, OpenIdConnectJdbcConnectionRepository delegate,
+            ConnectionDataCache cache, ConnectionFactoryLocator connectionFactoryLocator) {
+        this(userId, delegate, cache, connectionFactoryLocator, null);
+    }
+
+    /**
+     * Constructor which accepts the repository to decorate, the cache shared by all users and the bus announcing
+     * writes to other nodes.
+     *
+     * @param userId - Local user id
+     * @param delegate - JDBC repository of the same user
+     * @param cache - Connection data cache, subscribed to the bus by the caller
+     * @param connectionFactoryLocator - Connection factory locator
+     * @param invalidationBus - Bus announcing writes, null to only invalidate the given cache
+     */
+    public CachingConnectionRepository(String userId, OpenIdConnectJdbcConnectionRepository delegate,
+            ConnectionDataCache cache, ConnectionFactoryLocator connectionFactoryLocator,
+            ConnectionInvalidationBus invalidationBus) {
+        this.userId = userId;
+        this.delegate = delegate;
+        this.cache = cache;
+        this.connectionFactoryLocator = connectionFactoryLocator;
+        this.invalidationBus = invalidationBus;
+    }
+
+    public MultiValueMap<String, Connection<?>> findAllConnections() {
+        MultiValueMap<String, Connection<?>> connections = new LinkedMultiValueMap<String, Connection<?>>();
+        Set<String> registeredProviderIds = connectionFactoryLocator.registeredProviderIds();
+        for (String registeredProviderId : registeredProviderIds) {
+            connections.put(registeredProviderId, Collections.<Connection<?>>emptyList());
+        }
+        for (ConnectionData connectionData : getUserConnections().getConnections()) {
+            String providerId = connectionData.getProviderId();
+            if (connections.get(providerId).size() == 0) {
+                connections.put(providerId, new LinkedList<Connection<?>>());
+            }
+            connections.add(providerId, createConnection(connectionData));
+        }
+        return connections;
+    }
+
+    public List<Connection<?>> findConnections(String providerId) {
+        return createConnections(getUserConnections().getConnections(providerId));
+    }
+
+    @SuppressWarnings("unchecked")
+    public <A> List<Connection<A>> findConnections(Class<A> apiType) {
+        List<?> connections = findConnections(getProviderId(apiType));
+        return (List<Connection<A>>) connections;
+    }
+
+    public MultiValueMap<String, Connection<?>> findConnectionsToUsers(MultiValueMap<String, String> providerUsers) {
+        if (providerUsers == null || providerUsers.isEmpty()) {
+            throw new IllegalArgumentException("Unable to execute find: no providerUsers provided");
+        }
+        UserConnections userConnections = getUserConnections();
+        MultiValueMap<String, Connection<?>> connectionsForUsers = new LinkedMultiValueMap<String, Connection<?>>();
+        for (Map.Entry<String, List<String>> entry : providerUsers.entrySet()) {
+            String providerId = entry.getKey();
+            List<String> providerUserIds = entry.getValue();
+            Map<String, Integer> indexByProviderUserId = new HashMap<String, Integer>();
+            for (int i = providerUserIds.size() - 1; i >= 0; i--) {
+                indexByProviderUserId.put(providerUserIds.get(i), i);
+            }
+            List<Connection<?>> connections = null;
+            for (ConnectionData connectionData : userConnections.getConnections(providerId)) {
+                Integer index = indexByProviderUserId.get(connectionData.getProviderUserId());
+                if (index == null) {
+                    continue;
+                }
+                if (connections == null) {
+                    connections = new ArrayList<Connection<?>>(Collections.<Connection<?>>nCopies(providerUserIds.size(), null));
+                    connectionsForUsers.put(providerId, connections);
+                }
+                connections.set(index, createConnection(connectionData));
+            }
+        }
+        return connectionsForUsers;
+    }
+
+    public Connection<?> getConnection(ConnectionKey connectionKey) {
+        ConnectionData connectionData = getUserConnections().getConnection(connectionKey);
+        if (connectionData == null) {
+            throw new NoSuchConnectionException(connectionKey);
+        }
+        return createConnection(connectionData);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <A> Connection<A> getConnection(Class<A> apiType, String providerUserId) {
+        String providerId = getProviderId(apiType);
+        return (Connection<A>) getConnection(new ConnectionKey(providerId, providerUserId));
+    }
+
+    @SuppressWarnings("unchecked")
+    public <A> Connection<A> getPrimaryConnection(Class<A> apiType) {
+        String providerId = getProviderId(apiType);
+        Connection<A> connection = (Connection<A>) findPrimaryConnection(providerId);
+        if (connection == null) {
+            throw new NotConnectedException(providerId);
+        }
+        return connection;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <A> Connection<A> findPrimaryConnection(Class<A> apiType) {
+        String providerId = getProviderId(apiType);
+        return (Connection<A>) findPrimaryConnection(providerId);
+    }
+
+    public void addConnection(Connection<?> connection) {
+        try {
+            delegate.addConnection(connection);
+        } finally {
+            invalidate();
+        }
+    }
+
+    public void updateConnection(Connection<?> connection) {
+        try {
+            delegate.updateConnection(connection);
+        } finally {
+            invalidate();
+        }
+    }
+
+    public void removeConnections(String providerId) {
+        try {
+            delegate.removeConnections(providerId);
+        } finally {
+            invalidate();
+        }
+    }
+
+    public void removeConnection(ConnectionKey connectionKey) {
+        try {
+            delegate.removeConnection(connectionKey);
+        } finally {
+            invalidate();
+        }
+    }
+
+    // internal helpers
+
+    /**
+     * Drops the user from the cache. Within a transaction the user is read past the cache until the transaction
+     * completed, as its writes are not visible to others yet, and dropped again then, as concurrent readers may have
+     * cached the rows committed before. Other nodes are told once the transaction completed.
+     */
+    private void invalidate() {
+        cache.invalidate(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            getWrittenUserIds().add(userId);
+            AfterTransaction.run(new Runnable() {
+                @Override
+                public void run() {
+                    cache.invalidate(userId);
+                    publish();
+                }
+            });
+        } else {
+            publish();
+        }
+    }
+
+    private void publish() {
+        if (invalidationBus != null) {
+            invalidationBus.publish(userId);
+        }
+    }
+
+    /**
+     * Returns users written through the cache in the current transaction, bound to the transaction until it
+     * completed.
+     *
+     * @return - Ids of users written in the current transaction
+     */
+    @SuppressWarnings("unchecked")
+    private Set<String> getWrittenUserIds() {
+        Set<String> userIds = (Set<String>) TransactionSynchronizationManager.getResource(cache);
+        if (userIds == null) {
+            userIds = new HashSet<String>();
+            TransactionSynchronizationManager.bindResource(cache, userIds);
+            AfterTransaction.run(new Runnable() {
+                @Override
+                public void run() {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(cache);
+                }
+            });
+        }
+        return userIds;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean isWrittenInTransaction() {
+        Set<String> userIds = (Set<String>) TransactionSynchronizationManager.getResource(cache);
+        return userIds != null && userIds.contains(userId);
+    }
+
+    private UserConnections getUserConnections() {
+        if (isWrittenInTransaction()) {
+            return delegate.findUserConnections();
+        }
+        UserConnections userConnections = cache.get(userId);
+        if (userConnections == null) {
+            long version = cache.startLoad(userId);
+            userConnections = delegate.findUserConnections();
+            cache.put(userId, userConnections, version);
+        }
+        return userConnections;
+    }
+
+    private Connection<?> findPrimaryConnection(String providerId) {
+        ConnectionData connectionData = getUserConnections().getPrimaryConnection(providerId);
+        return connectionData != null ? createConnection(connectionData) : null;
+    }
+
+    private Connection<?> createConnection(ConnectionData connectionData) {
+        return connectionFactoryLocator.getConnectionFactory(connectionData.getProviderId()).createConnection(connectionData);
+    }
+
+    private List<Connection<?>> createConnections(List<ConnectionData> connectionDataList) {
+        List<Connection<?>> connections = new ArrayList<Connection<?>>(connectionDataList.size());
+        for (ConnectionData connectionData : connectionDataList) {
+            connections.add(createConnection(connectionData));
+        }
+        return connections;
+    }
+
+    private <A> String getProviderId(Class<A> apiType) {
+        return connectionFactoryLocator.getConnectionFactory(apiType).getProviderId();
+    }
+}
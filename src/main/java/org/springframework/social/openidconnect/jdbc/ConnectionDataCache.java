@@ -0,0 +1,149 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.springframework.social.openidconnect.support.ExpiringLruMap;
+import org.springframework.util.Assert;
+
+/**
+ * Bounded cache of connection data by user id, used by {@link CachingConnectionRepository} so reads such as
+ * <code>getPrimaryConnection(PayPal.class)</code> do not query <code>UserConnection</code>. Tokens of cached data are
+ * decrypted on first use only, once per entry.
+ * <p>
+ * Entries expire after the configured time to live, or earlier when the first access token of the user still valid at
+ * load time expires; tokens already expired do not shorten it, their refresh goes through a repository and invalidates
+ * the user. The least recently used user is dropped once the cache is full. Writes through a caching repository
+ * invalidate the user; a load racing with an invalidation of the same user is not cached, loads of other users are.
+ * </p>
+ */
+public class ConnectionDataCache {
+
+    /**
+     * Logger for {@link ConnectionDataCache}
+     */
+    private static final Logger logger = Logger.getLogger(ConnectionDataCache.class);
+
+    private final long timeToLive;
+
+    /**
+     * Connections by user id, reserved while loaded.
+     */
+    private final ExpiringLruMap<String, UserConnections> entries;
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Creates a cache with given bounds.
+     *
+     * @param maxSize - Maximum number of users held
+     * @param timeToLive - Time in milliseconds connection data is kept at most
+     */
+    public ConnectionDataCache(int maxSize, long timeToLive) {
+        Assert.isTrue(timeToLive > 0, "timeToLive should be positive");
+        this.timeToLive = timeToLive;
+        this.entries = new ExpiringLruMap<String, UserConnections>(maxSize);
+    }
+
+    /**
+     * Gets cached connections of given user.
+     *
+     * @param userId - Local user id
+     * @return - cached connections, null if not cached or expired
+     */
+    UserConnections get(String userId) {
+        return entries.get(userId);
+    }
+
+    /**
+     * Registers a load of given user from the database, taken before querying. Concurrent loads of the same user share
+     * the reservation made by the first.
+     *
+     * @param userId - Local user id
+     * @return - version to pass to {@link #put(String, UserConnections, long)}
+     */
+    long startLoad(String userId) {
+        return entries.reserve(userId);
+    }
+
+    /**
+     * Caches connections of given user unless the user was invalidated or dropped since the load started.
+     *
+     * @param userId - Local user id
+     * @param connections - Connections loaded from the database
+     * @param loadVersion - Value of {@link #startLoad(String)} before the load
+     */
+    void put(String userId, UserConnections connections, long loadVersion) {
+        long now = System.currentTimeMillis();
+        long expiresAt = now + timeToLive;
+        Long expireTime = connections.getEarliestExpireTime(now);
+        if (expireTime != null && expireTime.longValue() < expiresAt) {
+            expiresAt = expireTime.longValue();
+        }
+        entries.putIfReserved(userId, loadVersion, connections, expiresAt);
+    }
+
+    /**
+     * Removes cached connections of given user.
+     *
+     * @param userId - Local user id
+     */
+    public void invalidate(String userId) {
+        entries.remove(userId);
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * Removes all cached connections.
+     */
+    public void clear() {
+        entries.clear();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Connection data cache cleared after " + getHits() + " hits and " + getMisses() + " misses");
+        }
+    }
+
+    /**
+     * Number of users currently held, including expired entries not yet removed and loads in progress.
+     *
+     * @return - cache size
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return entries.getMaxSize();
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Number of lookups answered from the cache.
+     *
+     * @return - hit count
+     */
+    public long getHits() {
+        return entries.getHits();
+    }
+
+    /**
+     * Number of lookups which had to query the database.
+     *
+     * @return - miss count
+     */
+    public long getMisses() {
+        return entries.getMisses();
+    }
+
+    /**
+     * Number of users invalidated by writes.
+     *
+     * @return - invalidation count
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+}
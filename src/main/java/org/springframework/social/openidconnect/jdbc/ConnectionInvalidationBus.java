@@ -0,0 +1,31 @@
+package org.springframework.social.openidconnect.jdbc;
+
+/**
+ * Spreads changes of user connections between nodes caching connection data, see
+ * {@link OpenIdJdbcUsersConnectionRepository#setInvalidationBus(ConnectionInvalidationBus)}. Subscribers on the
+ * publishing node are notified before {@link #publish(String)} returns, subscribers on other nodes within a delay bound
+ * by the implementation.
+ */
+public interface ConnectionInvalidationBus {
+
+    /**
+     * Announces that connections of a user changed.
+     *
+     * @param userId - Local user id
+     */
+    void publish(String userId);
+
+    /**
+     * Registers a listener for changes published on any node.
+     *
+     * @param listener - Listener to notify
+     */
+    void subscribe(ConnectionInvalidationListener listener);
+
+    /**
+     * Removes a listener registered with {@link #subscribe(ConnectionInvalidationListener)}.
+     *
+     * @param listener - Listener to stop notifying
+     */
+    void unsubscribe(ConnectionInvalidationListener listener);
+}
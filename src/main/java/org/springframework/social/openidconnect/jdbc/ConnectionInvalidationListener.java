@@ -0,0 +1,14 @@
+package org.springframework.social.openidconnect.jdbc;
+
+/**
+ * Callback notified by a {@link ConnectionInvalidationBus} when connections of a user changed.
+ */
+public interface ConnectionInvalidationListener {
+
+    /**
+     * Called when connections of a user changed on this or another node.
+     *
+     * @param userId - Local user id
+     */
+    void connectionsChanged(String userId);
+}
@@ -0,0 +1,18 @@
+package org.springframework.social.openidconnect.jdbc;
+
+/**
+ * {@link ConnectionInvalidationBus} which notifies subscribers in the same JVM synchronously. Suitable for a single node,
+ * and for tests simulating several nodes with one repository per node sharing the bus.
+ */
+public class InProcessConnectionInvalidationBus extends AbstractConnectionInvalidationBus {
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.springframework.social.openidconnect.jdbc.ConnectionInvalidationBus#publish(java.lang.String)
+     */
+    @Override
+    public void publish(String userId) {
+        notifyListeners(userId);
+    }
+}
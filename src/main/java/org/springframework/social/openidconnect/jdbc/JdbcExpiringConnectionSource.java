@@ -0,0 +1,85 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+import org.springframework.social.openidconnect.ExpiringConnection;
+import org.springframework.social.openidconnect.ExpiringConnectionSource;
+
+/**
+ * {@link ExpiringConnectionSource} reading the <code>UserConnection</code> table through its index on
+ * <code>expireTime</code>. Pages are limited with {@link java.sql.Statement#setMaxRows(int)}, so the driver fetches no
+ * more rows than requested. Tokens are decrypted on first access only.
+ */
+public class JdbcExpiringConnectionSource implements ExpiringConnectionSource {
+
+    private final DataSource dataSource;
+
+    private final TextEncryptor textEncryptor;
+
+    private String tablePrefix = "";
+
+    /**
+     * Constructor which accepts the database and the encryptor of the token columns.
+     *
+     * @param dataSource - Database holding <code>UserConnection</code>
+     * @param textEncryptor - Encryptor for token columns
+     */
+    public JdbcExpiringConnectionSource(DataSource dataSource, TextEncryptor textEncryptor) {
+        this.dataSource = dataSource;
+        this.textEncryptor = textEncryptor;
+    }
+
+    /**
+     * Sets a table name prefix, like {@link OpenIdJdbcUsersConnectionRepository#setTablePrefix(String)}.
+     *
+     * @param tablePrefix the tablePrefix to set
+     */
+    public void setTablePrefix(String tablePrefix) {
+        this.tablePrefix = tablePrefix;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.springframework.social.openidconnect.ExpiringConnectionSource#findExpiringConnections(java.lang.String,
+     * org.springframework.social.openidconnect.ExpiringConnection, long, int)
+     */
+    @Override
+    public List<ExpiringConnection> findExpiringConnections(String providerId, ExpiringConnection after,
+            long expiresBefore, int maxResults) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setMaxRows(maxResults);
+        String select = "select userId, providerId, providerUserId, displayName, profileUrl, imageUrl, accessToken, idToken, secret, refreshToken, expireTime from "
+                + tablePrefix + "UserConnection where providerId = ? and refreshToken is not null and expireTime < ?";
+        String orderBy = " order by expireTime, userId, providerUserId";
+        if (after == null) {
+            return jdbcTemplate.query(select + orderBy, rowMapper, providerId, expiresBefore);
+        }
+        Long expireTime = after.getConnectionData().getExpireTime();
+        String providerUserId = after.getConnectionData().getProviderUserId();
+        return jdbcTemplate.query(select + " and (expireTime > ? or (expireTime = ? and userId > ?)"
+                + " or (expireTime = ? and userId = ? and providerUserId > ?))" + orderBy, rowMapper, providerId,
+                expiresBefore, expireTime, expireTime, after.getUserId(), expireTime, after.getUserId(), providerUserId);
+    }
+
+    private final RowMapper<ExpiringConnection> rowMapper = new RowMapper<ExpiringConnection>() {
+        @Override
+        public ExpiringConnection mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return mapExpiringConnection(rs);
+        }
+    };
+
+    private ExpiringConnection mapExpiringConnection(ResultSet rs) throws SQLException {
+        return new ExpiringConnection(rs.getString("userId"), new LazyOpenIdConnectionData(rs.getString("providerId"),
+                rs.getString("providerUserId"), rs.getString("displayName"), rs.getString("profileUrl"),
+                rs.getString("imageUrl"), rs.getString("accessToken"), rs.getString("secret"),
+                rs.getString("refreshToken"), rs.getLong("expireTime"), rs.getString("idToken"), textEncryptor));
+    }
+}
@@ -0,0 +1,217 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * {@link ConnectionInvalidationBus} for a cluster sharing the <code>UserConnection</code> database. Publishing stamps
+ * the user in the <code>UserConnectionVersion</code> table with the current time; every node polls the table for users
+ * stamped since its previous poll and notifies its subscribers.
+ * <p>
+ * Nodes see changes of other nodes within the poll interval, provided clocks of the nodes differ by less than the
+ * overlap. Each poll looks back by the overlap, so a change can be delivered more than once.
+ * </p>
+ * <p>
+ * Call {@link #start()} to begin polling, and {@link #stop()} or declare this class as a bean to stop it.
+ * </p>
+ */
+public class JdbcPollingConnectionInvalidationBus extends AbstractConnectionInvalidationBus implements DisposableBean {
+
+    /**
+     * Logger for {@link JdbcPollingConnectionInvalidationBus}
+     */
+    private static final Logger logger = Logger.getLogger(JdbcPollingConnectionInvalidationBus.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Stamps users outside of any transaction, as repositories publish once their transaction completed, while its
+     * connection may still be bound to the thread.
+     */
+    private final TransactionTemplate stampTemplate;
+
+    private final long pollInterval;
+
+    private long overlap;
+
+    private String tablePrefix = "";
+
+    /**
+     * Time of the previous poll in milliseconds since epoch.
+     */
+    private volatile long lastPolled = System.currentTimeMillis();
+
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong polls = new AtomicLong();
+
+    private final AtomicLong received = new AtomicLong();
+
+    /**
+     * Constructor which accepts the database holding <code>UserConnection</code> and the poll interval. The overlap
+     * defaults to the poll interval.
+     *
+     * @param dataSource - Database holding the <code>UserConnectionVersion</code> table
+     * @param pollInterval - Time between polls in milliseconds
+     */
+    public JdbcPollingConnectionInvalidationBus(DataSource dataSource, long pollInterval) {
+        Assert.isTrue(pollInterval > 0, "pollInterval should be positive");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.stampTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.stampTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_NOT_SUPPORTED);
+        this.pollInterval = pollInterval;
+        this.overlap = pollInterval;
+    }
+
+    /**
+     * Sets a table name prefix, like {@link OpenIdJdbcUsersConnectionRepository#setTablePrefix(String)}.
+     *
+     * @param tablePrefix the tablePrefix to set
+     */
+    public void setTablePrefix(String tablePrefix) {
+        this.tablePrefix = tablePrefix;
+    }
+
+    /**
+     * Sets how far each poll looks back before the previous poll, to cover clock differences between nodes and
+     * transactions committing after they stamped the user.
+     *
+     * @param overlap - Time in milliseconds
+     */
+    public void setOverlap(long overlap) {
+        Assert.isTrue(overlap >= 0, "overlap should not be negative");
+        this.overlap = overlap;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.springframework.social.openidconnect.jdbc.ConnectionInvalidationBus#publish(java.lang.String)
+     */
+    @Override
+    public void publish(final String userId) {
+        stampTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                stamp(userId);
+            }
+        });
+        notifyListeners(userId);
+    }
+
+    private void stamp(String userId) {
+        long now = System.currentTimeMillis();
+        String update = "update " + tablePrefix + "UserConnectionVersion set updatedAt = ? where userId = ?";
+        if (jdbcTemplate.update(update, now, userId) == 0) {
+            try {
+                jdbcTemplate.update("insert into " + tablePrefix + "UserConnectionVersion (userId, updatedAt) values (?, ?)", userId, now);
+            } catch (DuplicateKeyException e) {
+                // another node stamped the user first
+                jdbcTemplate.update(update, now, userId);
+            }
+        }
+    }
+
+    /**
+     * Notifies subscribers of users stamped since the previous poll, less the overlap.
+     *
+     * @return - number of users notified
+     */
+    public int poll() {
+        long now = System.currentTimeMillis();
+        List<String> userIds = jdbcTemplate.queryForList("select userId from " + tablePrefix + "UserConnectionVersion where updatedAt > ?",
+                String.class, lastPolled - overlap);
+        lastPolled = now;
+        for (String userId : userIds) {
+            notifyListeners(userId);
+        }
+        polls.incrementAndGet();
+        received.addAndGet(userIds.size());
+        if (logger.isDebugEnabled() && !userIds.isEmpty()) {
+            logger.debug("Invalidated connections of " + userIds.size() + " users");
+        }
+        return userIds.size();
+    }
+
+    /**
+     * Starts polling on a daemon thread.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "paypal-connection-invalidation");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    poll();
+                } catch (RuntimeException ex) {
+                    logger.error("Exception thrown while polling connection invalidations", ex);
+                }
+            }
+        }, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops polling.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.springframework.beans.factory.DisposableBean#destroy()
+     */
+    @Override
+    public void destroy() {
+        stop();
+    }
+
+    /**
+     * Gets number of polls so far.
+     *
+     * @return - poll count
+     */
+    public long getPolls() {
+        return polls.get();
+    }
+
+    /**
+     * Gets number of user invalidations received by polling so far, including own and repeated ones.
+     *
+     * @return - received count
+     */
+    public long getReceived() {
+        return received.get();
+    }
+}
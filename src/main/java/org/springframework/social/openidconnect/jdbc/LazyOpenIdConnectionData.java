@@ -0,0 +1,105 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.io.ObjectStreamException;
+
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+import org.springframework.social.openidconnect.support.OpenIdConnectionData;
+
+/**
+ * Connection data read from <code>UserConnection</code> which keeps the encrypted token columns and decrypts each of
+ * them on first access. Callers only reading profile columns, such as display name and image url, never pay for
+ * decryption, and the id token, the largest column, is only decrypted when asked for.
+ * <p>
+ * Decrypted values are remembered. Concurrent first accesses may decrypt the same column twice, which is harmless as
+ * decryption has no side effects. Serialized instances are written as plain {@link OpenIdConnectionData} with all
+ * tokens decrypted, so the encryptor is never serialized.
+ * </p>
+ */
+final class LazyOpenIdConnectionData extends OpenIdConnectionData {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient TextEncryptor textEncryptor;
+
+    private final String encryptedAccessToken;
+
+    private final String encryptedSecret;
+
+    private final String encryptedRefreshToken;
+
+    private final String encryptedIdToken;
+
+    private volatile String accessToken;
+
+    private volatile String secret;
+
+    private volatile String refreshToken;
+
+    private volatile String idToken;
+
+    /**
+     * Constructor which accepts columns of a row as read, tokens still encrypted.
+     *
+     * @param textEncryptor - Encryptor the token columns were written with
+     */
+    LazyOpenIdConnectionData(String providerId, String providerUserId, String displayName, String profileUrl,
+            String imageUrl, String encryptedAccessToken, String encryptedSecret, String encryptedRefreshToken,
+            Long expireTime, String encryptedIdToken, TextEncryptor textEncryptor) {
+        super(providerId, providerUserId, displayName, profileUrl, imageUrl, null, null, null, expireTime, null);
+        this.textEncryptor = textEncryptor;
+        this.encryptedAccessToken = encryptedAccessToken;
+        this.encryptedSecret = encryptedSecret;
+        this.encryptedRefreshToken = encryptedRefreshToken;
+        this.encryptedIdToken = encryptedIdToken;
+    }
+
+    @Override
+    public String getAccessToken() {
+        String value = accessToken;
+        if (value == null && encryptedAccessToken != null) {
+            value = textEncryptor.decrypt(encryptedAccessToken);
+            accessToken = value;
+        }
+        return value;
+    }
+
+    @Override
+    public String getSecret() {
+        String value = secret;
+        if (value == null && encryptedSecret != null) {
+            value = textEncryptor.decrypt(encryptedSecret);
+            secret = value;
+        }
+        return value;
+    }
+
+    @Override
+    public String getRefreshToken() {
+        String value = refreshToken;
+        if (value == null && encryptedRefreshToken != null) {
+            value = textEncryptor.decrypt(encryptedRefreshToken);
+            refreshToken = value;
+        }
+        return value;
+    }
+
+    @Override
+    public String getIdToken() {
+        String value = idToken;
+        if (value == null && encryptedIdToken != null) {
+            value = textEncryptor.decrypt(encryptedIdToken);
+            idToken = value;
+        }
+        return value;
+    }
+
+    /**
+     * Replaces this instance by plain connection data with decrypted tokens when serialized.
+     *
+     * @return - {@link OpenIdConnectionData} with the same values
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        return new OpenIdConnectionData(getProviderId(), getProviderUserId(), getDisplayName(), getProfileUrl(),
+                getImageUrl(), getAccessToken(), getSecret(), getRefreshToken(), getExpireTime(), getIdToken());
+    }
+}
@@ -18,18 +18,27 @@ package org.springframework.social.openidconnect.jdbc;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.ConnectionHolder;
 import org.springframework.security.crypto.encrypt.TextEncryptor;
 import org.springframework.social.connect.*;
 import org.springframework.social.openidconnect.support.OpenIdConnectionData;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.*;
 
 /**
@@ -40,6 +49,20 @@ import java.util.*;
  */
 public class OpenIdConnectJdbcConnectionRepository implements ConnectionRepository {
 
+    /**
+     * Number of inserts tried when concurrent adds compute the same rank.
+     */
+    private static final int MAX_RANK_ATTEMPTS = 10;
+
+    /**
+     * Sizes in lists of findConnectionsToUsers are padded to.
+     */
+    private static final int[] IN_LIST_SIZES = { 1, 10, 50, 100, 500 };
+
+    /**
+     * Largest number of provider user ids looked up with an in list.
+     */
+    static final int MAX_IN_LIST_SIZE = 500;
 
     private final String userId;
 
@@ -49,11 +72,24 @@ public class OpenIdConnectJdbcConnectionRepository implements ConnectionReposito
 
     private final TextEncryptor textEncryptor;
 
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
     private final String tablePrefix;
 
+    private PlatformTransactionManager transactionManager;
+
     public OpenIdConnectJdbcConnectionRepository(String userId, JdbcTemplate jdbcTemplate, ConnectionFactoryLocator connectionFactoryLocator, TextEncryptor textEncryptor, String tablePrefix) {
+        this(userId, jdbcTemplate, new NamedParameterJdbcTemplate(jdbcTemplate), connectionFactoryLocator, textEncryptor, tablePrefix);
+    }
+
+    /**
+     * Creates a repository sharing a named parameter template, and with it its cache of parsed statements, with other
+     * repositories.
+     */
+    public OpenIdConnectJdbcConnectionRepository(String userId, JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedParameterJdbcTemplate, ConnectionFactoryLocator connectionFactoryLocator, TextEncryptor textEncryptor, String tablePrefix) {
         this.userId = userId;
         this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
         this.connectionFactoryLocator = connectionFactoryLocator;
         this.textEncryptor = textEncryptor;
         this.tablePrefix = tablePrefix;
@@ -76,6 +112,22 @@ public class OpenIdConnectJdbcConnectionRepository implements ConnectionReposito
         return connections;
     }
 
+    /**
+     * Finds data of all connections of this user without creating connections, for listings which only show profile
+     * columns. Tokens are decrypted only when read from the returned data.
+     *
+     * @return - connection data by provider id, ordered by rank
+     */
+    public MultiValueMap<String, ConnectionData> findAllConnectionData() {
+        final MultiValueMap<String, ConnectionData> connectionData = new LinkedMultiValueMap<String, ConnectionData>();
+        jdbcTemplate.query(selectFromUserConnection() + " where userId = ? order by providerId, rank", new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                connectionData.add(rs.getString("providerId"), connectionMapper.mapConnectionData(rs));
+            }
+        }, userId);
+        return connectionData;
+    }
+
     public List<Connection<?>> findConnections(String providerId) {
         return jdbcTemplate.query(selectFromUserConnection() + " where userId = ? and providerId = ? order by rank", connectionMapper, userId, providerId);
     }
@@ -86,39 +138,58 @@ public class OpenIdConnectJdbcConnectionRepository implements ConnectionReposito
         return (List<Connection<A>>) connections;
     }
 
+    /**
+     * Finds connections to given provider users, placing results through a hash map of requested positions. Per
+     * provider, lists of up to {@link #MAX_IN_LIST_SIZE} ids take one query, padded to a few fixed in list sizes so the
+     * database and {@link NamedParameterJdbcTemplate} see a small set of statement shapes. Longer lists read all
+     * connections of the user to the provider with one query and filter them in memory. This is decided from the
+     * number of ids alone, without counting the user's connections first: a user with far more connections than
+     * requested ids reads rows it does not need, but looking long lists up in chunks takes a query per chunk, each of
+     * which some databases answer by scanning the user's connections anyway.
+     */
     public MultiValueMap<String, Connection<?>> findConnectionsToUsers(MultiValueMap<String, String> providerUsers) {
         if (providerUsers == null || providerUsers.isEmpty()) {
             throw new IllegalArgumentException("Unable to execute find: no providerUsers provided");
         }
-        StringBuilder providerUsersCriteriaSql = new StringBuilder();
-        MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("userId", userId);
-        for (Iterator<Map.Entry<String, List<String>>> it = providerUsers.entrySet().iterator(); it.hasNext();) {
-            Map.Entry<String, List<String>> entry = it.next();
+        MultiValueMap<String, Connection<?>> connectionsForUsers = new LinkedMultiValueMap<String, Connection<?>>();
+        for (Map.Entry<String, List<String>> entry : providerUsers.entrySet()) {
             String providerId = entry.getKey();
-            providerUsersCriteriaSql.append("providerId = :providerId_").append(providerId).append(" and providerUserId in (:providerUserIds_").append(providerId).append(")");
-            parameters.addValue("providerId_" + providerId, providerId);
-            parameters.addValue("providerUserIds_" + providerId, entry.getValue());
-            if (it.hasNext()) {
-                providerUsersCriteriaSql.append(" or " );
+            List<String> providerUserIds = entry.getValue();
+            // first position of each provider user id, like indexOf
+            Map<String, Integer> indexByProviderUserId = new HashMap<String, Integer>(providerUserIds.size() * 4 / 3 + 1);
+            for (int i = providerUserIds.size() - 1; i >= 0; i--) {
+                indexByProviderUserId.put(providerUserIds.get(i), i);
             }
-        }
-        List<Connection<?>> resultList = new NamedParameterJdbcTemplate(jdbcTemplate).query(selectFromUserConnection() + " where userId = :userId and " + providerUsersCriteriaSql + " order by providerId, rank", parameters, connectionMapper);
-        MultiValueMap<String, Connection<?>> connectionsForUsers = new LinkedMultiValueMap<String, Connection<?>>();
-        for (Connection<?> connection : resultList) {
-            String providerId = connection.getKey().getProviderId();
-            List<String> userIds = providerUsers.get(providerId);
-            List<Connection<?>> connections = connectionsForUsers.get(providerId);
-            if (connections == null) {
-                connections = new ArrayList<Connection<?>>(userIds.size());
-                for (int i = 0; i < userIds.size(); i++) {
-                    connections.add(null);
+            final Map<String, Integer> requested = indexByProviderUserId;
+            final List<Connection<?>> found = new ArrayList<Connection<?>>();
+            if (providerUserIds.size() > MAX_IN_LIST_SIZE) {
+                jdbcTemplate.query(selectFromUserConnection() + " where userId = ? and providerId = ?", new RowCallbackHandler() {
+                    public void processRow(ResultSet rs) throws SQLException {
+                        if (requested.containsKey(rs.getString("providerUserId"))) {
+                            found.add(connectionMapper.mapRow(rs, 0));
+                        }
+                    }
+                }, userId, providerId);
+            } else {
+                MapSqlParameterSource parameters = new MapSqlParameterSource();
+                parameters.addValue("userId", userId);
+                parameters.addValue("providerId", providerId);
+                parameters.addValue("providerUserIds", padInList(providerUserIds));
+                found.addAll(namedParameterJdbcTemplate.query(selectFromUserConnection()
+                        + " where userId = :userId and providerId = :providerId and providerUserId in (:providerUserIds)", parameters, connectionMapper));
+            }
+            List<Connection<?>> connections = null;
+            for (Connection<?> connection : found) {
+                Integer index = indexByProviderUserId.get(connection.getKey().getProviderUserId());
+                if (index == null) {
+                    continue;
+                }
+                if (connections == null) {
+                    connections = new ArrayList<Connection<?>>(Collections.<Connection<?>>nCopies(providerUserIds.size(), null));
+                    connectionsForUsers.put(providerId, connections);
                 }
-                connectionsForUsers.put(providerId, connections);
+                connections.set(index, connection);
             }
-            String providerUserId = connection.getKey().getProviderUserId();
-            int connectionIndex = userIds.indexOf(providerUserId);
-            connections.set(connectionIndex, connection);
         }
         return connectionsForUsers;
     }
@@ -153,19 +224,119 @@ public class OpenIdConnectJdbcConnectionRepository implements ConnectionReposito
         return (Connection<A>) findPrimaryConnection(providerId);
     }
 
-    @Transactional
+    /**
+     * Sets the transaction manager of the application, used to roll back a failed insert of
+     * {@link #addConnection(Connection)} to a savepoint. Defaults to null, meaning savepoints are taken on the JDBC
+     * connection bound to the current transaction for the data source of this repository, if any.
+     *
+     * @param transactionManager - Manager supporting nested transactions, null to use the bound connection
+     */
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * Adds a connection with the next free rank of its provider, computed by the insert itself so adding takes a
+     * single statement. Concurrent adds for the same user and provider may compute the same rank; the losing insert
+     * violates the UserConnectionRank index and is retried with a rank read again, and past any rank tried before.
+     * <p>
+     * Each attempt runs in a nested transaction of the transaction manager, when set, or else within a savepoint on the
+     * connection bound to the current transaction, so a failed insert is rolled back alone instead of aborting the
+     * transaction on databases like PostgreSQL. Attempts always join the current transaction: when no connection of
+     * this data source is bound to it, as with JTA and no transaction manager set, they run without savepoint.
+     * </p>
+     * <p>
+     * Retries need to see the ranks of concurrent adds, which READ COMMITTED transactions do. Under snapshot isolation,
+     * such as REPEATABLE READ on PostgreSQL, a retry moves on to the rank after the one it tried last instead. Under
+     * SERIALIZABLE the database may abort the transaction with a serialization failure, to be retried by the caller.
+     * </p>
+     */
     public void addConnection(Connection<?> connection) {
+        final OpenIdConnectionData data = (OpenIdConnectionData) connection.createData();
+        int triedRank = 0;
+        for (int attempt = 1; ; attempt++) {
+            Integer rank = null;
+            if (attempt > 1) {
+                rank = Math.max(nextRank(data.getProviderId()), triedRank + 1);
+                triedRank = rank;
+            }
+            try {
+                insertAttempt(data, rank);
+                return;
+            } catch (DuplicateKeyException e) {
+                if (hasConnection(data) || attempt >= MAX_RANK_ATTEMPTS) {
+                    throw new DuplicateConnectionException(connection.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts the connection within a nested transaction or a savepoint, if possible.
+     *
+     * @param rank - Rank to insert at, null to compute the next free rank in the insert
+     */
+    private void insertAttempt(final OpenIdConnectionData data, final Integer rank) {
+        if (transactionManager != null) {
+            TransactionTemplate attemptTemplate = new TransactionTemplate(transactionManager);
+            attemptTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+            attemptTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    insert(data, rank);
+                }
+            });
+            return;
+        }
+        Object resource = TransactionSynchronizationManager.isActualTransactionActive()
+                ? TransactionSynchronizationManager.getResource(jdbcTemplate.getDataSource()) : null;
+        Savepoint savepoint = null;
+        java.sql.Connection boundConnection = null;
+        if (resource instanceof ConnectionHolder && ((ConnectionHolder) resource).getConnectionHandle() != null) {
+            ConnectionHolder connectionHolder = (ConnectionHolder) resource;
+            try {
+                savepoint = connectionHolder.createSavepoint();
+                boundConnection = connectionHolder.getConnection();
+            } catch (SQLException ex) {
+                // e.g. a JTA managed connection, attempt without savepoint like any other statement
+            }
+        }
+        if (savepoint == null) {
+            insert(data, rank);
+            return;
+        }
         try {
-            OpenIdConnectionData data = (OpenIdConnectionData) connection.createData();
-            String query = "select coalesce(max(rank) + 1, 1) as rank from " + tablePrefix + "UserConnection where userId = ? and providerId = ?";
-            int rank = jdbcTemplate.queryForObject(query, Integer.class, userId, data.getProviderId());
+            insert(data, rank);
+        } catch (DuplicateKeyException e) {
+            try {
+                boundConnection.rollback(savepoint);
+            } catch (SQLException ex) {
+                throw new TransactionSystemException("Could not roll back to JDBC savepoint", ex);
+            }
+            throw e;
+        }
+        try {
+            boundConnection.releaseSavepoint(savepoint);
+        } catch (SQLException ex) {
+            // released with the transaction at the latest
+        }
+    }
+
+    private void insert(OpenIdConnectionData data, Integer rank) {
+        if (rank == null) {
+            jdbcTemplate.update("insert into " + tablePrefix + "UserConnection (userId, providerId, providerUserId, rank, displayName, profileUrl, imageUrl, accessToken, idToken, secret, refreshToken, expireTime) select ?, ?, ?, coalesce(max(rank) + 1, 1), ?, ?, ?, ?, ?, ?, ?, ? from " + tablePrefix + "UserConnection where userId = ? and providerId = ?",
+                    userId, data.getProviderId(), data.getProviderUserId(), data.getDisplayName(), data.getProfileUrl(), data.getImageUrl(), encrypt(data.getAccessToken()), encrypt(data.getIdToken()), encrypt(data.getSecret()), encrypt(data.getRefreshToken()), data.getExpireTime(), userId, data.getProviderId());
+        } else {
             jdbcTemplate.update("insert into " + tablePrefix + "UserConnection (userId, providerId, providerUserId, rank, displayName, profileUrl, imageUrl, accessToken, idToken, secret, refreshToken, expireTime) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
                     userId, data.getProviderId(), data.getProviderUserId(), rank, data.getDisplayName(), data.getProfileUrl(), data.getImageUrl(), encrypt(data.getAccessToken()), encrypt(data.getIdToken()), encrypt(data.getSecret()), encrypt(data.getRefreshToken()), data.getExpireTime());
-        } catch (DuplicateKeyException e) {
-            throw new DuplicateConnectionException(connection.getKey());
         }
     }
 
+    private int nextRank(String providerId) {
+        return jdbcTemplate.queryForObject("select coalesce(max(rank) + 1, 1) from " + tablePrefix + "UserConnection where userId = ? and providerId = ?",
+                Integer.class, userId, providerId);
+    }
+
     public void updateConnection(Connection<?> connection) {
         OpenIdConnectionData data = (OpenIdConnectionData) connection.createData();
         jdbcTemplate.update("update " + tablePrefix + "UserConnection set displayName = ?, profileUrl = ?, imageUrl = ?, accessToken = ?, idToken = ?, secret = ?, refreshToken = ?, expireTime = ? where userId = ? and providerId = ? and providerUserId = ?",
@@ -180,10 +351,54 @@ public class OpenIdConnectJdbcConnectionRepository implements ConnectionReposito
         jdbcTemplate.update("delete from " + tablePrefix + "UserConnection where userId = ? and providerId = ? and providerUserId = ?", userId, connectionKey.getProviderId(), connectionKey.getProviderUserId());
     }
 
+    /**
+     * Loads connection data of this user with ranks, for {@link CachingConnectionRepository}.
+     *
+     * @return - all connections of this user ordered by provider id and rank
+     */
+    UserConnections findUserConnections() {
+        final List<ConnectionData> connections = new ArrayList<ConnectionData>();
+        final List<Integer> ranks = new ArrayList<Integer>();
+        jdbcTemplate.query(selectFromUserConnection() + " where userId = ? order by providerId, rank", new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                connections.add(connectionMapper.mapConnectionData(rs));
+                ranks.add(rs.getInt("rank"));
+            }
+        }, userId);
+        int[] rankArray = new int[ranks.size()];
+        for (int i = 0; i < rankArray.length; i++) {
+            rankArray[i] = ranks.get(i);
+        }
+        return new UserConnections(connections, rankArray);
+    }
+
     // internal helpers
 
+    /**
+     * Pads an in list to the next of {@link #IN_LIST_SIZES} by repeating its last element.
+     */
+    static List<String> padInList(List<String> values) {
+        for (int size : IN_LIST_SIZES) {
+            if (size >= values.size()) {
+                List<String> padded = new ArrayList<String>(size);
+                padded.addAll(values);
+                String last = values.get(values.size() - 1);
+                while (padded.size() < size) {
+                    padded.add(last);
+                }
+                return padded;
+            }
+        }
+        return values;
+    }
+
+    private boolean hasConnection(ConnectionData data) {
+        return jdbcTemplate.queryForObject("select count(*) from " + tablePrefix + "UserConnection where userId = ? and providerId = ? and providerUserId = ?",
+                Integer.class, userId, data.getProviderId(), data.getProviderUserId()) > 0;
+    }
+
     private String selectFromUserConnection() {
-        return "select userId, providerId, providerUserId, displayName, profileUrl, imageUrl, accessToken, idToken, secret, refreshToken, expireTime from " + tablePrefix + "UserConnection";
+        return "select userId, providerId, providerUserId, rank, displayName, profileUrl, imageUrl, accessToken, idToken, secret, refreshToken, expireTime from " + tablePrefix + "UserConnection";
     }
 
     private Connection<?> findPrimaryConnection(String providerId) {
@@ -205,13 +420,12 @@ public class OpenIdConnectJdbcConnectionRepository implements ConnectionReposito
             return connectionFactory.createConnection(connectionData);
         }
 
+        /**
+         * Maps a row to connection data which decrypts token columns on first access.
+         */
         private ConnectionData mapConnectionData(ResultSet rs) throws SQLException {
-            return new OpenIdConnectionData(rs.getString("providerId"), rs.getString("providerUserId"), rs.getString("displayName"), rs.getString("profileUrl"), rs.getString("imageUrl"),
-                    decrypt(rs.getString("accessToken")), decrypt(rs.getString("secret")), decrypt(rs.getString("refreshToken")), expireTime(rs.getLong("expireTime")), decrypt(rs.getString("idToken")));
-        }
-
-        private String decrypt(String encryptedText) {
-            return encryptedText != null ? textEncryptor.decrypt(encryptedText) : encryptedText;
+            return new LazyOpenIdConnectionData(rs.getString("providerId"), rs.getString("providerUserId"), rs.getString("displayName"), rs.getString("profileUrl"), rs.getString("imageUrl"),
+                    rs.getString("accessToken"), rs.getString("secret"), rs.getString("refreshToken"), expireTime(rs.getLong("expireTime")), rs.getString("idToken"), textEncryptor);
         }
 
         private Long expireTime(long expireTime) {
@@ -1,29 +1,58 @@
 package org.springframework.social.openidconnect.jdbc;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.security.crypto.encrypt.TextEncryptor;
 import org.springframework.social.connect.ConnectionFactoryLocator;
 import org.springframework.social.connect.ConnectionRepository;
 import org.springframework.social.connect.ConnectionSignUp;
 import org.springframework.social.connect.jdbc.JdbcUsersConnectionRepository;
+import org.springframework.social.openidconnect.RankedConnection;
+import org.springframework.social.openidconnect.RankedConnectionSource;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.sql.DataSource;
 
-public class OpenIdJdbcUsersConnectionRepository extends JdbcUsersConnectionRepository {
+public class OpenIdJdbcUsersConnectionRepository extends JdbcUsersConnectionRepository implements RankedConnectionSource {
 
     private final JdbcTemplate jdbcTemplate;
 
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
     private final ConnectionFactoryLocator connectionFactoryLocator;
 
     private final TextEncryptor textEncryptor;
 
     private String tablePrefix = "";
 
+    private volatile ConnectionDataCache connectionDataCache;
+
+    private volatile ConnectionInvalidationBus invalidationBus;
+
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Drops users changed on other nodes from the connection data cache, subscribed to the invalidation bus.
+     */
+    private final ConnectionInvalidationListener cacheInvalidator = new ConnectionInvalidationListener() {
+        @Override
+        public void connectionsChanged(String userId) {
+            ConnectionDataCache cache = connectionDataCache;
+            if (cache != null) {
+                cache.invalidate(userId);
+            }
+        }
+    };
+
 
     public OpenIdJdbcUsersConnectionRepository(DataSource dataSource, ConnectionFactoryLocator connectionFactoryLocator, TextEncryptor textEncryptor) {
         super(dataSource, connectionFactoryLocator, textEncryptor);
 
         this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
         this.connectionFactoryLocator = connectionFactoryLocator;
         this.textEncryptor = textEncryptor;
     }
@@ -40,6 +69,93 @@ public class OpenIdJdbcUsersConnectionRepository extends JdbcUsersConnectionRepo
         this.tablePrefix = tablePrefix;
     }
 
+    /**
+     * Sets the transaction manager of the application, passed to connection repositories created afterwards, see
+     * {@link OpenIdConnectJdbcConnectionRepository#setTransactionManager(PlatformTransactionManager)}.
+     *
+     * @param transactionManager the manager supporting nested transactions, null to use the bound connection
+     */
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * Sets a cache of decrypted connection data shared by all connection repositories created afterwards. Defaults to
+     * null, meaning every read queries the database. With a cache, writes made through other nodes are only seen once
+     * the cached entry expires, unless an invalidation bus is set. Writes made directly in the database are only seen
+     * once the cached entry expires.
+     *
+     * @param connectionDataCache the cache to use, null to disable caching
+     */
+    public void setConnectionDataCache(ConnectionDataCache connectionDataCache) {
+        this.connectionDataCache = connectionDataCache;
+    }
+
+    public ConnectionDataCache getConnectionDataCache() {
+        return connectionDataCache;
+    }
+
+    /**
+     * Sets the bus through which writes made with connection repositories created afterwards are announced, and
+     * through which changes made on other nodes invalidate the connection data cache of this node. Defaults to null,
+     * meaning writes only invalidate the cache of this node. Replacing the bus unsubscribes this repository from the
+     * previous one.
+     * <p>
+     * {@link UserConnectionBulkLoader} and {@link UserConnectionReencryptor} write the table directly; give them the
+     * same bus, or clear the connection data cache of every node after they ran.
+     * </p>
+     *
+     * @param invalidationBus the bus to use, null to only invalidate locally
+     */
+    public synchronized void setInvalidationBus(ConnectionInvalidationBus invalidationBus) {
+        if (this.invalidationBus != null) {
+            this.invalidationBus.unsubscribe(cacheInvalidator);
+        }
+        this.invalidationBus = invalidationBus;
+        if (invalidationBus != null) {
+            invalidationBus.subscribe(cacheInvalidator);
+        }
+    }
+
+    /**
+     * Creates an exporter streaming all connections of the table this repository works on.
+     *
+     * @return - exporter using the data source, encryptor and table prefix of this repository
+     */
+    public UserConnectionExporter createExporter() {
+        UserConnectionExporter exporter = new UserConnectionExporter(jdbcTemplate.getDataSource(), textEncryptor);
+        exporter.setTablePrefix(tablePrefix);
+        return exporter;
+    }
+
+    /**
+     * Creates a source of connections nearing expiry in the table this repository works on, for a
+     * {@link org.springframework.social.openidconnect.TokenRefreshScheduler}.
+     *
+     * @return - source using the data source, encryptor and table prefix of this repository
+     */
+    public JdbcExpiringConnectionSource createExpiringConnectionSource() {
+        JdbcExpiringConnectionSource source = new JdbcExpiringConnectionSource(jdbcTemplate.getDataSource(), textEncryptor);
+        source.setTablePrefix(tablePrefix);
+        return source;
+    }
+
+    /**
+     * Finds all connections of given user with their stored ranks in one query, bypassing the connection data cache.
+     *
+     * @see org.springframework.social.openidconnect.RankedConnectionSource#findRankedConnections(java.lang.String)
+     */
+    @Override
+    public List<RankedConnection> findRankedConnections(String userId) {
+        UserConnections userConnections = new OpenIdConnectJdbcConnectionRepository(userId, jdbcTemplate,
+                namedParameterJdbcTemplate, connectionFactoryLocator, textEncryptor, tablePrefix).findUserConnections();
+        List<RankedConnection> rankedConnections = new ArrayList<RankedConnection>();
+        for (int i = 0; i < userConnections.getConnections().size(); i++) {
+            rankedConnections.add(new RankedConnection(userConnections.getConnections().get(i), userConnections.getRank(i)));
+        }
+        return rankedConnections;
+    }
+
     /**
      * The command to execute to create a new local user profile in the event no user id could be mapped to a connection.
      * Allows for implicitly creating a user profile from connection data during a provider sign-in attempt.
@@ -62,6 +178,15 @@ public class OpenIdJdbcUsersConnectionRepository extends JdbcUsersConnectionRepo
         if (userId == null) {
             throw new IllegalArgumentException("userId cannot be null");
         }
-        return new OpenIdConnectJdbcConnectionRepository(userId, jdbcTemplate, connectionFactoryLocator, textEncryptor, tablePrefix);
+        OpenIdConnectJdbcConnectionRepository connectionRepository = new OpenIdConnectJdbcConnectionRepository(userId, jdbcTemplate, namedParameterJdbcTemplate, connectionFactoryLocator, textEncryptor, tablePrefix);
+        connectionRepository.setTransactionManager(transactionManager);
+        if (connectionDataCache != null) {
+            return new CachingConnectionRepository(userId, connectionRepository, connectionDataCache, connectionFactoryLocator, invalidationBus);
+        }
+        if (invalidationBus != null) {
+            // no cache here, but other nodes may cache this user
+            return new PublishingConnectionRepository(userId, connectionRepository, invalidationBus);
+        }
+        return connectionRepository;
     }
 }
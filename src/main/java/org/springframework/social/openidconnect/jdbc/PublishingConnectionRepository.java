@@ -0,0 +1,120 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.util.List;
+
+import org.springframework.social.connect.Connection;
+import org.springframework.social.connect.ConnectionKey;
+import org.springframework.social.connect.ConnectionRepository;
+import org.springframework.util.MultiValueMap;
+
+/**
+ * Connection repository which announces writes of its user on a {@link ConnectionInvalidationBus}, for nodes without a
+ * connection data cache of their own, so nodes caching the user drop it. Within a transaction writes are announced once
+ * it completed. Reads go straight to the delegate.
+ */
+class PublishingConnectionRepository implements ConnectionRepository {
+
+    private final String userId;
+
+    private final ConnectionRepository delegate;
+
+    private final ConnectionInvalidationBus invalidationBus;
+
+    /**
+     * Constructor which accepts the repository to decorate and the bus announcing writes.
+     *
+     * @param userId - Local user id
+     * @param delegate - Repository of the same user
+     * @param invalidationBus - Bus announcing writes
+     */
+    PublishingConnectionRepository(String userId, ConnectionRepository delegate, ConnectionInvalidationBus invalidationBus) {
+        this.userId = userId;
+        this.delegate = delegate;
+        this.invalidationBus = invalidationBus;
+    }
+
+    @Override
+    public MultiValueMap<String, Connection<?>> findAllConnections() {
+        return delegate.findAllConnections();
+    }
+
+    @Override
+    public List<Connection<?>> findConnections(String providerId) {
+        return delegate.findConnections(providerId);
+    }
+
+    @Override
+    public <A> List<Connection<A>> findConnections(Class<A> apiType) {
+        return delegate.findConnections(apiType);
+    }
+
+    @Override
+    public MultiValueMap<String, Connection<?>> findConnectionsToUsers(MultiValueMap<String, String> providerUserIds) {
+        return delegate.findConnectionsToUsers(providerUserIds);
+    }
+
+    @Override
+    public Connection<?> getConnection(ConnectionKey connectionKey) {
+        return delegate.getConnection(connectionKey);
+    }
+
+    @Override
+    public <A> Connection<A> getConnection(Class<A> apiType, String providerUserId) {
+        return delegate.getConnection(apiType, providerUserId);
+    }
+
+    @Override
+    public <A> Connection<A> getPrimaryConnection(Class<A> apiType) {
+        return delegate.getPrimaryConnection(apiType);
+    }
+
+    @Override
+    public <A> Connection<A> findPrimaryConnection(Class<A> apiType) {
+        return delegate.findPrimaryConnection(apiType);
+    }
+
+    @Override
+    public void addConnection(Connection<?> connection) {
+        try {
+            delegate.addConnection(connection);
+        } finally {
+            publish();
+        }
+    }
+
+    @Override
+    public void updateConnection(Connection<?> connection) {
+        try {
+            delegate.updateConnection(connection);
+        } finally {
+            publish();
+        }
+    }
+
+    @Override
+    public void removeConnections(String providerId) {
+        try {
+            delegate.removeConnections(providerId);
+        } finally {
+            publish();
+        }
+    }
+
+    @Override
+    public void removeConnection(ConnectionKey connectionKey) {
+        try {
+            delegate.removeConnection(connectionKey);
+        } finally {
+            publish();
+        }
+    }
+
+    private void publish() {
+        AfterTransaction.run(new Runnable() {
+            @Override
+            public void run() {
+                invalidationBus.publish(userId);
+            }
+        });
+    }
+}
@@ -0,0 +1,126 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+import org.springframework.util.Assert;
+
+/**
+ * {@link TextEncryptor} supporting key rotation of the token columns. Values are encrypted with the current key and
+ * prefixed with its version, like <code>{2}...</code>, while values of any registered previous version, and unprefixed
+ * values written before versions were introduced, can still be decrypted. Passing this encryptor to the repositories
+ * lets the application keep working while {@link UserConnectionReencryptor} rewrites old rows in the background.
+ * <p>
+ * Instances are immutable, {@link #withPreviousKey(String, TextEncryptor)} returns a copy with the key added.
+ * </p>
+ */
+public final class RotatingTextEncryptor implements TextEncryptor {
+
+    private final String currentVersion;
+
+    private final TextEncryptor currentEncryptor;
+
+    private final Map<String, TextEncryptor> encryptorsByVersion;
+
+    private final TextEncryptor unversionedEncryptor;
+
+    /**
+     * Constructor which accepts the key new values are encrypted with.
+     *
+     * @param currentVersion - Version of the current key, without braces
+     * @param currentEncryptor - Encryptor of the current key
+     */
+    public RotatingTextEncryptor(String currentVersion, TextEncryptor currentEncryptor) {
+        this(currentVersion, currentEncryptor, new HashMap<String, TextEncryptor>(), null);
+    }
+
+    private RotatingTextEncryptor(String currentVersion, TextEncryptor currentEncryptor,
+            Map<String, TextEncryptor> previous, TextEncryptor unversionedEncryptor) {
+        Assert.hasText(currentVersion, "currentVersion cannot be empty");
+        Assert.isTrue(currentVersion.indexOf('}') < 0, "currentVersion cannot contain '}'");
+        Assert.notNull(currentEncryptor, "currentEncryptor cannot be null");
+        this.currentVersion = currentVersion;
+        this.currentEncryptor = currentEncryptor;
+        this.encryptorsByVersion = new HashMap<String, TextEncryptor>(previous);
+        this.encryptorsByVersion.put(currentVersion, currentEncryptor);
+        this.unversionedEncryptor = unversionedEncryptor;
+    }
+
+    /**
+     * Adds a key values can still be decrypted with.
+     *
+     * @param version - Version of the key, without braces, null for values written without version prefix
+     * @param encryptor - Encryptor of the key
+     * @return - copy of this encryptor
+     */
+    public RotatingTextEncryptor withPreviousKey(String version, TextEncryptor encryptor) {
+        Assert.notNull(encryptor, "encryptor cannot be null");
+        if (version == null) {
+            return new RotatingTextEncryptor(currentVersion, currentEncryptor, encryptorsByVersion, encryptor);
+        }
+        Assert.isTrue(!version.equals(currentVersion), "version " + version + " is the current version");
+        Map<String, TextEncryptor> previous = new HashMap<String, TextEncryptor>(encryptorsByVersion);
+        previous.put(version, encryptor);
+        return new RotatingTextEncryptor(currentVersion, currentEncryptor, previous, unversionedEncryptor);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.springframework.security.crypto.encrypt.TextEncryptor#encrypt(java.lang.String)
+     */
+    @Override
+    public String encrypt(String text) {
+        return "{" + currentVersion + "}" + currentEncryptor.encrypt(text);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.springframework.security.crypto.encrypt.TextEncryptor#decrypt(java.lang.String)
+     */
+    @Override
+    public String decrypt(String encryptedText) {
+        String version = getVersion(encryptedText);
+        if (version == null) {
+            if (unversionedEncryptor == null) {
+                throw new IllegalArgumentException("Value has no key version and no unversioned key is registered");
+            }
+            return unversionedEncryptor.decrypt(encryptedText);
+        }
+        TextEncryptor encryptor = encryptorsByVersion.get(version);
+        if (encryptor == null) {
+            throw new IllegalArgumentException("No key registered for version " + version);
+        }
+        return encryptor.decrypt(encryptedText.substring(version.length() + 2));
+    }
+
+    /**
+     * Checks whether given value is encrypted with the current key.
+     *
+     * @param encryptedText - Encrypted value, may be null
+     * @return - true if the value carries the current version, or is null
+     */
+    public boolean isCurrent(String encryptedText) {
+        return encryptedText == null || currentVersion.equals(getVersion(encryptedText));
+    }
+
+    public String getCurrentVersion() {
+        return currentVersion;
+    }
+
+    /**
+     * Gets the version prefix of given value.
+     *
+     * @param encryptedText - Encrypted value
+     * @return - version without braces, null for unversioned values
+     */
+    static String getVersion(String encryptedText) {
+        if (!encryptedText.startsWith("{")) {
+            return null;
+        }
+        int end = encryptedText.indexOf('}');
+        return end < 0 ? null : encryptedText.substring(1, end);
+    }
+}
@@ -0,0 +1,254 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import javax.sql.DataSource;
+
+import org.apache.log4j.Logger;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+import org.springframework.social.openidconnect.support.OpenIdConnectionData;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.util.Assert;
+
+/**
+ * Loads connections into the <code>UserConnection</code> table in bulk, for migrations between environments. Rows are
+ * written with JDBC batch inserts and committed every <code>commitInterval</code> rows. Tokens of the next batch are
+ * encrypted on a pool of threads while the current batch is written.
+ * <p>
+ * Records keep their rank, so the table should not hold other connections of the loaded users and providers. A failing
+ * batch rolls back the rows since the last commit; rows committed before stay.
+ * </p>
+ * <p>
+ * Given a {@link ConnectionInvalidationBus}, the users of each committed transaction are published on it, so nodes
+ * caching connection data drop them. Without one, clear the connection data cache of every node after loading.
+ * </p>
+ */
+public class UserConnectionBulkLoader {
+
+    /**
+     * Logger for {@link UserConnectionBulkLoader}
+     */
+    private static final Logger logger = Logger.getLogger(UserConnectionBulkLoader.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final PlatformTransactionManager transactionManager;
+
+    private final TextEncryptor textEncryptor;
+
+    private String tablePrefix = "";
+
+    private int batchSize = 500;
+
+    private int commitInterval = 5000;
+
+    private int encryptionThreads = Runtime.getRuntime().availableProcessors();
+
+    private ConnectionInvalidationBus invalidationBus;
+
+    /**
+     * Constructor which accepts the target database and the encryptor of the target environment.
+     *
+     * @param dataSource - Database holding <code>UserConnection</code>
+     * @param textEncryptor - Encryptor for token columns
+     */
+    public UserConnectionBulkLoader(DataSource dataSource, TextEncryptor textEncryptor) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionManager = new DataSourceTransactionManager(dataSource);
+        this.textEncryptor = textEncryptor;
+    }
+
+    /**
+     * Sets a table name prefix, like {@link OpenIdJdbcUsersConnectionRepository#setTablePrefix(String)}.
+     *
+     * @param tablePrefix the tablePrefix to set
+     */
+    public void setTablePrefix(String tablePrefix) {
+        this.tablePrefix = tablePrefix;
+    }
+
+    /**
+     * Sets number of rows sent to the database in one batch. Defaults to 500.
+     *
+     * @param batchSize - rows per batch
+     */
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "batchSize should be positive");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets number of rows after which the transaction is committed, rounded up to whole batches. Defaults to 5000.
+     *
+     * @param commitInterval - rows per transaction
+     */
+    public void setCommitInterval(int commitInterval) {
+        Assert.isTrue(commitInterval > 0, "commitInterval should be positive");
+        this.commitInterval = commitInterval;
+    }
+
+    /**
+     * Sets number of threads encrypting tokens. Defaults to the number of processors.
+     *
+     * @param encryptionThreads - encrypting threads, 1 encrypts on the loading thread
+     */
+    public void setEncryptionThreads(int encryptionThreads) {
+        Assert.isTrue(encryptionThreads > 0, "encryptionThreads should be positive");
+        this.encryptionThreads = encryptionThreads;
+    }
+
+    /**
+     * Sets the bus users of committed rows are published on. Defaults to null, publishing nothing.
+     *
+     * @param invalidationBus - the bus used by the repositories of the cluster, null to publish nothing
+     */
+    public void setInvalidationBus(ConnectionInvalidationBus invalidationBus) {
+        this.invalidationBus = invalidationBus;
+    }
+
+    /**
+     * Loads all records of given iterator.
+     *
+     * @param records - Records to insert, read once
+     * @return - number of rows and throughput
+     */
+    public BatchJobReport load(Iterator<UserConnectionRecord> records) {
+        long start = System.currentTimeMillis();
+        long rows = 0;
+        ExecutorService executor = encryptionThreads > 1 ? Executors.newFixedThreadPool(encryptionThreads) : null;
+        try {
+            List<Future<List<Object[]>>> pending = encrypt(nextBatch(records), executor);
+            while (!pending.isEmpty()) {
+                int uncommitted = 0;
+                Set<String> userIds = new LinkedHashSet<String>();
+                TransactionStatus transaction = transactionManager.getTransaction(new DefaultTransactionDefinition());
+                try {
+                    while (!pending.isEmpty() && uncommitted < commitInterval) {
+                        List<Object[]> batch = get(pending);
+                        pending = encrypt(nextBatch(records), executor);
+                        jdbcTemplate.batchUpdate(insertSql(), batch);
+                        uncommitted += batch.size();
+                        if (invalidationBus != null) {
+                            for (Object[] arguments : batch) {
+                                userIds.add((String) arguments[0]);
+                            }
+                        }
+                    }
+                } catch (RuntimeException ex) {
+                    transactionManager.rollback(transaction);
+                    logger.error("Bulk load failed after " + rows + " committed rows", ex);
+                    throw ex;
+                }
+                transactionManager.commit(transaction);
+                rows += uncommitted;
+                publish(userIds);
+                if (logger.isInfoEnabled()) {
+                    logger.info("Bulk load committed " + new BatchJobReport(rows, System.currentTimeMillis() - start));
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        return new BatchJobReport(rows, System.currentTimeMillis() - start);
+    }
+
+    private void publish(Set<String> userIds) {
+        for (String userId : userIds) {
+            invalidationBus.publish(userId);
+        }
+    }
+
+    private List<UserConnectionRecord> nextBatch(Iterator<UserConnectionRecord> records) {
+        List<UserConnectionRecord> batch = new ArrayList<UserConnectionRecord>(batchSize);
+        while (batch.size() < batchSize && records.hasNext()) {
+            batch.add(records.next());
+        }
+        return batch;
+    }
+
+    /**
+     * Starts encrypting given batch, split in one slice per encrypting thread.
+     *
+     * @param batch - Records to encrypt
+     * @param executor - Encrypting threads, null to encrypt on the calling thread
+     * @return - insert arguments of each slice, in order, empty for an empty batch
+     */
+    private List<Future<List<Object[]>>> encrypt(List<UserConnectionRecord> batch, ExecutorService executor) {
+        List<Future<List<Object[]>>> slices = new ArrayList<Future<List<Object[]>>>();
+        if (batch.isEmpty()) {
+            return slices;
+        }
+        int sliceSize = executor == null ? batch.size() : (batch.size() + encryptionThreads - 1) / encryptionThreads;
+        for (int from = 0; from < batch.size(); from += sliceSize) {
+            final List<UserConnectionRecord> slice = batch.subList(from, Math.min(from + sliceSize, batch.size()));
+            Callable<List<Object[]>> task = new Callable<List<Object[]>>() {
+                @Override
+                public List<Object[]> call() {
+                    List<Object[]> arguments = new ArrayList<Object[]>(slice.size());
+                    for (UserConnectionRecord record : slice) {
+                        arguments.add(insertArguments(record));
+                    }
+                    return arguments;
+                }
+            };
+            if (executor == null) {
+                FutureTask<List<Object[]>> future = new FutureTask<List<Object[]>>(task);
+                future.run();
+                slices.add(future);
+            } else {
+                slices.add(executor.submit(task));
+            }
+        }
+        return slices;
+    }
+
+    private List<Object[]> get(List<Future<List<Object[]>>> slices) {
+        List<Object[]> arguments = new ArrayList<Object[]>(batchSize);
+        try {
+            for (Future<List<Object[]>> slice : slices) {
+                arguments.addAll(slice.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while encrypting tokens", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException("Exception thrown while encrypting tokens", ex.getCause());
+        }
+        return arguments;
+    }
+
+    private Object[] insertArguments(UserConnectionRecord record) {
+        OpenIdConnectionData data = record.getConnectionData();
+        return new Object[] { record.getUserId(), data.getProviderId(), data.getProviderUserId(), record.getRank(),
+                data.getDisplayName(), data.getProfileUrl(), data.getImageUrl(), encrypt(data.getAccessToken()),
+                encrypt(data.getIdToken()), encrypt(data.getSecret()), encrypt(data.getRefreshToken()),
+                data.getExpireTime() };
+    }
+
+    private String insertSql() {
+        return "insert into " + tablePrefix + "UserConnection (userId, providerId, providerUserId, rank, displayName, profileUrl, imageUrl, accessToken, idToken, secret, refreshToken, expireTime) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    }
+
+    private String encrypt(String text) {
+        return text != null ? textEncryptor.encrypt(text) : text;
+    }
+}
@@ -0,0 +1,17 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.io.IOException;
+
+/**
+ * Receives rows streamed by {@link UserConnectionExporter}.
+ */
+public interface UserConnectionCallback {
+
+    /**
+     * Called once per row, on the exporting thread.
+     *
+     * @param record - Row of <code>UserConnection</code>
+     * @throws IOException - If the row cannot be written, ends the export
+     */
+    void processRecord(UserConnectionRecord record) throws IOException;
+}
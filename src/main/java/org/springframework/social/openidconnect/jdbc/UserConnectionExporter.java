@@ -0,0 +1,315 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.apache.log4j.Logger;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+import org.springframework.social.openidconnect.support.OpenIdConnectionData;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Streams the whole <code>UserConnection</code> table, for backups, re-encryption and analytics jobs. Rows are read
+ * through a forward-only cursor with the configured fetch size inside one read-only transaction, and handed out one
+ * at a time, so memory use does not grow with the table. Rows come in no particular order.
+ * <p>
+ * Tokens are decrypted only when decryption is enabled; otherwise records carry the encrypted column values. Some
+ * drivers need a specific fetch size to stream, e.g. <code>Integer.MIN_VALUE</code> for MySQL.
+ * </p>
+ */
+public class UserConnectionExporter {
+
+    /**
+     * Logger for {@link UserConnectionExporter}
+     */
+    private static final Logger logger = Logger.getLogger(UserConnectionExporter.class);
+
+    /**
+     * Leading bytes of the binary format, "UCX" and version 1.
+     */
+    static final int BINARY_MAGIC = 0x55435801;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final TextEncryptor textEncryptor;
+
+    private String tablePrefix = "";
+
+    private boolean decrypt = true;
+
+    /**
+     * Constructor which accepts the source database and the encryptor of its environment.
+     *
+     * @param dataSource - Database holding <code>UserConnection</code>
+     * @param textEncryptor - Encryptor for token columns
+     */
+    public UserConnectionExporter(DataSource dataSource, TextEncryptor textEncryptor) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(1000);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.transactionTemplate.setReadOnly(true);
+        this.textEncryptor = textEncryptor;
+    }
+
+    /**
+     * Sets a table name prefix, like {@link OpenIdJdbcUsersConnectionRepository#setTablePrefix(String)}.
+     *
+     * @param tablePrefix the tablePrefix to set
+     */
+    public void setTablePrefix(String tablePrefix) {
+        this.tablePrefix = tablePrefix;
+    }
+
+    /**
+     * Sets number of rows fetched from the database per round trip. Defaults to 1000.
+     *
+     * @param fetchSize - rows per fetch
+     */
+    public void setFetchSize(int fetchSize) {
+        jdbcTemplate.setFetchSize(fetchSize);
+    }
+
+    /**
+     * Sets whether tokens are decrypted. Defaults to true; exports for a database sharing the same key can skip it.
+     *
+     * @param decrypt - false to export encrypted tokens
+     */
+    public void setDecrypt(boolean decrypt) {
+        this.decrypt = decrypt;
+    }
+
+    /**
+     * Hands every row of the table to given callback.
+     *
+     * @param callback - Receives rows
+     * @return - number of rows exported
+     * @throws IOException - If the callback fails
+     */
+    public long export(final UserConnectionCallback callback) throws IOException {
+        final AtomicLong rows = new AtomicLong();
+        long start = System.currentTimeMillis();
+        try {
+            transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    jdbcTemplate.query("select userId, providerId, providerUserId, rank, displayName, profileUrl, imageUrl, accessToken, idToken, secret, refreshToken, expireTime from " + tablePrefix + "UserConnection",
+                            new RowCallbackHandler() {
+                                public void processRow(ResultSet rs) throws SQLException {
+                                    try {
+                                        callback.processRecord(mapRecord(rs));
+                                    } catch (IOException ex) {
+                                        throw new CallbackIOException(ex);
+                                    }
+                                    rows.incrementAndGet();
+                                }
+                            });
+                }
+            });
+        } catch (CallbackIOException ex) {
+            throw (IOException) ex.getCause();
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("Exported " + new BatchJobReport(rows.get(), System.currentTimeMillis() - start));
+        }
+        return rows.get();
+    }
+
+    /**
+     * Writes every row as one JSON object per line.
+     *
+     * @param writer - Target, flushed but not closed
+     * @return - number of rows exported
+     * @throws IOException - If writing fails
+     */
+    public long exportJsonLines(Writer writer) throws IOException {
+        final JsonGenerator generator = JSON_FACTORY.createGenerator(writer);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+        long rows = export(new UserConnectionCallback() {
+            public void processRecord(UserConnectionRecord record) throws IOException {
+                OpenIdConnectionData data = record.getConnectionData();
+                generator.writeStartObject();
+                generator.writeStringField("userId", record.getUserId());
+                generator.writeStringField("providerId", data.getProviderId());
+                generator.writeStringField("providerUserId", data.getProviderUserId());
+                generator.writeNumberField("rank", record.getRank());
+                writeOptionalField(generator, "displayName", data.getDisplayName());
+                writeOptionalField(generator, "profileUrl", data.getProfileUrl());
+                writeOptionalField(generator, "imageUrl", data.getImageUrl());
+                writeOptionalField(generator, "accessToken", data.getAccessToken());
+                writeOptionalField(generator, "idToken", data.getIdToken());
+                writeOptionalField(generator, "secret", data.getSecret());
+                writeOptionalField(generator, "refreshToken", data.getRefreshToken());
+                if (data.getExpireTime() != null) {
+                    generator.writeNumberField("expireTime", data.getExpireTime().longValue());
+                }
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+            }
+        });
+        generator.close();
+        return rows;
+    }
+
+    /**
+     * Writes every row in a compact binary format, readable with {@link #readBinary(InputStream)}.
+     *
+     * @param outputStream - Target, flushed but not closed
+     * @return - number of rows exported
+     * @throws IOException - If writing fails
+     */
+    public long exportBinary(OutputStream outputStream) throws IOException {
+        final DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeInt(BINARY_MAGIC);
+        long rows = export(new UserConnectionCallback() {
+            public void processRecord(UserConnectionRecord record) throws IOException {
+                OpenIdConnectionData data = record.getConnectionData();
+                out.writeBoolean(true);
+                out.writeUTF(record.getUserId());
+                out.writeUTF(data.getProviderId());
+                writeOptional(out, data.getProviderUserId());
+                out.writeInt(record.getRank());
+                writeOptional(out, data.getDisplayName());
+                writeOptional(out, data.getProfileUrl());
+                writeOptional(out, data.getImageUrl());
+                writeOptional(out, data.getAccessToken());
+                writeOptional(out, data.getIdToken());
+                writeOptional(out, data.getSecret());
+                writeOptional(out, data.getRefreshToken());
+                out.writeLong(data.getExpireTime() != null ? data.getExpireTime().longValue() : 0);
+            }
+        });
+        out.writeBoolean(false);
+        out.flush();
+        return rows;
+    }
+
+    /**
+     * Reads records written by {@link #exportBinary(OutputStream)} one at a time, e.g. to feed
+     * {@link UserConnectionBulkLoader#load(Iterator)}. Read failures surface as {@link IllegalStateException}.
+     *
+     * @param inputStream - Source, not closed
+     * @return - records in written order
+     * @throws IOException - If the stream does not start with the binary format header
+     */
+    public static Iterator<UserConnectionRecord> readBinary(InputStream inputStream) throws IOException {
+        final DataInputStream in = new DataInputStream(inputStream);
+        if (in.readInt() != BINARY_MAGIC) {
+            throw new IOException("Not a user connection export");
+        }
+        return new Iterator<UserConnectionRecord>() {
+
+            private Boolean hasNext;
+
+            public boolean hasNext() {
+                if (hasNext == null) {
+                    try {
+                        hasNext = Boolean.valueOf(in.readBoolean());
+                    } catch (EOFException ex) {
+                        throw new IllegalStateException("User connection export is truncated", ex);
+                    } catch (IOException ex) {
+                        throw new IllegalStateException("Exception thrown while reading user connection export", ex);
+                    }
+                }
+                return hasNext.booleanValue();
+            }
+
+            public UserConnectionRecord next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                hasNext = null;
+                try {
+                    String userId = in.readUTF();
+                    String providerId = in.readUTF();
+                    String providerUserId = readOptional(in);
+                    int rank = in.readInt();
+                    String displayName = readOptional(in);
+                    String profileUrl = readOptional(in);
+                    String imageUrl = readOptional(in);
+                    String accessToken = readOptional(in);
+                    String idToken = readOptional(in);
+                    String secret = readOptional(in);
+                    String refreshToken = readOptional(in);
+                    long expireTime = in.readLong();
+                    return new UserConnectionRecord(userId, rank, new OpenIdConnectionData(providerId, providerUserId,
+                            displayName, profileUrl, imageUrl, accessToken, secret, refreshToken,
+                            expireTime == 0 ? null : Long.valueOf(expireTime), idToken));
+                } catch (IOException ex) {
+                    throw new IllegalStateException("Exception thrown while reading user connection export", ex);
+                }
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private UserConnectionRecord mapRecord(ResultSet rs) throws SQLException {
+        long expireTime = rs.getLong("expireTime");
+        return new UserConnectionRecord(rs.getString("userId"), rs.getInt("rank"), new OpenIdConnectionData(
+                rs.getString("providerId"), rs.getString("providerUserId"), rs.getString("displayName"),
+                rs.getString("profileUrl"), rs.getString("imageUrl"), decrypt(rs.getString("accessToken")),
+                decrypt(rs.getString("secret")), decrypt(rs.getString("refreshToken")),
+                expireTime == 0 ? null : Long.valueOf(expireTime), decrypt(rs.getString("idToken"))));
+    }
+
+    private String decrypt(String encryptedText) {
+        return decrypt && encryptedText != null ? textEncryptor.decrypt(encryptedText) : encryptedText;
+    }
+
+    private static void writeOptionalField(JsonGenerator generator, String name, String value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(name, value);
+        }
+    }
+
+    private static void writeOptional(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readOptional(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Carries an {@link IOException} of the callback through the row callback.
+     */
+    private static final class CallbackIOException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        CallbackIOException(IOException cause) {
+            super(cause);
+        }
+    }
+}
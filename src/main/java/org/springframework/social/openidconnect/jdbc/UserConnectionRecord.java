@@ -0,0 +1,41 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import org.springframework.social.openidconnect.support.OpenIdConnectionData;
+
+/**
+ * One row of the <code>UserConnection</code> table with decrypted tokens: the local user, the rank of the connection
+ * among the user's connections to the same provider, and the connection data.
+ */
+public final class UserConnectionRecord {
+
+    private final String userId;
+
+    private final int rank;
+
+    private final OpenIdConnectionData connectionData;
+
+    /**
+     * Constructor which accepts all columns of a row.
+     *
+     * @param userId - Local user id
+     * @param rank - Rank among connections of the user to the same provider, 1 for the primary connection
+     * @param connectionData - Connection data with decrypted tokens
+     */
+    public UserConnectionRecord(String userId, int rank, OpenIdConnectionData connectionData) {
+        this.userId = userId;
+        this.rank = rank;
+        this.connectionData = connectionData;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    public OpenIdConnectionData getConnectionData() {
+        return connectionData;
+    }
+}
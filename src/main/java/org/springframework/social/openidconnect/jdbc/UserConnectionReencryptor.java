@@ -0,0 +1,387 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.apache.log4j.Logger;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * Re-encrypts the token columns of <code>UserConnection</code> after a key rotation, without going through the per
+ * user repository API. The table is walked in primary key order, <code>batchSize</code> rows at a time using keyset
+ * pagination, so every chunk is an index range scan however far the job has got. Each chunk is decrypted with the old
+ * key, encrypted with the new one and written back with one JDBC batch update in its own transaction.
+ * <p>
+ * Run it with a {@link RotatingTextEncryptor} as encryptor, which the application uses as well while the job is running:
+ * the application then reads rows of both keys and writes new rows with the new key, and rows already carrying the
+ * current key version are skipped, so a stopped or failed job can simply be run again. An update only applies if the
+ * access and id token columns still hold the values read, so a connection updated by the application meanwhile is not
+ * overwritten with stale tokens.
+ * </p>
+ * <p>
+ * The job can be throttled to a maximum number of rows per second to limit load on a live database, and runs either on
+ * the calling thread, {@link #run()}, or on a background thread, {@link #start()}.
+ * </p>
+ * <p>
+ * Connection data cached before a row was rewritten still decrypts while its key stays registered with the
+ * {@link RotatingTextEncryptor}. Before removing the old key, either give the job a {@link ConnectionInvalidationBus}, on
+ * which users of rewritten rows are then published after each chunk, or clear the connection data cache of every node.
+ * </p>
+ */
+public class UserConnectionReencryptor implements Runnable {
+
+    /**
+     * Logger for {@link UserConnectionReencryptor}
+     */
+    private static final Logger logger = Logger.getLogger(UserConnectionReencryptor.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final TextEncryptor decryptor;
+
+    private final TextEncryptor encryptor;
+
+    private String tablePrefix = "";
+
+    private int batchSize = 500;
+
+    private int maxRowsPerSecond;
+
+    private ConnectionInvalidationBus invalidationBus;
+
+    /**
+     * Rows read so far by the current or last run.
+     */
+    private final AtomicLong rows = new AtomicLong();
+
+    /**
+     * Rows rewritten with the new key so far.
+     */
+    private final AtomicLong reencrypted = new AtomicLong();
+
+    /**
+     * Rows skipped as already encrypted with the new key, or changed while being re-encrypted.
+     */
+    private final AtomicLong skipped = new AtomicLong();
+
+    private volatile long startedAt;
+
+    private volatile long elapsedMillis;
+
+    private volatile boolean stopped;
+
+    private Thread thread;
+
+    /**
+     * Constructor which accepts the database and the keys.
+     *
+     * @param dataSource - Database holding <code>UserConnection</code>
+     * @param decryptor - Encryptor able to decrypt the current values, usually the same {@link RotatingTextEncryptor}
+     * @param encryptor - Encryptor of the new key, a {@link RotatingTextEncryptor} lets the job skip rotated rows
+     */
+    public UserConnectionReencryptor(DataSource dataSource, TextEncryptor decryptor, TextEncryptor encryptor) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setMaxRows(batchSize);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.decryptor = decryptor;
+        this.encryptor = encryptor;
+    }
+
+    /**
+     * Sets a table name prefix, like {@link OpenIdJdbcUsersConnectionRepository#setTablePrefix(String)}.
+     *
+     * @param tablePrefix the tablePrefix to set
+     */
+    public void setTablePrefix(String tablePrefix) {
+        this.tablePrefix = tablePrefix;
+    }
+
+    /**
+     * Sets number of rows read, re-encrypted and written per chunk. Defaults to 500.
+     *
+     * @param batchSize - rows per chunk
+     */
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "batchSize should be positive");
+        this.batchSize = batchSize;
+        this.jdbcTemplate.setMaxRows(batchSize);
+    }
+
+    /**
+     * Limits the rate rows are read at. Defaults to 0, unthrottled.
+     *
+     * @param maxRowsPerSecond - rows per second, non positive for no limit
+     */
+    public void setMaxRowsPerSecond(int maxRowsPerSecond) {
+        this.maxRowsPerSecond = maxRowsPerSecond;
+    }
+
+    /**
+     * Sets the bus users of rewritten rows are published on. Defaults to null, publishing nothing.
+     *
+     * @param invalidationBus - the bus used by the repositories of the cluster, null to publish nothing
+     */
+    public void setInvalidationBus(ConnectionInvalidationBus invalidationBus) {
+        this.invalidationBus = invalidationBus;
+    }
+
+    /**
+     * Re-encrypts all rows on the calling thread, unless stopped.
+     */
+    @Override
+    public void run() {
+        reencryptUnlessStopped();
+    }
+
+    /**
+     * Re-encrypts all rows on the calling thread, also after an earlier run was stopped.
+     *
+     * @return - number of rows rewritten with the new key and throughput
+     */
+    public BatchJobReport reencrypt() {
+        stopped = false;
+        return reencryptUnlessStopped();
+    }
+
+    /**
+     * Re-encrypts rows until done or stopped. {@link #start()} resets the flag before starting the thread, so a stop
+     * requested before the thread runs is not lost.
+     */
+    private BatchJobReport reencryptUnlessStopped() {
+        rows.set(0);
+        reencrypted.set(0);
+        skipped.set(0);
+        startedAt = System.currentTimeMillis();
+        elapsedMillis = -1;
+        ChunkKey after = null;
+        try {
+            while (!stopped) {
+                List<EncryptedRow> chunk = nextChunk(after);
+                if (chunk.isEmpty()) {
+                    break;
+                }
+                reencrypt(chunk);
+                after = chunk.get(chunk.size() - 1).key;
+                rows.addAndGet(chunk.size());
+                if (logger.isInfoEnabled()) {
+                    logger.info("Re-encryption progress: " + getProgress() + " read, " + reencrypted.get()
+                            + " rewritten, " + skipped.get() + " skipped");
+                }
+                throttle();
+            }
+        } catch (RuntimeException ex) {
+            logger.error("Re-encryption failed after " + rows.get() + " rows", ex);
+            throw ex;
+        } finally {
+            elapsedMillis = System.currentTimeMillis() - startedAt;
+        }
+        BatchJobReport report = new BatchJobReport(reencrypted.get(), elapsedMillis);
+        if (logger.isInfoEnabled()) {
+            logger.info((stopped ? "Re-encryption stopped, " : "Re-encryption finished, ") + report + " rewritten");
+        }
+        return report;
+    }
+
+    /**
+     * Starts re-encrypting on a daemon thread.
+     */
+    public synchronized void start() {
+        Assert.state(thread == null || !thread.isAlive(), "Re-encryption is already running");
+        stopped = false;
+        thread = new Thread(this, "paypal-connection-reencryptor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the job after the chunk being processed, and waits for a background run to end.
+     *
+     * @throws InterruptedException - If interrupted while waiting
+     */
+    public void stop() throws InterruptedException {
+        stopped = true;
+        Thread running;
+        synchronized (this) {
+            running = thread;
+        }
+        if (running != null) {
+            running.join();
+        }
+    }
+
+    /**
+     * Checks whether a background run is in progress.
+     *
+     * @return - true while the background thread is alive
+     */
+    public synchronized boolean isRunning() {
+        return thread != null && thread.isAlive();
+    }
+
+    /**
+     * Gets the rows read so far by the current or last run and the rate they were read at.
+     *
+     * @return - progress of the current or last run
+     */
+    public BatchJobReport getProgress() {
+        long elapsed = elapsedMillis >= 0 ? elapsedMillis : System.currentTimeMillis() - startedAt;
+        return new BatchJobReport(rows.get(), elapsed);
+    }
+
+    public long getReencrypted() {
+        return reencrypted.get();
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    private List<EncryptedRow> nextChunk(ChunkKey after) {
+        String select = "select userId, providerId, providerUserId, accessToken, idToken, secret, refreshToken from "
+                + tablePrefix + "UserConnection";
+        String orderBy = " order by userId, providerId, providerUserId";
+        if (after == null) {
+            return jdbcTemplate.query(select + orderBy, rowMapper);
+        }
+        return jdbcTemplate.query(select + " where userId > ? or (userId = ? and providerId > ?)"
+                + " or (userId = ? and providerId = ? and providerUserId > ?)" + orderBy, rowMapper, after.userId,
+                after.userId, after.providerId, after.userId, after.providerId, after.providerUserId);
+    }
+
+    private void reencrypt(List<EncryptedRow> chunk) {
+        final List<Object[]> updates = new ArrayList<Object[]>(chunk.size());
+        for (EncryptedRow row : chunk) {
+            if (isCurrent(row)) {
+                skipped.incrementAndGet();
+            } else {
+                updates.add(new Object[] { reencrypt(row.accessToken), reencrypt(row.idToken), reencrypt(row.secret),
+                        reencrypt(row.refreshToken), row.key.userId, row.key.providerId, row.key.providerUserId,
+                        row.accessToken, row.idToken });
+            }
+        }
+        if (updates.isEmpty()) {
+            return;
+        }
+        int[] counts = transactionTemplate.execute(new TransactionCallback<int[]>() {
+            @Override
+            public int[] doInTransaction(TransactionStatus status) {
+                return jdbcTemplate.batchUpdate("update " + tablePrefix + "UserConnection set accessToken = ?, idToken = ?, secret = ?, refreshToken = ? where userId = ? and providerId = ? and providerUserId = ? and accessToken = ? and idToken = ?", updates);
+            }
+        });
+        Set<String> userIds = new LinkedHashSet<String>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+                reencrypted.incrementAndGet();
+                userIds.add((String) updates.get(i)[4]);
+            } else {
+                // changed by the application since read, so already written with the new key
+                skipped.incrementAndGet();
+            }
+        }
+        if (invalidationBus != null) {
+            for (String userId : userIds) {
+                invalidationBus.publish(userId);
+            }
+        }
+    }
+
+    private boolean isCurrent(EncryptedRow row) {
+        if (!(encryptor instanceof RotatingTextEncryptor)) {
+            return false;
+        }
+        RotatingTextEncryptor rotating = (RotatingTextEncryptor) encryptor;
+        return rotating.isCurrent(row.accessToken) && rotating.isCurrent(row.idToken) && rotating.isCurrent(row.secret)
+                && rotating.isCurrent(row.refreshToken);
+    }
+
+    private String reencrypt(String encryptedText) {
+        return encryptedText != null ? encryptor.encrypt(decryptor.decrypt(encryptedText)) : encryptedText;
+    }
+
+    /**
+     * Sleeps as long as needed to keep the read rate below <code>maxRowsPerSecond</code>.
+     */
+    private void throttle() {
+        if (maxRowsPerSecond <= 0) {
+            return;
+        }
+        long due = startedAt + rows.get() * 1000 / maxRowsPerSecond;
+        long wait = due - System.currentTimeMillis();
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                stopped = true;
+            }
+        }
+    }
+
+    private final RowMapper<EncryptedRow> rowMapper = new RowMapper<EncryptedRow>() {
+        @Override
+        public EncryptedRow mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return new EncryptedRow(new ChunkKey(rs.getString("userId"), rs.getString("providerId"),
+                    rs.getString("providerUserId")), rs.getString("accessToken"), rs.getString("idToken"),
+                    rs.getString("secret"), rs.getString("refreshToken"));
+        }
+    };
+
+    /**
+     * Primary key of a row, the position the next chunk starts after.
+     */
+    private static final class ChunkKey {
+
+        private final String userId;
+
+        private final String providerId;
+
+        private final String providerUserId;
+
+        ChunkKey(String userId, String providerId, String providerUserId) {
+            this.userId = userId;
+            this.providerId = providerId;
+            this.providerUserId = providerUserId;
+        }
+    }
+
+    /**
+     * Token columns of a row as stored.
+     */
+    private static final class EncryptedRow {
+
+        private final ChunkKey key;
+
+        private final String accessToken;
+
+        private final String idToken;
+
+        private final String secret;
+
+        private final String refreshToken;
+
+        EncryptedRow(ChunkKey key, String accessToken, String idToken, String secret, String refreshToken) {
+            this.key = key;
+            this.accessToken = accessToken;
+            this.idToken = idToken;
+            this.secret = secret;
+            this.refreshToken = refreshToken;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.social.connect.ConnectionData;
+import org.springframework.social.connect.ConnectionKey;
+
+/**
+ * Immutable snapshot of all connections of one user, ordered by provider id and rank, as held by
+ * {@link ConnectionDataCache}.
+ */
+final class UserConnections {
+
+    private final List<ConnectionData> connections;
+
+    private final int[] ranks;
+
+    /**
+     * Constructor which accepts connection data and ranks in the same order.
+     *
+     * @param connections - Connection data ordered by provider id and rank
+     * @param ranks - Rank of each connection
+     */
+    UserConnections(List<ConnectionData> connections, int[] ranks) {
+        this.connections = Collections.unmodifiableList(new ArrayList<ConnectionData>(connections));
+        this.ranks = ranks.clone();
+    }
+
+    /**
+     * Gets all connection data ordered by provider id and rank.
+     *
+     * @return - connection data
+     */
+    List<ConnectionData> getConnections() {
+        return connections;
+    }
+
+    /**
+     * Gets rank of the connection at given position of {@link #getConnections()}.
+     *
+     * @param index - Position of the connection
+     * @return - stored rank
+     */
+    int getRank(int index) {
+        return ranks[index];
+    }
+
+    /**
+     * Gets connection data of given provider ordered by rank.
+     *
+     * @param providerId - Provider id
+     * @return - connection data
+     */
+    List<ConnectionData> getConnections(String providerId) {
+        List<ConnectionData> result = new ArrayList<ConnectionData>();
+        for (ConnectionData connectionData : connections) {
+            if (connectionData.getProviderId().equals(providerId)) {
+                result.add(connectionData);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets connection data for given key.
+     *
+     * @param connectionKey - Provider id and provider user id
+     * @return - connection data, null if not connected
+     */
+    ConnectionData getConnection(ConnectionKey connectionKey) {
+        for (ConnectionData connectionData : connections) {
+            if (connectionData.getProviderId().equals(connectionKey.getProviderId())
+                    && connectionData.getProviderUserId().equals(connectionKey.getProviderUserId())) {
+                return connectionData;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets connection data of rank 1 for given provider.
+     *
+     * @param providerId - Provider id
+     * @return - connection data, null if none has rank 1
+     */
+    ConnectionData getPrimaryConnection(String providerId) {
+        for (int i = 0; i < ranks.length; i++) {
+            if (ranks[i] == 1 && connections.get(i).getProviderId().equals(providerId)) {
+                return connections.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets earliest expiry time of the connections after given time, ignoring tokens already expired.
+     *
+     * @param now - Current time in milliseconds since epoch
+     * @return - milliseconds since epoch, null if no connection expires after given time
+     */
+    Long getEarliestExpireTime(long now) {
+        Long earliest = null;
+        for (ConnectionData connectionData : connections) {
+            Long expireTime = connectionData.getExpireTime();
+            if (expireTime != null && expireTime.longValue() > now
+                    && (earliest == null || expireTime.longValue() < earliest.longValue())) {
+                earliest = expireTime;
+            }
+        }
+        return earliest;
+    }
+}
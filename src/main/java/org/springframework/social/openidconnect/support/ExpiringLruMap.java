@@ -0,0 +1,217 @@
+package org.springframework.social.openidconnect.support;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.Assert;
+
+/**
+ * Bounded map whose values expire at a time given when they are put, backing the profile and connection data caches.
+ * The least recently used key is dropped once the map is full, expired values are dropped when looked up.
+ * <p>
+ * A key can be reserved while its value is loaded: {@link #reserve(Object)} registers a slot without value and
+ * {@link #putIfReserved(Object, long, Object, long)} fills it only if the slot was not removed or replaced meanwhile, so
+ * a load racing with {@link #remove(Object)} of the same key is not cached.
+ * </p>
+ * <p>
+ * Thread safe. All methods synchronize on this map, callers may hold its monitor to make several calls atomic.
+ * </p>
+ *
+ * @param <K> - key type
+ * @param <V> - value type
+ */
+public class ExpiringLruMap<K, V> {
+
+    private final int maxSize;
+
+    /**
+     * Slots in access order.
+     */
+    private final LinkedHashMap<K, Slot<V>> slots;
+
+    /**
+     * Source of slot stamps.
+     */
+    private long stamps;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a map holding at most given number of keys.
+     *
+     * @param maxSize - Maximum number of keys held, reserved ones included
+     */
+    public ExpiringLruMap(final int maxSize) {
+        Assert.isTrue(maxSize > 0, "maxSize should be positive");
+        this.maxSize = maxSize;
+        this.slots = new LinkedHashMap<K, Slot<V>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Slot<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Gets the value of given key and counts a hit or a miss.
+     *
+     * @param key - Key
+     * @return - value, null if not held, reserved or expired
+     */
+    public V get(K key) {
+        V value = peek(key);
+        if (value != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Gets the value of given key without counting a hit or a miss.
+     *
+     * @param key - Key
+     * @return - value, null if not held, reserved or expired
+     */
+    public synchronized V peek(K key) {
+        Slot<V> slot = slots.get(key);
+        if (slot == null || slot.value == null) {
+            return null;
+        }
+        if (slot.expiresAt <= System.currentTimeMillis()) {
+            slots.remove(key);
+            return null;
+        }
+        return slot.value;
+    }
+
+    /**
+     * Puts a value, replacing any value or reservation of the key.
+     *
+     * @param key - Key
+     * @param value - Value, not null
+     * @param expiresAt - Time in milliseconds since epoch the value expires at
+     */
+    public synchronized void put(K key, V value, long expiresAt) {
+        Assert.notNull(value, "value cannot be null");
+        slots.put(key, new Slot<V>(value, expiresAt, ++stamps));
+    }
+
+    /**
+     * Reserves given key for a value being loaded, unless the key is held already.
+     *
+     * @param key - Key
+     * @return - stamp of the slot, to pass to {@link #putIfReserved(Object, long, Object, long)}
+     */
+    public synchronized long reserve(K key) {
+        Slot<V> slot = slots.get(key);
+        if (slot == null) {
+            slot = new Slot<V>(null, Long.MAX_VALUE, ++stamps);
+            slots.put(key, slot);
+        }
+        return slot.stamp;
+    }
+
+    /**
+     * Puts a value if the slot reserved for it is still held.
+     *
+     * @param key - Key
+     * @param stamp - Value of {@link #reserve(Object)} before loading the value
+     * @param value - Value, not null
+     * @param expiresAt - Time in milliseconds since epoch the value expires at
+     * @return - false if the key was removed, dropped or replaced since reserved
+     */
+    public synchronized boolean putIfReserved(K key, long stamp, V value, long expiresAt) {
+        Assert.notNull(value, "value cannot be null");
+        Slot<V> slot = slots.get(key);
+        if (slot == null || slot.stamp != stamp) {
+            return false;
+        }
+        slots.put(key, new Slot<V>(value, expiresAt, stamp));
+        return true;
+    }
+
+    /**
+     * Makes the value of given key expire at given time, if it would expire later.
+     *
+     * @param key - Key
+     * @param expiresAt - Time in milliseconds since epoch
+     */
+    public synchronized void expireAt(K key, long expiresAt) {
+        Slot<V> slot = slots.get(key);
+        if (slot != null && slot.value != null && slot.expiresAt > expiresAt) {
+            slots.put(key, new Slot<V>(slot.value, expiresAt, slot.stamp));
+        }
+    }
+
+    /**
+     * Removes the value or reservation of given key.
+     *
+     * @param key - Key
+     */
+    public synchronized void remove(K key) {
+        slots.remove(key);
+    }
+
+    /**
+     * Removes all values and reservations.
+     */
+    public synchronized void clear() {
+        slots.clear();
+    }
+
+    /**
+     * Number of keys currently held, including expired values not yet removed and reservations.
+     *
+     * @return - map size
+     */
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Number of {@link #get(Object)} calls which found a value.
+     *
+     * @return - hit count
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of {@link #get(Object)} calls which found no value.
+     *
+     * @return - miss count
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Value, or null while reserved, with its expiry and stamp.
+     */
+    private static final class Slot<V> {
+
+        private final V value;
+
+        private final long expiresAt;
+
+        private final long stamp;
+
+        Slot(V value, long expiresAt, long stamp) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.stamp = stamp;
+        }
+    }
+}
@@ -15,6 +15,12 @@ public class OpenIdConnection<A> extends OAuth2Connection<A> {
 
     private String idToken;
 
+    /**
+     * Data this connection was restored from, holding the id token until first read. Null once read or when created
+     * from an access grant.
+     */
+    private OpenIdConnectionData idTokenSource;
+
     private String accessToken;
 
     private String refreshToken;
@@ -32,7 +38,8 @@ public class OpenIdConnection<A> extends OAuth2Connection<A> {
 
     public OpenIdConnection(OpenIdConnectionData data, OAuth2ServiceProvider<A> serviceProvider, ApiAdapter<A> apiAdapter) {
         super(data, serviceProvider, apiAdapter);
-        this.idToken = data.getIdToken();
+        // id token is read on demand, so data decrypting it lazily does not decrypt it for connections never asked
+        this.idTokenSource = data;
         this.accessToken = data.getAccessToken();
         this.refreshToken = data.getRefreshToken();
         this.expireTime = data.getExpireTime();
@@ -45,11 +52,17 @@ public class OpenIdConnection<A> extends OAuth2Connection<A> {
     @Override
     public ConnectionData createData() {
         synchronized (getMonitor()) {
-            return new OpenIdConnectionData(getKey().getProviderId(), getKey().getProviderUserId(), getDisplayName(), getProfileUrl(), getImageUrl(), accessToken, null, refreshToken, expireTime, idToken);
+            return new OpenIdConnectionData(getKey().getProviderId(), getKey().getProviderUserId(), getDisplayName(), getProfileUrl(), getImageUrl(), accessToken, null, refreshToken, expireTime, getIdToken());
         }
     }
 
     public String getIdToken() {
-        return idToken;
+        synchronized (getMonitor()) {
+            if (idTokenSource != null) {
+                idToken = idTokenSource.getIdToken();
+                idTokenSource = null;
+            }
+            return idToken;
+        }
     }
 }
\ No newline at end of file
@@ -11,4 +11,9 @@ create table UserConnection (userId varchar(255) not null,
 	refreshToken varchar(255),
 	expireTime bigint,
 	primary key (userId, providerId, providerUserId));
-create unique index UserConnectionRank on UserConnection(userId, providerId, rank);
\ No newline at end of file
+create unique index UserConnectionRank on UserConnection(userId, providerId, rank);
+create index UserConnectionExpireTime on UserConnection(expireTime);
+create table UserConnectionVersion (userId varchar(255) not null,
+	updatedAt bigint not null,
+	primary key (userId));
+create index UserConnectionVersionUpdatedAt on UserConnectionVersion(updatedAt);
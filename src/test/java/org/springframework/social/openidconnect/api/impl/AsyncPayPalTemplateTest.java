@@ -0,0 +1,129 @@
+package org.springframework.social.openidconnect.api.impl;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.social.oauth2.AccessGrant;
+import org.springframework.social.openidconnect.ConnectionPoolProfile;
+import org.springframework.social.openidconnect.HttpClientRegistry;
+import org.springframework.social.openidconnect.PayPalAccessException;
+import org.springframework.social.openidconnect.PayPalOpenIdConnectOperation;
+import org.springframework.social.openidconnect.PayPalServiceProvider;
+import org.springframework.social.openidconnect.api.PayPalProfile;
+import org.springframework.social.openidconnect.stub.PayPalStubServer;
+import org.springframework.social.openidconnect.support.OpenIdAccessGrant;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.client.HttpServerErrorException;
+
+/**
+ * Tests {@link AsyncPayPalTemplate} and the non-blocking token exchange against the stub server.
+ */
+public class AsyncPayPalTemplateTest {
+
+    private PayPalStubServer server;
+
+    private PayPalServiceProvider serviceProvider;
+
+    private PayPalOpenIdConnectOperation operations;
+
+    @Before
+    public void beforeEach() throws IOException {
+        server = new PayPalStubServer(4).start();
+        serviceProvider = new PayPalServiceProvider("clientId", "appSecret", "openid profile email address",
+                server.getAuthorizeUrl(), server.getTokenUrl(), server.getUserInfoUrl(), false,
+                ConnectionPoolProfile.DEFAULT.withAsyncIoThreads(1));
+        operations = (PayPalOpenIdConnectOperation) serviceProvider.getOAuthOperations();
+    }
+
+    @After
+    public void afterEach() {
+        server.stop();
+        HttpClientRegistry.closeAll();
+    }
+
+    /**
+     * Token exchange and user info should complete with the issued tokens and the seeded profile.
+     *
+     * @throws Exception - If a call fails
+     */
+    @Test
+    public void testSignIn() throws Exception {
+        AccessGrant accessGrant = operations.exchangeForAccessAsync("code", "http://localhost", null).get();
+        Assert.assertEquals("access-code", accessGrant.getAccessToken());
+        Assert.assertEquals("id-access-code", ((OpenIdAccessGrant) accessGrant).getIdToken());
+
+        PayPalProfile profile = serviceProvider.getAsyncApi(accessGrant.getAccessToken()).getUserProfile().get();
+        Assert.assertEquals("Prabhakar", profile.getFamilyName());
+        Assert.assertTrue(profile.getUserId().endsWith("access-code"));
+        Assert.assertEquals("access-code", profile.getPassword());
+    }
+
+    /**
+     * A repeated token should be served from the profile cache, without calling user info again.
+     *
+     * @throws Exception - If a call fails
+     */
+    @Test
+    public void testRepeatedTokenIsCached() throws Exception {
+        serviceProvider.setProfileCache(new PayPalProfileCache(100, 60000));
+        PayPalProfile profile = serviceProvider.getAsyncApi("token").getUserProfile().get();
+        long requests = server.getRequests();
+        Assert.assertSame(profile, serviceProvider.getAsyncApi("token").getUserProfile().get());
+        Assert.assertEquals(requests, server.getRequests());
+        Assert.assertEquals(1, serviceProvider.getProfileCache().getHits());
+    }
+
+    /**
+     * Concurrent calls for one token should share one user info call.
+     *
+     * @throws Exception - If a call fails
+     */
+    @Test
+    public void testConcurrentCallsAreCoalesced() throws Exception {
+        server.withLatency(200);
+        ListenableFuture<PayPalProfile> first = serviceProvider.getAsyncApi("token").getUserProfile();
+        ListenableFuture<PayPalProfile> second = serviceProvider.getAsyncApi("token").getUserProfile();
+        Assert.assertSame(first.get(), second.get());
+        Assert.assertEquals(1, server.getRequests());
+        Assert.assertEquals(1, serviceProvider.getRequestCoalescer().getCoalescedCalls());
+    }
+
+    /**
+     * Server errors should fail the futures.
+     */
+    @Test
+    public void testServerError() {
+        server.withErrorRate(1);
+        assertFailsWith(HttpServerErrorException.class,
+                operations.exchangeForAccessAsync("code", "http://localhost", null));
+        assertFailsWith(HttpServerErrorException.class, serviceProvider.getAsyncApi("token").getUserProfile());
+    }
+
+    /**
+     * Responses without body should fail the futures with a PayPal Access exception.
+     */
+    @Test
+    public void testEmptyResponse() {
+        server.withEmptyResponses(true);
+        assertFailsWith(PayPalAccessException.class,
+                operations.exchangeForAccessAsync("code", "http://localhost", null));
+        assertFailsWith(PayPalAccessException.class, serviceProvider.getAsyncApi("token").getUserProfile());
+    }
+
+    private static void assertFailsWith(Class<? extends Exception> expected, ListenableFuture<?> future) {
+        try {
+            future.get();
+            Assert.fail("Future should fail with " + expected.getSimpleName());
+        } catch (ExecutionException ex) {
+            Assert.assertTrue("Unexpected " + ex.getCause(), expected.isInstance(ex.getCause()));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            Assert.fail("Interrupted");
+        }
+    }
+}
@@ -13,6 +13,7 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.client.*;
+import org.springframework.social.openidconnect.ConnectionPoolProfile;
 import org.springframework.social.openidconnect.HttpClientFactory;
 import org.springframework.social.openidconnect.PayPalAccessException;
 
@@ -69,6 +70,18 @@ public class HttpClientFactoryTest {
     }
 
 
+    /**
+     * Test pool sizes and time to live from a connection pool profile
+     */
+    @Test
+    public void testPoolProfile() {
+        ConnectionPoolProfile profile = ConnectionPoolProfile.DEFAULT.withMaxTotal(400).withMaxPerRoute(100).withTimeToLive(60000);
+        PoolingHttpClientConnectionManager cm = HttpClientFactory.getPooledConnectionManager(true, profile);
+        Assert.assertEquals(400, cm.getMaxTotal());
+        Assert.assertEquals(100, cm.getDefaultMaxPerRoute());
+        cm.shutdown();
+    }
+
     /**
      * Test making HTTP call without passing TLS version
      * @throws IOException
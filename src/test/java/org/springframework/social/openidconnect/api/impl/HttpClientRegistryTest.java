@@ -0,0 +1,42 @@
+package org.springframework.social.openidconnect.api.impl;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.social.openidconnect.HttpClientRegistry;
+
+/**
+ * Tests whether request factories are shared between templates.
+ */
+public class HttpClientRegistryTest {
+
+    @After
+    public void afterEach() {
+        HttpClientRegistry.closeAll();
+    }
+
+    /**
+     * Same configuration should always get the same factory.
+     */
+    @Test
+    public void testFactoryIsShared() {
+        HttpComponentsClientHttpRequestFactory first = HttpClientRegistry.getRequestFactory(true);
+        HttpComponentsClientHttpRequestFactory second = HttpClientRegistry.getRequestFactory(true);
+        Assert.assertSame(first, second);
+        Assert.assertNotSame(first, HttpClientRegistry.getRequestFactory(false));
+        Assert.assertEquals(2, HttpClientRegistry.size());
+    }
+
+    /**
+     * Closing the registry should release clients and create fresh ones afterwards.
+     */
+    @Test
+    public void testCloseAll() {
+        HttpComponentsClientHttpRequestFactory first = HttpClientRegistry.getRequestFactory(true);
+        HttpClientRegistry.closeAll();
+        Assert.assertEquals(0, HttpClientRegistry.size());
+        Assert.assertNotSame(first, HttpClientRegistry.getRequestFactory(true));
+    }
+}
@@ -0,0 +1,104 @@
+package org.springframework.social.openidconnect.api.impl;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.social.openidconnect.ConnectionPoolProfile;
+import org.springframework.social.openidconnect.HttpClientFactory;
+import org.springframework.social.openidconnect.IdleConnectionEvictor;
+import org.springframework.social.openidconnect.stub.PayPalStubServer;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Tests {@link IdleConnectionEvictor} against a pool holding keep-alive connections to the stub server.
+ */
+public class IdleConnectionEvictorTest {
+
+    private PayPalStubServer server;
+
+    private IdleConnectionEvictor evictor;
+
+    @Before
+    public void beforeEach() throws IOException {
+        server = new PayPalStubServer(2).start();
+    }
+
+    @After
+    public void afterEach() {
+        if (evictor != null) {
+            evictor.shutdown();
+        }
+        server.stop();
+    }
+
+    /**
+     * A connection idle for longer than the max idle time should be closed and counted.
+     *
+     * @throws Exception - If the request or wait fails
+     */
+    @Test(timeout = 10000)
+    public void testIdleConnectionsAreEvicted() throws Exception {
+        PoolingHttpClientConnectionManager connectionManager = HttpClientFactory.getPooledConnectionManager(false,
+                ConnectionPoolProfile.DEFAULT);
+        callUserInfo(connectionManager);
+        Assert.assertEquals(1, connectionManager.getTotalStats().getAvailable());
+
+        evictor = new IdleConnectionEvictor(connectionManager, 50, 100);
+        evictor.start();
+        while (evictor.getEvictedConnections() == 0) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(1, evictor.getEvictedConnections());
+        Assert.assertEquals(0, connectionManager.getTotalStats().getAvailable());
+        connectionManager.shutdown();
+    }
+
+    /**
+     * A failing run should be logged, not stop the evictor thread.
+     *
+     * @throws Exception - If the wait fails
+     */
+    @Test(timeout = 10000)
+    public void testFailedRunKeepsEvicting() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager() {
+            @Override
+            public void closeExpiredConnections() {
+                if (runs.incrementAndGet() == 1) {
+                    throw new IllegalStateException("Pool failure");
+                }
+                super.closeExpiredConnections();
+            }
+        };
+        evictor = new IdleConnectionEvictor(connectionManager, 20, 0);
+        evictor.start();
+        while (evictor.getEvictionRuns() < 2) {
+            Thread.sleep(20);
+        }
+        Assert.assertTrue(evictor.isAlive());
+        Assert.assertTrue(runs.get() > evictor.getEvictionRuns());
+        connectionManager.shutdown();
+    }
+
+    private void callUserInfo(PoolingHttpClientConnectionManager connectionManager) throws IOException {
+        ClientHttpRequest request = HttpClientFactory.getRequestFactory(connectionManager, ConnectionPoolProfile.DEFAULT)
+                .createRequest(URI.create(server.getUserInfoUrl()), HttpMethod.GET);
+        request.getHeaders().set("Authorization", "Bearer token");
+        ClientHttpResponse response = request.execute();
+        try {
+            StreamUtils.copyToByteArray(response.getBody());
+        } finally {
+            response.close();
+        }
+    }
+}
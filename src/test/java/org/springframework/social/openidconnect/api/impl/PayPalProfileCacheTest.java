@@ -0,0 +1,42 @@
+package org.springframework.social.openidconnect.api.impl;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.springframework.social.openidconnect.api.PayPalProfile;
+
+/**
+ * Tests expiry, bounds and statistics of profile cache.
+ */
+public class PayPalProfileCacheTest {
+
+    /**
+     * Cached profile should be returned until the token expires.
+     */
+    @Test
+    public void testProfileExpiresWithToken() {
+        PayPalProfileCache cache = new PayPalProfileCache(10, 60000);
+        PayPalProfile profile = new PayPalProfile();
+        cache.put("token", profile);
+        Assert.assertSame(profile, cache.get("token"));
+        cache.setTokenExpireTime("token", System.currentTimeMillis() - 1);
+        Assert.assertNull(cache.get("token"));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    /**
+     * Least recently used token should be dropped once the cache is full.
+     */
+    @Test
+    public void testLeastRecentlyUsedIsDropped() {
+        PayPalProfileCache cache = new PayPalProfileCache(2, 60000);
+        cache.put("first", new PayPalProfile());
+        cache.put("second", new PayPalProfile());
+        cache.get("first");
+        cache.put("third", new PayPalProfile());
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNull(cache.get("second"));
+        Assert.assertNotNull(cache.get("first"));
+    }
+}
@@ -40,4 +40,20 @@ public class PayPalTemplateTest {
         Assert.assertEquals("abhijith@hotmail.com", userProfile.getEmail());
         Assert.assertNull(userProfile.getLocale());
     }
+
+    /**
+     * Tests whether audit log line hides personal data and the access token.
+     *
+     * @throws IOException - If file could not be read.
+     */
+    @Test
+    public void testAuditLineIsRedacted() throws IOException {
+        InputStream stream = getClass().getResourceAsStream("/paypal-api-openidconnect-response.json");
+        PayPalProfile userProfile = new ObjectMapper().readValue(stream, PayPalProfile.class);
+        userProfile.setPassword("secret-token");
+        String line = PayPalProfileAuditLogger.format(userProfile);
+        Assert.assertTrue(line.contains("family_name=Prabhakar"));
+        Assert.assertFalse(line.contains("abhijith@hotmail.com"));
+        Assert.assertFalse(line.contains("secret-token"));
+    }
 }
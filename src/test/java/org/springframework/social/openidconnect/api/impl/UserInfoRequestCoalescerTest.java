@@ -0,0 +1,89 @@
+package org.springframework.social.openidconnect.api.impl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.springframework.social.openidconnect.PayPalAccessException;
+import org.springframework.social.openidconnect.api.PayPalProfile;
+
+/**
+ * Tests whether concurrent requests for the same token share one call.
+ */
+public class UserInfoRequestCoalescerTest {
+
+    private final UserInfoRequestCoalescer coalescer = new UserInfoRequestCoalescer();
+
+    /**
+     * Requests arriving while a call is in flight should get its result.
+     *
+     * @throws Exception - If a request fails
+     */
+    @Test
+    public void testConcurrentRequestsShareOneCall() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final Callable<PayPalProfile> call = new Callable<PayPalProfile>() {
+            @Override
+            public PayPalProfile call() throws Exception {
+                calls.incrementAndGet();
+                release.await();
+                return new PayPalProfile();
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] results = new Future<?>[4];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = executor.submit(new Callable<PayPalProfile>() {
+                    @Override
+                    public PayPalProfile call() {
+                        return coalescer.fetch("token", call);
+                    }
+                });
+            }
+            while (coalescer.getCoalescedCalls() < 3) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            for (Future<?> result : results) {
+                Assert.assertSame(results[0].get(5, TimeUnit.SECONDS), result.get(5, TimeUnit.SECONDS));
+            }
+            Assert.assertEquals(1, calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Failure of the shared call should be thrown to the caller and not be remembered afterwards.
+     */
+    @Test
+    public void testFailureIsNotKept() {
+        try {
+            coalescer.fetch("token", new Callable<PayPalProfile>() {
+                @Override
+                public PayPalProfile call() {
+                    throw new PayPalAccessException("failed", null);
+                }
+            });
+            Assert.fail("Exception expected");
+        } catch (PayPalAccessException ex) {
+            Assert.assertEquals("failed", ex.getMessage());
+        }
+        Assert.assertNotNull(coalescer.fetch("token", new Callable<PayPalProfile>() {
+            @Override
+            public PayPalProfile call() {
+                return new PayPalProfile();
+            }
+        }));
+        Assert.assertEquals(2, coalescer.getCalls());
+    }
+}
@@ -0,0 +1,161 @@
+package org.springframework.social.openidconnect.inmemory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.springframework.social.connect.Connection;
+import org.springframework.social.connect.ConnectionData;
+import org.springframework.social.connect.ConnectionFactoryLocator;
+import org.springframework.social.connect.ConnectionKey;
+import org.springframework.social.connect.ConnectionRepository;
+import org.springframework.social.connect.support.ConnectionFactoryRegistry;
+import org.springframework.social.openidconnect.PayPalConnectionFactoryBuilder;
+import org.springframework.social.openidconnect.RankedConnection;
+
+/**
+ * Tests eviction and write through of {@link BoundedInMemoryUsersConnectionRepository}.
+ */
+public class BoundedInMemoryUsersConnectionRepositoryTest {
+
+    private static ConnectionData connectionData(int user) {
+        return new ConnectionData("paypal", "paypal-" + user, null, null, null, "token" + user, null, null, null);
+    }
+
+    /**
+     * Least recently used user should be dropped together with its reverse index entries.
+     */
+    @Test
+    public void testLeastRecentlyUsedUserIsDropped() {
+        BoundedInMemoryUsersConnectionRepository repository = new BoundedInMemoryUsersConnectionRepository(null, 2, -1);
+        repository.addConnectionData("user0", connectionData(0), 1);
+        repository.addConnectionData("user1", connectionData(1), 1);
+        repository.createInMemoryConnectionRepository("user0");
+        repository.addConnectionData("user2", connectionData(2), 1);
+
+        Assert.assertEquals(2, repository.size());
+        Assert.assertEquals(1, repository.getEvictions());
+        Assert.assertFalse(repository.connectionRepositoriesByUserId.containsKey("user1"));
+        Assert.assertTrue(repository.findUserIdsConnectedTo("paypal", Collections.singleton("paypal-1")).isEmpty());
+        Assert.assertEquals(Collections.singleton("user0"),
+                repository.findUserIdsConnectedTo("paypal", Collections.singleton("paypal-0")));
+    }
+
+    /**
+     * Users not accessed within the idle time should be dropped.
+     *
+     * @throws Exception - If interrupted
+     */
+    @Test
+    public void testIdleUsersAreDropped() throws Exception {
+        BoundedInMemoryUsersConnectionRepository repository = new BoundedInMemoryUsersConnectionRepository(null, 10, 1);
+        repository.addConnectionData("user0", connectionData(0), 1);
+        Thread.sleep(10);
+        repository.evictIdle();
+        Assert.assertEquals(0, repository.size());
+        Assert.assertEquals(1, repository.getEvictions());
+    }
+
+    /**
+     * Writes should reach the backing repository, and dropped users should be loaded back from it.
+     */
+    @Test
+    public void testWriteThroughAndReload() {
+        ConnectionFactoryRegistry registry = new ConnectionFactoryRegistry();
+        registry.addConnectionFactory(new PayPalConnectionFactoryBuilder().withClientId("clientId")
+                .withAppSecret("appSecret").withScope("openid profile email").build());
+        ConnectionFactoryLocator locator = registry;
+        InMemoryUsersConnectionRepository backing = new InMemoryUsersConnectionRepository(locator);
+        BoundedInMemoryUsersConnectionRepository repository = new BoundedInMemoryUsersConnectionRepository(locator, 1,
+                -1, backing);
+
+        Connection<?> connection = locator.getConnectionFactory("paypal").createConnection(connectionData(0));
+        repository.createConnectionRepository("user0").addConnection(connection);
+        Assert.assertEquals(Collections.singletonList("user0"), backing.findUserIdsWithConnection(connection));
+
+        repository.createConnectionRepository("user1");
+        Assert.assertEquals(1, repository.getEvictions());
+
+        ConnectionRepository reloaded = repository.createConnectionRepository("user0");
+        Assert.assertEquals("token0", reloaded.getConnection(new ConnectionKey("paypal", "paypal-0")).createData()
+                .getAccessToken());
+        Assert.assertEquals(Collections.singletonList("user0"), repository.findUserIdsWithConnection(connection));
+        Assert.assertEquals(3, repository.getLoads());
+    }
+
+    /**
+     * Users loaded from the backing repository should keep their stored ranks.
+     */
+    @Test
+    public void testReloadKeepsRanks() {
+        InMemoryUsersConnectionRepository backing = new InMemoryUsersConnectionRepository(null);
+        backing.addConnectionData("user0", connectionData(0), 3);
+        backing.addConnectionData("user0", connectionData(1), 5);
+        BoundedInMemoryUsersConnectionRepository repository = new BoundedInMemoryUsersConnectionRepository(null, 1,
+                -1, backing);
+
+        List<RankedConnection> loaded = repository.findRankedConnections("user0");
+        Assert.assertTrue(loaded.isEmpty());
+        repository.createConnectionRepository("user0");
+        loaded = repository.findRankedConnections("user0");
+        Assert.assertEquals(2, loaded.size());
+        Assert.assertEquals(3, loaded.get(0).getRank());
+        Assert.assertEquals("paypal-0", loaded.get(0).getConnectionData().getProviderUserId());
+        Assert.assertEquals(5, loaded.get(1).getRank());
+        Assert.assertEquals(1, repository.getLoads());
+    }
+
+    /**
+     * A slow load of one user should neither block access to other users nor be repeated for concurrent callers.
+     *
+     * @throws Exception - If interrupted
+     */
+    @Test(timeout = 10000)
+    public void testSlowLoadDoesNotBlockOtherUsers() throws Exception {
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        InMemoryUsersConnectionRepository backing = new InMemoryUsersConnectionRepository(null) {
+            @Override
+            public List<RankedConnection> findRankedConnections(String userId) {
+                if ("slow".equals(userId)) {
+                    loading.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.findRankedConnections(userId);
+            }
+        };
+        backing.addConnectionData("slow", connectionData(0), 1);
+        final BoundedInMemoryUsersConnectionRepository repository = new BoundedInMemoryUsersConnectionRepository(null,
+                10, -1, backing);
+        repository.createInMemoryConnectionRepository("fast");
+
+        Thread[] slowCallers = new Thread[2];
+        for (int i = 0; i < slowCallers.length; i++) {
+            slowCallers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    repository.createInMemoryConnectionRepository("slow");
+                }
+            });
+            slowCallers[i].start();
+        }
+        Assert.assertTrue(loading.await(5, TimeUnit.SECONDS));
+        Assert.assertNotNull(repository.createInMemoryConnectionRepository("fast"));
+        Assert.assertNotNull(repository.createInMemoryConnectionRepository("other"));
+        release.countDown();
+        for (Thread slowCaller : slowCallers) {
+            slowCaller.join(5000);
+        }
+        Assert.assertEquals(3, repository.getLoads());
+        Assert.assertEquals(Collections.singleton("slow"),
+                repository.findUserIdsConnectedTo("paypal", Collections.singleton("paypal-0")));
+    }
+}
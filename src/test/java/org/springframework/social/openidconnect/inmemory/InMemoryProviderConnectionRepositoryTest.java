@@ -0,0 +1,53 @@
+package org.springframework.social.openidconnect.inmemory;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.springframework.social.connect.ConnectionData;
+import org.springframework.social.connect.DuplicateConnectionException;
+
+/**
+ * Tests the rank and provider user id indexes of {@link InMemoryProviderConnectionRepository}.
+ */
+public class InMemoryProviderConnectionRepositoryTest {
+
+    private static ConnectionData connectionData(String providerUserId, String accessToken) {
+        return new ConnectionData("paypal", providerUserId, null, null, null, accessToken, null, null, null);
+    }
+
+    /**
+     * Updating a connection to a provider user id connected at another rank should be rejected, leaving both
+     * connections in place.
+     */
+    @Test
+    public void testUpdateToConnectedProviderUserIdIsRejected() {
+        InMemoryProviderConnectionRepository repository = new InMemoryProviderConnectionRepository("user", "paypal");
+        repository.add(connectionData("first", "token1"));
+        repository.add(connectionData("second", "token2"));
+        try {
+            repository.updateByProviderUserId(connectionData("second", "token3"), "first");
+            Assert.fail("Update should be rejected as duplicate");
+        } catch (DuplicateConnectionException e) {
+            Assert.assertEquals("second", e.getConnectionKey().getProviderUserId());
+        }
+        Assert.assertEquals(2, repository.findAllOrderByRank().size());
+        Assert.assertEquals("token1", repository.findByProviderUserId("first").getAccessToken());
+        Assert.assertEquals("token2", repository.findByProviderUserId("second").getAccessToken());
+    }
+
+    /**
+     * Updating a connection to a free provider user id should move it in the index and keep its rank.
+     */
+    @Test
+    public void testUpdateToFreeProviderUserIdKeepsRank() {
+        InMemoryProviderConnectionRepository repository = new InMemoryProviderConnectionRepository("user", "paypal");
+        repository.add(connectionData("first", "token1"));
+        repository.add(connectionData("second", "token2"));
+        repository.updateByProviderUserId(connectionData("third", "token3"), "first");
+
+        Assert.assertFalse(repository.hasProviderUserId("first"));
+        Assert.assertEquals("token3", repository.findByRank(1).getAccessToken());
+        Assert.assertEquals("token3", repository.findByProviderUserId("third").getAccessToken());
+        Assert.assertEquals(2, repository.findAllOrderByRank().size());
+    }
+}
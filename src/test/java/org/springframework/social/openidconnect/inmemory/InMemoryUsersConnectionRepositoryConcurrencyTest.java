@@ -0,0 +1,132 @@
+package org.springframework.social.openidconnect.inmemory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.springframework.social.connect.ConnectionData;
+import org.springframework.social.connect.ConnectionKey;
+
+/**
+ * Stresses in-memory repositories with concurrent sign ins.
+ */
+public class InMemoryUsersConnectionRepositoryConcurrencyTest {
+
+    private static final int THREADS = 8;
+
+    private static final int USERS = 500;
+
+    private final InMemoryUsersConnectionRepository repository = new InMemoryUsersConnectionRepository(null);
+
+    private static ConnectionData connectionData(int user, int connection) {
+        return new ConnectionData("paypal", "paypal-" + user + "-" + connection, null, null, null, "token", null, null,
+                null);
+    }
+
+    /**
+     * Threads adding connections for overlapping users should neither lose connections nor see two repositories for
+     * one user.
+     *
+     * @throws Exception - If a thread fails
+     */
+    @Test
+    public void testConcurrentSignIns() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                results.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        start.await();
+                        for (int user = 0; user < USERS; user++) {
+                            InMemoryProviderConnectionRepository providerRepository = repository
+                                    .createInMemoryConnectionRepository("user" + user)
+                                    .getInMemoryProviderConnectionRepository("paypal");
+                            providerRepository.add(connectionData(user, thread));
+                            providerRepository.findAllOrderByRank();
+                            repository.findUserIdsConnectedTo("paypal",
+                                    Collections.singleton("paypal-" + user + "-" + thread));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Object> result : results) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(USERS, repository.connectionRepositoriesByUserId.size());
+        for (int user = 0; user < USERS; user++) {
+            List<ConnectionData> connections = repository.createInMemoryConnectionRepository("user" + user)
+                    .getInMemoryProviderConnectionRepository("paypal").findAllOrderByRank();
+            Assert.assertEquals(THREADS, connections.size());
+        }
+    }
+
+    /**
+     * Concurrent adds and removes on one user should keep ranks unique and lookups consistent.
+     *
+     * @throws Exception - If a thread fails
+     */
+    @Test
+    public void testConcurrentAddAndRemove() throws Exception {
+        final InMemoryProviderConnectionRepository providerRepository = repository
+                .createInMemoryConnectionRepository("user").getInMemoryProviderConnectionRepository("paypal");
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                results.add(executor.submit(new Callable<Object>() {
+                    public Object call() {
+                        for (int i = 0; i < 500; i++) {
+                            ConnectionData data = connectionData(thread, i);
+                            providerRepository.add(data);
+                            Assert.assertNotNull(providerRepository.findByProviderUserId(data.getProviderUserId()));
+                            if (i % 2 == 0) {
+                                providerRepository.deleteByProviderUserId(data.getProviderUserId());
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Object> result : results) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(THREADS * 250, providerRepository.findAllOrderByRank().size());
+    }
+
+    /**
+     * Reverse index should follow adds and removes of every user.
+     */
+    @Test
+    public void testReverseIndex() {
+        repository.addConnectionData("first", connectionData(1, 1), 1);
+        repository.addConnectionData("second", connectionData(1, 1), 1);
+        Set<String> providerUserIds = Collections.singleton("paypal-1-1");
+        Assert.assertEquals(2, repository.findUserIdsConnectedTo("paypal", providerUserIds).size());
+        repository.createInMemoryConnectionRepository("first").removeConnection(new ConnectionKey("paypal", "paypal-1-1"));
+        Assert.assertEquals(Collections.singleton("second"), repository.findUserIdsConnectedTo("paypal", providerUserIds));
+        repository.createInMemoryConnectionRepository("second").removeConnections("paypal");
+        Assert.assertTrue(repository.findUserIdsConnectedTo("paypal", providerUserIds).isEmpty());
+    }
+}
@@ -0,0 +1,86 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.springframework.security.crypto.codec.Base64;
+
+/**
+ * Tests {@link AesGcmTextEncryptor}.
+ */
+public class AesGcmTextEncryptorTest {
+
+    private final AesGcmTextEncryptor encryptor = new AesGcmTextEncryptor("password", "5c0744940b5c369b");
+
+    private static String idToken() {
+        StringBuilder idToken = new StringBuilder();
+        while (idToken.length() < 900) {
+            idToken.append("eyJhbGciOiJSUzI1NiJ9.");
+        }
+        return idToken.substring(0, 900);
+    }
+
+    /**
+     * Values should decrypt to the original text, fit the idToken column and differ for equal texts.
+     */
+    @Test
+    public void testRoundTrip() {
+        String idToken = idToken();
+        String encrypted = encryptor.encrypt(idToken);
+        Assert.assertEquals(idToken, encryptor.decrypt(encrypted));
+        Assert.assertEquals(1240, encrypted.length());
+        Assert.assertFalse(encrypted.equals(encryptor.encrypt(idToken)));
+        Assert.assertEquals("", encryptor.decrypt(encryptor.encrypt("")));
+        Assert.assertEquals(idToken, new AesGcmTextEncryptor("password", "5c0744940b5c369b").decrypt(encrypted));
+    }
+
+    /**
+     * Tampered values and values of another key should be rejected.
+     */
+    @Test
+    public void testTamperedValueIsRejected() {
+        String encrypted = encryptor.encrypt("accessToken");
+        char[] tampered = encrypted.toCharArray();
+        tampered[20] = tampered[20] == 'A' ? 'B' : 'A';
+        try {
+            encryptor.decrypt(new String(tampered));
+            Assert.fail("Tampered value should not decrypt");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            new AesGcmTextEncryptor("other", "5c0744940b5c369b").decrypt(encrypted);
+            Assert.fail("Value of another key should not decrypt");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    /**
+     * Values should use standard padded Base64, so values written by earlier versions still decrypt.
+     */
+    @Test
+    public void testStandardBase64() {
+        for (int i = 0; i < 6; i++) {
+            String text = idToken().substring(0, i);
+            String encrypted = encryptor.encrypt(text);
+            byte[] decoded = Base64.decode(encrypted.getBytes());
+            Assert.assertEquals(encrypted, new String(Base64.encode(decoded)));
+            Assert.assertEquals(text, encryptor.decrypt(new String(Base64.encode(decoded))));
+        }
+    }
+
+    /**
+     * Text which is not Base64 or too short to hold IV and tag should be rejected.
+     */
+    @Test
+    public void testMalformedValueIsRejected() {
+        String encrypted = encryptor.encrypt("accessToken");
+        for (String malformed : new String[] { "", "abc", encrypted.substring(0, 20), "*" + encrypted.substring(1),
+                encrypted.substring(0, encrypted.length() - 4) + "\u00e9AAA" }) {
+            try {
+                encryptor.decrypt(malformed);
+                Assert.fail("Malformed value should not decrypt: " + malformed);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+}
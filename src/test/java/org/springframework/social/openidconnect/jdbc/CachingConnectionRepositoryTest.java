@@ -0,0 +1,188 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import org.springframework.social.connect.Connection;
+import org.springframework.social.connect.ConnectionData;
+import org.springframework.social.connect.ConnectionFactoryLocator;
+import org.springframework.social.connect.ConnectionRepository;
+import org.springframework.social.connect.support.ConnectionFactoryRegistry;
+import org.springframework.social.openidconnect.PayPalConnectionFactoryBuilder;
+import org.springframework.social.openidconnect.api.PayPal;
+import org.springframework.social.openidconnect.support.OpenIdConnectionData;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Tests {@link CachingConnectionRepository} against an embedded H2 database.
+ */
+public class CachingConnectionRepositoryTest {
+
+    private EmbeddedDatabase database;
+
+    private ConnectionFactoryLocator connectionFactoryLocator;
+
+    private ConnectionDataCache cache;
+
+    private OpenIdJdbcUsersConnectionRepository usersConnectionRepository;
+
+    @Before
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true)
+                .addScript("org/springframework/social/openidconnect/jdbc/OpenIdConnectJdbcConnectionRepository.sql")
+                .build();
+        ConnectionFactoryRegistry registry = new ConnectionFactoryRegistry();
+        registry.addConnectionFactory(new PayPalConnectionFactoryBuilder().withClientId("clientId")
+                .withAppSecret("appSecret").withScope("openid profile email").build());
+        connectionFactoryLocator = registry;
+        cache = new ConnectionDataCache(10, 60000);
+        usersConnectionRepository = new OpenIdJdbcUsersConnectionRepository(database, connectionFactoryLocator,
+                Encryptors.noOpText());
+        usersConnectionRepository.setConnectionDataCache(cache);
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    private Connection<?> createConnection(String providerUserId, String accessToken, Long expireTime) {
+        return connectionFactoryLocator.getConnectionFactory("paypal").createConnection(
+                new OpenIdConnectionData("paypal", providerUserId, "User", null, null, accessToken, null, "refresh",
+                        expireTime, "idToken"));
+    }
+
+    /**
+     * Repeated reads should query once, writes should be visible right away.
+     */
+    @Test
+    public void testReadsAreCachedAndWritesInvalidate() {
+        ConnectionRepository repository = usersConnectionRepository.createConnectionRepository("user");
+        Assert.assertTrue(repository instanceof CachingConnectionRepository);
+        repository.addConnection(createConnection("first", "token1", null));
+
+        Assert.assertEquals("token1", repository.getPrimaryConnection(PayPal.class).createData().getAccessToken());
+        Assert.assertEquals("token1", repository.findPrimaryConnection(PayPal.class).createData().getAccessToken());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.getHits());
+
+        repository.updateConnection(createConnection("first", "token2", null));
+        Assert.assertEquals("token2", usersConnectionRepository.createConnectionRepository("user")
+                .getPrimaryConnection(PayPal.class).createData().getAccessToken());
+        Assert.assertEquals(2, cache.getInvalidations());
+    }
+
+    /**
+     * Removing the primary connection should leave no primary connection, like the JDBC repository.
+     */
+    @Test
+    public void testPrimaryConnectionFollowsRank() {
+        ConnectionRepository repository = usersConnectionRepository.createConnectionRepository("user");
+        Connection<?> first = createConnection("first", "token1", null);
+        repository.addConnection(first);
+        repository.addConnection(createConnection("second", "token2", null));
+        Assert.assertEquals(2, repository.findConnections("paypal").size());
+
+        repository.removeConnection(first.getKey());
+        Assert.assertNull(repository.findPrimaryConnection(PayPal.class));
+        Assert.assertEquals(1, repository.findAllConnections().get("paypal").size());
+    }
+
+    /**
+     * An expired access token should not keep the user out of the cache, and invalidating one user should not discard
+     * loads of others.
+     */
+    @Test
+    public void testExpiredTokensDoNotPreventCaching() {
+        ConnectionRepository repository = usersConnectionRepository.createConnectionRepository("user");
+        long now = System.currentTimeMillis();
+        repository.addConnection(createConnection("first", "token1", Long.valueOf(now - 1000)));
+        repository.addConnection(createConnection("second", "token2", Long.valueOf(now + 3600 * 1000)));
+        repository.findPrimaryConnection(PayPal.class);
+        repository.findPrimaryConnection(PayPal.class);
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.size());
+
+        cache.startLoad("other");
+        long version = cache.startLoad("user2");
+        cache.invalidate("other");
+        cache.put("user2", new UserConnections(Collections.<ConnectionData> emptyList(), new int[0]), version);
+        Assert.assertNotNull("Invalidating another user should not discard the load", cache.get("user2"));
+    }
+
+    /**
+     * A load racing with an invalidation of the same user should not be cached.
+     */
+    @Test
+    public void testLoadRacingWithInvalidationIsNotCached() {
+        long version = cache.startLoad("user");
+        cache.invalidate("user");
+        cache.put("user", new UserConnections(Collections.<ConnectionData> emptyList(), new int[0]), version);
+        Assert.assertNull(cache.get("user"));
+    }
+
+    /**
+     * A reader caching the committed rows while a transaction updates them should not keep them after the commit,
+     * and other nodes should only be told once the update is visible.
+     *
+     * @throws Exception - If the reader fails
+     */
+    @Test
+    public void testReaderDuringTransactionDoesNotKeepStaleRows() throws Exception {
+        final AtomicInteger published = new AtomicInteger();
+        InProcessConnectionInvalidationBus bus = new InProcessConnectionInvalidationBus();
+        bus.subscribe(new ConnectionInvalidationListener() {
+            @Override
+            public void connectionsChanged(String userId) {
+                published.incrementAndGet();
+            }
+        });
+        usersConnectionRepository.setInvalidationBus(bus);
+        final ConnectionRepository repository = usersConnectionRepository.createConnectionRepository("user");
+        repository.addConnection(createConnection("first", "token1", null));
+        Assert.assertEquals(1, published.get());
+
+        final AtomicReference<String> readDuringTransaction = new AtomicReference<String>();
+        new TransactionTemplate(new DataSourceTransactionManager(database)).execute(
+                new TransactionCallbackWithoutResult() {
+                    @Override
+                    protected void doInTransactionWithoutResult(TransactionStatus status) {
+                        repository.updateConnection(createConnection("first", "token2", null));
+                        Assert.assertEquals("Writes should be visible within the transaction", "token2",
+                                repository.getPrimaryConnection(PayPal.class).createData().getAccessToken());
+                        Thread reader = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                readDuringTransaction.set(usersConnectionRepository.createConnectionRepository("user")
+                                        .getPrimaryConnection(PayPal.class).createData().getAccessToken());
+                            }
+                        });
+                        reader.start();
+                        try {
+                            reader.join();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        Assert.assertEquals("Other nodes should not be told before the commit", 1, published.get());
+                    }
+                });
+
+        Assert.assertEquals("token1", readDuringTransaction.get());
+        Assert.assertEquals("token2", usersConnectionRepository.createConnectionRepository("user")
+                .getPrimaryConnection(PayPal.class).createData().getAccessToken());
+        Assert.assertEquals(2, published.get());
+    }
+}
@@ -0,0 +1,143 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.util.Collections;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import org.springframework.social.connect.Connection;
+import org.springframework.social.connect.ConnectionFactoryLocator;
+import org.springframework.social.connect.support.ConnectionFactoryRegistry;
+import org.springframework.social.openidconnect.PayPalConnectionFactoryBuilder;
+import org.springframework.social.openidconnect.api.PayPal;
+import org.springframework.social.openidconnect.support.OpenIdConnectionData;
+
+/**
+ * Simulates two nodes, each with its own connection data cache, sharing one embedded H2 database.
+ */
+public class ConnectionInvalidationBusTest {
+
+    private EmbeddedDatabase database;
+
+    private ConnectionFactoryLocator connectionFactoryLocator;
+
+    @Before
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true)
+                .addScript("org/springframework/social/openidconnect/jdbc/OpenIdConnectJdbcConnectionRepository.sql")
+                .build();
+        ConnectionFactoryRegistry registry = new ConnectionFactoryRegistry();
+        registry.addConnectionFactory(new PayPalConnectionFactoryBuilder().withClientId("clientId")
+                .withAppSecret("appSecret").withScope("openid profile email").build());
+        connectionFactoryLocator = registry;
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    private OpenIdJdbcUsersConnectionRepository node(ConnectionInvalidationBus bus) {
+        OpenIdJdbcUsersConnectionRepository repository = new OpenIdJdbcUsersConnectionRepository(database,
+                connectionFactoryLocator, Encryptors.noOpText());
+        repository.setConnectionDataCache(new ConnectionDataCache(10, 60000));
+        repository.setInvalidationBus(bus);
+        return repository;
+    }
+
+    private Connection<?> createConnection(String accessToken) {
+        return connectionFactoryLocator.getConnectionFactory("paypal").createConnection(
+                new OpenIdConnectionData("paypal", "providerUser", "User", null, null, accessToken, null, "refresh",
+                        null, "idToken"));
+    }
+
+    private static String primaryAccessToken(OpenIdJdbcUsersConnectionRepository node) {
+        return node.createConnectionRepository("user").getPrimaryConnection(PayPal.class).createData().getAccessToken();
+    }
+
+    /**
+     * A write on one node should invalidate the other node at once.
+     */
+    @Test
+    public void testInProcessBus() {
+        InProcessConnectionInvalidationBus bus = new InProcessConnectionInvalidationBus();
+        OpenIdJdbcUsersConnectionRepository first = node(bus);
+        OpenIdJdbcUsersConnectionRepository second = node(bus);
+        first.createConnectionRepository("user").addConnection(createConnection("token1"));
+        Assert.assertEquals("token1", primaryAccessToken(first));
+
+        second.createConnectionRepository("user").updateConnection(createConnection("token2"));
+        Assert.assertEquals("token2", primaryAccessToken(first));
+    }
+
+    /**
+     * A write on one node should reach the other node with its next poll.
+     */
+    @Test
+    public void testJdbcPollingBus() {
+        JdbcPollingConnectionInvalidationBus firstBus = new JdbcPollingConnectionInvalidationBus(database, 1000);
+        JdbcPollingConnectionInvalidationBus secondBus = new JdbcPollingConnectionInvalidationBus(database, 1000);
+        OpenIdJdbcUsersConnectionRepository first = node(firstBus);
+        OpenIdJdbcUsersConnectionRepository second = node(secondBus);
+        first.createConnectionRepository("user").addConnection(createConnection("token1"));
+        Assert.assertEquals("token1", primaryAccessToken(first));
+
+        second.createConnectionRepository("user").updateConnection(createConnection("token2"));
+        second.createConnectionRepository("user").updateConnection(createConnection("token3"));
+        Assert.assertEquals("token1", primaryAccessToken(first));
+
+        Assert.assertEquals(1, firstBus.poll());
+        Assert.assertEquals("token3", primaryAccessToken(first));
+    }
+
+    /**
+     * Replacing the bus should stop notifications of the previous one, and setting a bus twice should subscribe once.
+     */
+    @Test
+    public void testReplacingBusUnsubscribes() {
+        InProcessConnectionInvalidationBus oldBus = new InProcessConnectionInvalidationBus();
+        InProcessConnectionInvalidationBus newBus = new InProcessConnectionInvalidationBus();
+        OpenIdJdbcUsersConnectionRepository repository = node(oldBus);
+        repository.setInvalidationBus(newBus);
+        repository.setInvalidationBus(newBus);
+        repository.createConnectionRepository("user").addConnection(createConnection("token1"));
+        Assert.assertEquals("token1", primaryAccessToken(repository));
+        ConnectionDataCache cache = repository.getConnectionDataCache();
+        long invalidations = cache.getInvalidations();
+
+        oldBus.publish("user");
+        Assert.assertEquals(invalidations, cache.getInvalidations());
+        newBus.publish("user");
+        Assert.assertEquals(invalidations + 1, cache.getInvalidations());
+    }
+
+    /**
+     * Writes of a node without cache and of the bulk loader should reach caching nodes.
+     */
+    @Test
+    public void testWritersWithoutCachePublish() {
+        InProcessConnectionInvalidationBus bus = new InProcessConnectionInvalidationBus();
+        OpenIdJdbcUsersConnectionRepository caching = node(bus);
+        OpenIdJdbcUsersConnectionRepository uncached = new OpenIdJdbcUsersConnectionRepository(database,
+                connectionFactoryLocator, Encryptors.noOpText());
+        uncached.setInvalidationBus(bus);
+        uncached.createConnectionRepository("user").addConnection(createConnection("token1"));
+        Assert.assertEquals("token1", primaryAccessToken(caching));
+        uncached.createConnectionRepository("user").updateConnection(createConnection("token2"));
+        Assert.assertEquals("token2", primaryAccessToken(caching));
+
+        Assert.assertNull(caching.createConnectionRepository("loaded").findPrimaryConnection(PayPal.class));
+        UserConnectionBulkLoader loader = new UserConnectionBulkLoader(database, Encryptors.noOpText());
+        loader.setInvalidationBus(bus);
+        loader.load(Collections.singletonList(new UserConnectionRecord("loaded", 1, (OpenIdConnectionData) createConnection(
+                "token3").createData())).iterator());
+        Assert.assertEquals("token3", caching.createConnectionRepository("loaded").getPrimaryConnection(PayPal.class)
+                .createData().getAccessToken());
+    }
+}
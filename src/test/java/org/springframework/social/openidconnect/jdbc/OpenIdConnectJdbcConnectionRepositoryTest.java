@@ -0,0 +1,324 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+import org.springframework.social.connect.Connection;
+import org.springframework.social.connect.ConnectionData;
+import org.springframework.social.connect.ConnectionFactoryLocator;
+import org.springframework.social.connect.DuplicateConnectionException;
+import org.springframework.social.connect.support.ConnectionFactoryRegistry;
+import org.springframework.social.openidconnect.PayPalConnectionFactoryBuilder;
+import org.springframework.social.openidconnect.api.PayPal;
+import org.springframework.social.openidconnect.support.OpenIdConnection;
+import org.springframework.social.openidconnect.support.OpenIdConnectionData;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+/**
+ * Tests {@link OpenIdConnectJdbcConnectionRepository} against an embedded H2 database.
+ */
+public class OpenIdConnectJdbcConnectionRepositoryTest {
+
+    private static final int THREADS = 8;
+
+    private static final int CONNECTIONS = 25;
+
+    private EmbeddedDatabase database;
+
+    private ConnectionFactoryLocator connectionFactoryLocator;
+
+    private final AtomicInteger statements = new AtomicInteger();
+
+    /**
+     * Makes the next insert fail with a rank conflict after it was executed.
+     */
+    private final AtomicBoolean failNextInsert = new AtomicBoolean();
+
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true)
+                .addScript("org/springframework/social/openidconnect/jdbc/OpenIdConnectJdbcConnectionRepository.sql")
+                .build();
+        ConnectionFactoryRegistry registry = new ConnectionFactoryRegistry();
+        registry.addConnectionFactory(new PayPalConnectionFactoryBuilder().withClientId("clientId")
+                .withAppSecret("appSecret").withScope("openid profile email").build());
+        connectionFactoryLocator = registry;
+        jdbcTemplate = new JdbcTemplate(database) {
+            @Override
+            public <T> T execute(PreparedStatementCreator psc, PreparedStatementCallback<T> action)
+                    throws DataAccessException {
+                statements.incrementAndGet();
+                return super.execute(psc, action);
+            }
+
+            @Override
+            public int update(String sql, Object... args) throws DataAccessException {
+                int count = super.update(sql, args);
+                if (sql.startsWith("insert") && failNextInsert.compareAndSet(true, false)) {
+                    throw new DuplicateKeyException("Rank taken by a concurrent add");
+                }
+                return count;
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    private OpenIdConnectJdbcConnectionRepository repository() {
+        return new OpenIdConnectJdbcConnectionRepository("user", jdbcTemplate, connectionFactoryLocator,
+                Encryptors.noOpText(), "");
+    }
+
+    private Connection<?> createConnection(String providerUserId) {
+        return connectionFactoryLocator.getConnectionFactory("paypal").createConnection(
+                new OpenIdConnectionData("paypal", providerUserId, "User", null, null, "token", null, "refresh", null,
+                        "idToken"));
+    }
+
+    private List<Integer> ranks() {
+        return jdbcTemplate.queryForList("select rank from UserConnection where userId = 'user' order by rank",
+                Integer.class);
+    }
+
+    /**
+     * Adding should take one statement and allocate consecutive ranks.
+     */
+    @Test
+    public void testAddConnectionIsOneStatement() {
+        OpenIdConnectJdbcConnectionRepository repository = repository();
+        repository.addConnection(createConnection("first"));
+        repository.addConnection(createConnection("second"));
+        Assert.assertEquals(2, statements.get());
+        Assert.assertEquals("[1, 2]", ranks().toString());
+    }
+
+    /**
+     * A rank conflict inside a surrounding transaction should roll back the failed insert only, and the retry should
+     * commit with the transaction.
+     */
+    @Test
+    public void testRankConflictRetriesWithinTransaction() {
+        new TransactionTemplate(new DataSourceTransactionManager(database)).execute(
+                new TransactionCallbackWithoutResult() {
+                    @Override
+                    protected void doInTransactionWithoutResult(TransactionStatus status) {
+                        new OpenIdConnectJdbcConnectionRepository("other", jdbcTemplate, connectionFactoryLocator,
+                                Encryptors.noOpText(), "").addConnection(createConnection("other"));
+                        failNextInsert.set(true);
+                        repository().addConnection(createConnection("first"));
+                    }
+                });
+        Assert.assertFalse(failNextInsert.get());
+        Assert.assertEquals("[1]", ranks().toString());
+        Assert.assertEquals(2, jdbcTemplate.queryForObject("select count(*) from UserConnection", Integer.class)
+                .intValue());
+    }
+
+    /**
+     * Connections added within a transaction, including a retried insert, should be rolled back with it, with and
+     * without transaction manager set.
+     */
+    @Test
+    public void testAddConnectionRollsBackWithTransaction() {
+        final DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(database);
+        for (final boolean withTransactionManager : new boolean[] { false, true }) {
+            new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    OpenIdConnectJdbcConnectionRepository repository = repository();
+                    if (withTransactionManager) {
+                        repository.setTransactionManager(transactionManager);
+                    }
+                    repository.addConnection(createConnection("first"));
+                    failNextInsert.set(true);
+                    repository.addConnection(createConnection("second"));
+                    Assert.assertEquals("[1, 2]", ranks().toString());
+                    status.setRollbackOnly();
+                }
+            });
+            Assert.assertTrue(ranks().isEmpty());
+        }
+    }
+
+    /**
+     * Under snapshot isolation a retry reads the rank it collided on again, and should move past it.
+     */
+    @Test
+    public void testRetryMovesPastTriedRank() {
+        final AtomicInteger conflicts = new AtomicInteger(2);
+        JdbcTemplate staleTemplate = new JdbcTemplate(database) {
+            @Override
+            public int update(String sql, Object... args) throws DataAccessException {
+                if (sql.startsWith("insert") && conflicts.getAndDecrement() > 0) {
+                    throw new DuplicateKeyException("Rank taken by a concurrent add not visible to this transaction");
+                }
+                return super.update(sql, args);
+            }
+        };
+        new OpenIdConnectJdbcConnectionRepository("user", staleTemplate, connectionFactoryLocator,
+                Encryptors.noOpText(), "").addConnection(createConnection("first"));
+        Assert.assertEquals("[2]", ranks().toString());
+    }
+
+    /**
+     * Adding a connection twice should still be reported as duplicate.
+     */
+    @Test(expected = DuplicateConnectionException.class)
+    public void testDuplicateConnection() {
+        OpenIdConnectJdbcConnectionRepository repository = repository();
+        repository.addConnection(createConnection("first"));
+        repository.addConnection(createConnection("first"));
+    }
+
+    /**
+     * Lookups should place each connection at the position of its provider user id, both when ids are looked up with
+     * an in list and when all connections of the user are read, which long lookups do with one query however many
+     * connections the user has.
+     */
+    @Test
+    public void testFindConnectionsToUsers() {
+        OpenIdConnectJdbcConnectionRepository repository = repository();
+        MultiValueMap<String, String> providerUsers = new LinkedMultiValueMap<String, String>();
+        int ids = OpenIdConnectJdbcConnectionRepository.MAX_IN_LIST_SIZE + 20;
+        for (int i = 0; i < ids; i++) {
+            providerUsers.add("paypal", "user-" + i);
+            if (i % 50 == 7) {
+                repository.addConnection(createConnection("user-" + i));
+            }
+        }
+        assertFound(repository.findConnectionsToUsers(providerUsers).get("paypal"), ids);
+
+        List<UserConnectionRecord> others = new ArrayList<UserConnectionRecord>();
+        for (int i = 0; i < ids; i++) {
+            others.add(new UserConnectionRecord("user", 100 + i, new OpenIdConnectionData("paypal", "other-" + i,
+                    null, null, null, "token", null, null, null, "idToken")));
+        }
+        new UserConnectionBulkLoader(database, Encryptors.noOpText()).load(others.iterator());
+        statements.set(0);
+        assertFound(repository.findConnectionsToUsers(providerUsers).get("paypal"), ids);
+        Assert.assertEquals(1, statements.get());
+
+        MultiValueMap<String, String> fewProviderUsers = new LinkedMultiValueMap<String, String>();
+        fewProviderUsers.put("paypal", providerUsers.get("paypal").subList(0, 20));
+        statements.set(0);
+        assertFound(repository.findConnectionsToUsers(fewProviderUsers).get("paypal"), 20);
+        Assert.assertEquals(1, statements.get());
+
+        Assert.assertEquals(Arrays.asList("a", "b", "b", "b", "b", "b", "b", "b", "b", "b"),
+                OpenIdConnectJdbcConnectionRepository.padInList(Arrays.asList("a", "b")));
+    }
+
+    private static void assertFound(List<Connection<?>> connections, int ids) {
+        Assert.assertEquals(ids, connections.size());
+        for (int i = 0; i < ids; i++) {
+            if (i % 50 == 7) {
+                Assert.assertEquals("user-" + i, connections.get(i).getKey().getProviderUserId());
+            } else {
+                Assert.assertNull(connections.get(i));
+            }
+        }
+    }
+
+    /**
+     * Token columns should only be decrypted when read, listings of connection data should not decrypt at all.
+     */
+    @Test
+    public void testTokensAreDecryptedOnFirstAccess() {
+        final AtomicInteger decryptions = new AtomicInteger();
+        TextEncryptor countingEncryptor = new TextEncryptor() {
+            public String encrypt(String text) {
+                return text;
+            }
+
+            public String decrypt(String encryptedText) {
+                decryptions.incrementAndGet();
+                return encryptedText;
+            }
+        };
+        OpenIdConnectJdbcConnectionRepository repository = new OpenIdConnectJdbcConnectionRepository("user",
+                jdbcTemplate, connectionFactoryLocator, countingEncryptor, "");
+        repository.addConnection(createConnection("first"));
+
+        ConnectionData data = repository.findAllConnectionData().getFirst("paypal");
+        Assert.assertEquals("User", data.getDisplayName());
+        Assert.assertEquals(0, decryptions.get());
+
+        OpenIdConnection<?> connection = (OpenIdConnection<?>) repository.findPrimaryConnection(PayPal.class);
+        Assert.assertEquals(2, decryptions.get());
+        Assert.assertEquals("idToken", connection.getIdToken());
+        Assert.assertEquals("idToken", connection.getIdToken());
+        Assert.assertEquals(3, decryptions.get());
+    }
+
+    /**
+     * Concurrent adds for one user should all succeed with distinct, consecutive ranks.
+     *
+     * @throws Exception - If a thread fails
+     */
+    @Test
+    public void testConcurrentAdds() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                results.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        OpenIdConnectJdbcConnectionRepository repository = repository();
+                        start.await();
+                        for (int i = 0; i < CONNECTIONS; i++) {
+                            repository.addConnection(createConnection("user-" + thread + "-" + i));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Object> result : results) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        List<Integer> ranks = ranks();
+        Assert.assertEquals(THREADS * CONNECTIONS, ranks.size());
+        for (int i = 0; i < ranks.size(); i++) {
+            Assert.assertEquals(i + 1, ranks.get(i).intValue());
+        }
+    }
+}
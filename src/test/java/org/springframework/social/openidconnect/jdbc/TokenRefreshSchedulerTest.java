@@ -0,0 +1,153 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import org.springframework.social.connect.ConnectionData;
+import org.springframework.social.connect.support.ConnectionFactoryRegistry;
+import org.springframework.social.openidconnect.HttpClientRegistry;
+import org.springframework.social.openidconnect.PayPalConnectionFactory;
+import org.springframework.social.openidconnect.PayPalConnectionFactoryBuilder;
+import org.springframework.social.openidconnect.TokenRefreshScheduler;
+import org.springframework.social.openidconnect.inmemory.InMemoryUsersConnectionRepository;
+import org.springframework.social.openidconnect.stub.PayPalStubServer;
+import org.springframework.social.openidconnect.support.OpenIdConnectionData;
+
+/**
+ * Tests {@link TokenRefreshScheduler} against the stub token service, with connections in an embedded H2 database and
+ * in memory.
+ */
+public class TokenRefreshSchedulerTest {
+
+    private PayPalStubServer server;
+
+    private PayPalConnectionFactory connectionFactory;
+
+    private ConnectionFactoryRegistry registry;
+
+    private EmbeddedDatabase database;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new PayPalStubServer(2).start();
+        connectionFactory = new PayPalConnectionFactoryBuilder().withClientId("clientId").withAppSecret("appSecret")
+                .withScope("openid profile email").withAuthUrl(server.getAuthorizeUrl())
+                .withTokenUrl(server.getTokenUrl()).withUserInfoUrl(server.getUserInfoUrl())
+                .useStirctHostNameVerifier(false).build();
+        registry = new ConnectionFactoryRegistry();
+        registry.addConnectionFactory(connectionFactory);
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true)
+                .addScript("org/springframework/social/openidconnect/jdbc/OpenIdConnectJdbcConnectionRepository.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+        server.stop();
+        HttpClientRegistry.closeAll();
+    }
+
+    /**
+     * Only connections expiring soon with a refresh token should be refreshed, paced and across pages.
+     */
+    @Test
+    public void testRefreshJdbcConnections() {
+        long now = System.currentTimeMillis();
+        List<UserConnectionRecord> records = new ArrayList<UserConnectionRecord>();
+        for (int i = 0; i < 7; i++) {
+            records.add(record("soon" + i, "refresh" + i, now + 1000 * i));
+        }
+        records.add(record("later", "refresh", now + 3600 * 1000));
+        records.add(record("noRefreshToken", null, now + 1000));
+        records.add(record("noExpiry", "refresh", null));
+        new UserConnectionBulkLoader(database, Encryptors.noOpText()).load(records.iterator());
+
+        OpenIdJdbcUsersConnectionRepository repository = new OpenIdJdbcUsersConnectionRepository(database, registry,
+                Encryptors.noOpText());
+        TokenRefreshScheduler scheduler = new TokenRefreshScheduler(repository.createExpiringConnectionSource(),
+                repository, connectionFactory);
+        scheduler.setBatchSize(3);
+        scheduler.setMaxRefreshesPerSecond(20);
+        long start = System.currentTimeMillis();
+        Assert.assertEquals(7, scheduler.refreshExpiring());
+        Assert.assertTrue(System.currentTimeMillis() - start >= 300);
+
+        Assert.assertEquals(7, jdbcTemplate.queryForObject(
+                "select count(*) from UserConnection where accessToken like 'access-refreshed-%' and idToken like 'id-access-refreshed-%' and refreshToken like 'refresh-access-refreshed-%' and expireTime > ?",
+                Integer.class, now + 3000 * 1000).intValue());
+        Assert.assertEquals("token", jdbcTemplate.queryForObject(
+                "select accessToken from UserConnection where userId = 'later'", String.class));
+        Assert.assertEquals(0, scheduler.refreshExpiring());
+        Assert.assertEquals(7, scheduler.getRefreshed());
+        Assert.assertEquals(0, scheduler.getFailures());
+    }
+
+    /**
+     * In memory connections should be found and updated as well.
+     */
+    @Test
+    public void testRefreshInMemoryConnections() {
+        InMemoryUsersConnectionRepository repository = new InMemoryUsersConnectionRepository(registry);
+        repository.addConnectionData("user", record("user", "refresh", System.currentTimeMillis()).getConnectionData(), 1);
+        TokenRefreshScheduler scheduler = new TokenRefreshScheduler(repository, repository, connectionFactory);
+        Assert.assertEquals(1, scheduler.refreshExpiring());
+        ConnectionData data = repository.createConnectionRepository("user").findAllConnections().getFirst("paypal")
+                .createData();
+        Assert.assertTrue(data.getAccessToken().startsWith("access-refreshed-"));
+        Assert.assertTrue(data.getExpireTime() > System.currentTimeMillis() + 3000 * 1000);
+    }
+
+    /**
+     * More connections sharing one expire time than fit a page should all be tried, also when their refresh fails and
+     * they keep that expire time.
+     */
+    @Test
+    public void testPagesThroughEqualExpireTimes() {
+        long expireTime = System.currentTimeMillis() + 1000;
+        List<UserConnectionRecord> records = new ArrayList<UserConnectionRecord>();
+        InMemoryUsersConnectionRepository inMemoryRepository = new InMemoryUsersConnectionRepository(registry);
+        for (int i = 0; i < 5; i++) {
+            UserConnectionRecord record = record("user" + i, "refresh" + i, expireTime);
+            records.add(record);
+            inMemoryRepository.addConnectionData(record.getUserId(), record.getConnectionData(), 1);
+        }
+        new UserConnectionBulkLoader(database, Encryptors.noOpText()).load(records.iterator());
+        OpenIdJdbcUsersConnectionRepository jdbcRepository = new OpenIdJdbcUsersConnectionRepository(database, registry,
+                Encryptors.noOpText());
+        server.withErrorRate(1);
+
+        TokenRefreshScheduler jdbcScheduler = new TokenRefreshScheduler(jdbcRepository.createExpiringConnectionSource(),
+                jdbcRepository, connectionFactory);
+        jdbcScheduler.setBatchSize(2);
+        jdbcScheduler.setMaxRefreshesPerSecond(0);
+        Assert.assertEquals(0, jdbcScheduler.refreshExpiring());
+        Assert.assertEquals(5, jdbcScheduler.getFailures());
+
+        TokenRefreshScheduler inMemoryScheduler = new TokenRefreshScheduler(inMemoryRepository, inMemoryRepository,
+                connectionFactory);
+        inMemoryScheduler.setBatchSize(2);
+        inMemoryScheduler.setMaxRefreshesPerSecond(0);
+        Assert.assertEquals(0, inMemoryScheduler.refreshExpiring());
+        Assert.assertEquals(5, inMemoryScheduler.getFailures());
+    }
+
+    private static UserConnectionRecord record(String userId, String refreshToken, Long expireTime) {
+        return new UserConnectionRecord(userId, 1, new OpenIdConnectionData("paypal", userId + "-paypal", null, null,
+                null, "token", null, refreshToken, expireTime, "idToken"));
+    }
+}
@@ -0,0 +1,99 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+import org.springframework.social.openidconnect.support.OpenIdConnectionData;
+
+/**
+ * Tests {@link UserConnectionBulkLoader} against an embedded H2 database.
+ */
+public class UserConnectionBulkLoaderTest {
+
+    /**
+     * Reverses text, so encrypted columns differ from the plain tokens.
+     */
+    private static final TextEncryptor REVERSING_ENCRYPTOR = new TextEncryptor() {
+        public String encrypt(String text) {
+            return new StringBuilder(text).reverse().toString();
+        }
+
+        public String decrypt(String encryptedText) {
+            return encrypt(encryptedText);
+        }
+    };
+
+    private EmbeddedDatabase database;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private UserConnectionBulkLoader loader;
+
+    @Before
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true)
+                .addScript("org/springframework/social/openidconnect/jdbc/OpenIdConnectJdbcConnectionRepository.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        loader = new UserConnectionBulkLoader(database, REVERSING_ENCRYPTOR);
+        loader.setBatchSize(100);
+        loader.setCommitInterval(500);
+        loader.setEncryptionThreads(4);
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    private static List<UserConnectionRecord> records(int count) {
+        List<UserConnectionRecord> records = new ArrayList<UserConnectionRecord>();
+        for (int i = 0; i < count; i++) {
+            records.add(new UserConnectionRecord("user" + i, 1, new OpenIdConnectionData("paypal", "paypal-" + i,
+                    "User " + i, null, null, "access" + i, null, "refresh" + i, Long.valueOf(i), "id" + i)));
+        }
+        return records;
+    }
+
+    private int rows() {
+        return jdbcTemplate.queryForObject("select count(*) from UserConnection", Integer.class);
+    }
+
+    /**
+     * All records should be inserted with encrypted tokens.
+     */
+    @Test
+    public void testLoad() {
+        BatchJobReport report = loader.load(records(1234).iterator());
+        Assert.assertEquals(1234, report.getRows());
+        Assert.assertEquals(1234, rows());
+        Assert.assertEquals("3321ssecca", jdbcTemplate.queryForObject(
+                "select accessToken from UserConnection where userId = 'user1233'", String.class));
+    }
+
+    /**
+     * A failing batch should roll back rows since the last commit only.
+     */
+    @Test
+    public void testFailedBatchKeepsCommittedRows() {
+        List<UserConnectionRecord> records = records(700);
+        records.add(records.get(650));
+        try {
+            loader.load(records.iterator());
+            Assert.fail("Duplicate record should fail the load");
+        } catch (DuplicateKeyException expected) {
+            Assert.assertEquals(500, rows());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+import org.springframework.social.openidconnect.support.OpenIdConnectionData;
+
+/**
+ * Tests {@link UserConnectionExporter} against an embedded H2 database.
+ */
+public class UserConnectionExporterTest {
+
+    /**
+     * Reverses text, so encrypted columns differ from the plain tokens.
+     */
+    private static final TextEncryptor REVERSING_ENCRYPTOR = new TextEncryptor() {
+        public String encrypt(String text) {
+            return new StringBuilder(text).reverse().toString();
+        }
+
+        public String decrypt(String encryptedText) {
+            return encrypt(encryptedText);
+        }
+    };
+
+    private static final int ROWS = 3;
+
+    private EmbeddedDatabase database;
+
+    private UserConnectionExporter exporter;
+
+    @Before
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true)
+                .addScript("org/springframework/social/openidconnect/jdbc/OpenIdConnectJdbcConnectionRepository.sql")
+                .build();
+        List<UserConnectionRecord> records = new ArrayList<UserConnectionRecord>();
+        for (int i = 0; i < ROWS; i++) {
+            records.add(new UserConnectionRecord("user" + i, 1, new OpenIdConnectionData("paypal", "paypal-" + i,
+                    "User " + i, null, null, "access" + i, null, "refresh" + i, i == 0 ? null : Long.valueOf(i),
+                    "id" + i)));
+        }
+        new UserConnectionBulkLoader(database, REVERSING_ENCRYPTOR).load(records.iterator());
+        exporter = new UserConnectionExporter(database, REVERSING_ENCRYPTOR);
+        exporter.setFetchSize(2);
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    /**
+     * Every row should become one JSON line with decrypted tokens, or encrypted ones if decryption is off.
+     *
+     * @throws Exception - If exporting fails
+     */
+    @Test
+    public void testJsonLines() throws Exception {
+        StringWriter writer = new StringWriter();
+        Assert.assertEquals(ROWS, exporter.exportJsonLines(writer));
+        String[] lines = writer.toString().split("\n");
+        Assert.assertEquals(ROWS, lines.length);
+        Assert.assertTrue(writer.toString().contains("\"accessToken\":\"access1\""));
+        Assert.assertTrue(writer.toString().contains("\"expireTime\":2"));
+
+        exporter.setDecrypt(false);
+        writer = new StringWriter();
+        exporter.exportJsonLines(writer);
+        Assert.assertTrue(writer.toString().contains("\"accessToken\":\"1ssecca\""));
+    }
+
+    /**
+     * Binary exports should read back into equal records.
+     *
+     * @throws Exception - If exporting fails
+     */
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(ROWS, exporter.exportBinary(out));
+        Iterator<UserConnectionRecord> records = UserConnectionExporter.readBinary(new ByteArrayInputStream(out
+                .toByteArray()));
+        int read = 0;
+        while (records.hasNext()) {
+            UserConnectionRecord record = records.next();
+            int n = Integer.parseInt(record.getUserId().substring("user".length()));
+            Assert.assertEquals(1, record.getRank());
+            Assert.assertEquals("paypal-" + n, record.getConnectionData().getProviderUserId());
+            Assert.assertEquals("id" + n, record.getConnectionData().getIdToken());
+            Assert.assertNull(record.getConnectionData().getSecret());
+            Assert.assertEquals(n == 0 ? null : Long.valueOf(n), record.getConnectionData().getExpireTime());
+            read++;
+        }
+        Assert.assertEquals(ROWS, read);
+    }
+}
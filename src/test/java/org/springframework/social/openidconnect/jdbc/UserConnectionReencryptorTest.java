@@ -0,0 +1,108 @@
+package org.springframework.social.openidconnect.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+import org.springframework.social.openidconnect.support.OpenIdConnectionData;
+
+/**
+ * Tests {@link UserConnectionReencryptor} and {@link RotatingTextEncryptor} against an embedded H2 database.
+ */
+public class UserConnectionReencryptorTest {
+
+    private static final int ROWS = 25;
+
+    private final TextEncryptor oldKey = Encryptors.text("old", "5c0744940b5c369b");
+
+    private final RotatingTextEncryptor rotating = new RotatingTextEncryptor("2",
+            new AesGcmTextEncryptor("new", "5c0744940b5c369b")).withPreviousKey(null, oldKey);
+
+    private EmbeddedDatabase database;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true)
+                .addScript("org/springframework/social/openidconnect/jdbc/OpenIdConnectJdbcConnectionRepository.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        List<UserConnectionRecord> records = new ArrayList<UserConnectionRecord>();
+        for (int i = 0; i < ROWS; i++) {
+            records.add(new UserConnectionRecord("user" + (i % 10), 1 + i / 10, new OpenIdConnectionData("paypal",
+                    "paypal-" + i, null, null, null, "access" + i, null, i % 2 == 0 ? "refresh" + i : null, null,
+                    "id" + i)));
+        }
+        new UserConnectionBulkLoader(database, oldKey).load(records.iterator());
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    /**
+     * Rotating encryptor should write the current version and read both versions.
+     */
+    @Test
+    public void testRotatingTextEncryptor() {
+        String encrypted = rotating.encrypt("token");
+        Assert.assertTrue(encrypted.startsWith("{2}"));
+        Assert.assertTrue(rotating.isCurrent(encrypted));
+        Assert.assertEquals("token", rotating.decrypt(encrypted));
+        String old = oldKey.encrypt("token");
+        Assert.assertFalse(rotating.isCurrent(old));
+        Assert.assertEquals("token", rotating.decrypt(old));
+        try {
+            new RotatingTextEncryptor("3", oldKey).decrypt(encrypted);
+            Assert.fail("Unknown version should not decrypt");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * All rows should be rewritten with the new key in chunks, and a second run should skip them.
+     */
+    @Test
+    public void testReencrypt() {
+        UserConnectionReencryptor reencryptor = new UserConnectionReencryptor(database, rotating, rotating);
+        reencryptor.setBatchSize(4);
+        Assert.assertEquals(ROWS, reencryptor.reencrypt().getRows());
+        Assert.assertEquals(ROWS, reencryptor.getProgress().getRows());
+
+        List<String> accessTokens = jdbcTemplate.queryForList("select accessToken from UserConnection", String.class);
+        Assert.assertEquals(ROWS, accessTokens.size());
+        for (String accessToken : accessTokens) {
+            Assert.assertTrue(accessToken.startsWith("{2}"));
+        }
+        Assert.assertEquals(0, jdbcTemplate.queryForObject(
+                "select count(*) from UserConnection where idToken not like '{2}%' or refreshToken not like '{2}%'",
+                Integer.class).intValue());
+        Assert.assertEquals("id7", rotating.decrypt(jdbcTemplate.queryForObject(
+                "select idToken from UserConnection where providerUserId = 'paypal-7'", String.class)));
+
+        Assert.assertEquals(0, reencryptor.reencrypt().getRows());
+        Assert.assertEquals(ROWS, reencryptor.getSkipped());
+    }
+
+    /**
+     * A run after a stopped one should process the rows again.
+     */
+    @Test
+    public void testReencryptAfterStop() throws InterruptedException {
+        UserConnectionReencryptor reencryptor = new UserConnectionReencryptor(database, rotating, rotating);
+        reencryptor.stop();
+        Assert.assertEquals(ROWS, reencryptor.reencrypt().getRows());
+    }
+}
@@ -0,0 +1,357 @@
+package org.springframework.social.openidconnect.stub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.springframework.util.StreamUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embeddable stand-in for the PayPal Access OpenID Connect endpoints: authorize, tokenservice, userinfo, checkid and
+ * endsession. Listens on a random local port, so tests and load runs can drive
+ * {@link org.springframework.social.openidconnect.PayPalOpenIdConnectOperation} and
+ * {@link org.springframework.social.openidconnect.api.impl.PayPalTemplate} end to end without reaching paypal.com.
+ * <p>
+ * User info responses are seeded from <code>paypal-api-openidconnect-response.json</code>, with the user id made unique
+ * per access token. Every response can be delayed, a share of requests can fail with HTTP 500, and all requests can be
+ * answered without body.
+ * </p>
+ */
+public class PayPalStubServer {
+
+    /**
+     * Logger for {@link PayPalStubServer}
+     */
+    private static final Logger logger = Logger.getLogger(PayPalStubServer.class);
+
+    public static final String AUTHORIZE_PATH = "/v1/authorize";
+
+    public static final String TOKEN_PATH = "/v1/tokenservice";
+
+    public static final String USER_INFO_PATH = "/v1/userinfo";
+
+    public static final String CHECK_ID_PATH = "/v1/checkid";
+
+    public static final String END_SESSION_PATH = "/v1/endsession";
+
+    private static final String PROFILE_RESOURCE = "/paypal-api-openidconnect-response.json";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final Map<String, Object> profileTemplate;
+
+    private final AtomicLong issued = new AtomicLong();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private volatile long latency;
+
+    private volatile double errorRate;
+
+    private volatile boolean emptyResponses;
+
+    private volatile long expiresIn = 28800;
+
+    private final int threads;
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    /**
+     * Creates a stub server handling requests on given number of threads. Call {@link #start()} to listen.
+     *
+     * @param threads - Number of threads handling requests
+     * @throws IOException - If the seed profile cannot be read
+     */
+    public PayPalStubServer(int threads) throws IOException {
+        this.threads = threads;
+        InputStream stream = getClass().getResourceAsStream(PROFILE_RESOURCE);
+        try {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> seed = mapper.readValue(stream, LinkedHashMap.class);
+            this.profileTemplate = seed;
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Starts listening on a random local port.
+     *
+     * @return - this server
+     * @throws IOException - If the server cannot bind
+     */
+    public PayPalStubServer start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 512);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext(AUTHORIZE_PATH, new StubHandler() {
+            void respond(HttpExchange exchange, Map<String, String> params) throws IOException {
+                String location = params.get("redirect_uri") + "?code=code-" + issued.incrementAndGet();
+                if (params.containsKey("state")) {
+                    location += "&state=" + params.get("state");
+                }
+                exchange.getResponseHeaders().set("Location", location);
+                exchange.sendResponseHeaders(302, -1);
+            }
+        });
+        server.createContext(TOKEN_PATH, new StubHandler() {
+            void respond(HttpExchange exchange, Map<String, String> params) throws IOException {
+                if (exchange.getRequestHeaders().getFirst("Authorization") == null) {
+                    sendJson(exchange, 401, "{\"error\":\"invalid_client\"}");
+                    return;
+                }
+                String grantType = params.get("grant_type");
+                String token;
+                if ("refresh_token".equals(grantType)) {
+                    token = "access-refreshed-" + issued.incrementAndGet();
+                } else if ("authorization_code".equals(grantType) && params.get("code") != null) {
+                    token = "access-" + params.get("code");
+                } else {
+                    sendJson(exchange, 400, "{\"error\":\"invalid_grant\"}");
+                    return;
+                }
+                sendJson(exchange, 200, "{\"token_type\":\"Bearer\",\"scope\":\"openid profile email address\","
+                        + "\"access_token\":\"" + token + "\",\"refresh_token\":\"refresh-" + token
+                        + "\",\"id_token\":\"id-" + token + "\",\"expires_in\":\"" + expiresIn + "\"}");
+            }
+        });
+        server.createContext(USER_INFO_PATH, new StubHandler() {
+            void respond(HttpExchange exchange, Map<String, String> params) throws IOException {
+                String token = params.get("code");
+                if (token == null) {
+                    sendJson(exchange, 401, "{\"error\":\"invalid_token\"}");
+                    return;
+                }
+                Map<String, Object> profile;
+                synchronized (profileTemplate) {
+                    profile = new HashMap<String, Object>(profileTemplate);
+                }
+                profile.put("user_id", "https://www.paypal.com/webapps/auth/user/" + token);
+                sendJson(exchange, 200, mapper.writeValueAsString(profile));
+            }
+        });
+        server.createContext(CHECK_ID_PATH, new StubHandler() {
+            void respond(HttpExchange exchange, Map<String, String> params) throws IOException {
+                sendJson(exchange, 200, "{\"valid\":true}");
+            }
+        });
+        server.createContext(END_SESSION_PATH, new StubHandler() {
+            void respond(HttpExchange exchange, Map<String, String> params) throws IOException {
+                String redirectUri = params.get("redirect_uri");
+                if (redirectUri != null) {
+                    exchange.getResponseHeaders().set("Location", redirectUri);
+                    exchange.sendResponseHeaders(302, -1);
+                } else {
+                    exchange.sendResponseHeaders(204, -1);
+                }
+            }
+        });
+        server.start();
+        if (logger.isDebugEnabled()) {
+            logger.debug("PayPal stub server listening at " + getBaseUrl());
+        }
+        return this;
+    }
+
+    /**
+     * Stops listening and releases request threads.
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public String getAuthorizeUrl() {
+        return getBaseUrl() + AUTHORIZE_PATH;
+    }
+
+    public String getTokenUrl() {
+        return getBaseUrl() + TOKEN_PATH;
+    }
+
+    public String getUserInfoUrl() {
+        return getBaseUrl() + USER_INFO_PATH;
+    }
+
+    public String getCheckIdUrl() {
+        return getBaseUrl() + CHECK_ID_PATH;
+    }
+
+    public String getEndSessionUrl() {
+        return getBaseUrl() + END_SESSION_PATH;
+    }
+
+    /**
+     * Sets delay added to every response.
+     *
+     * @param latency - delay in milliseconds
+     * @return - this server
+     */
+    public PayPalStubServer withLatency(long latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Sets share of requests answered with HTTP 500.
+     *
+     * @param errorRate - share between 0 and 1
+     * @return - this server
+     */
+    public PayPalStubServer withErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Makes every endpoint answer HTTP 204 without body, as a misbehaving proxy might.
+     *
+     * @param emptyResponses - true to answer without body
+     * @return - this server
+     */
+    public PayPalStubServer withEmptyResponses(boolean emptyResponses) {
+        this.emptyResponses = emptyResponses;
+        return this;
+    }
+
+    /**
+     * Sets lifetime of issued access tokens.
+     *
+     * @param expiresIn - lifetime in seconds
+     * @return - this server
+     */
+    public PayPalStubServer withExpiresIn(long expiresIn) {
+        this.expiresIn = expiresIn;
+        return this;
+    }
+
+    /**
+     * Replaces a field of the user info payload returned for every token, e.g. to test optional fields.
+     *
+     * @param field - JSON field name
+     * @param value - JSON value, null removes the field
+     * @return - this server
+     */
+    public PayPalStubServer withProfileField(String field, Object value) {
+        synchronized (profileTemplate) {
+            if (value == null) {
+                profileTemplate.remove(field);
+            } else {
+                profileTemplate.put(field, value);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Number of requests received on all endpoints.
+     *
+     * @return - request count
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Number of requests failed on purpose.
+     *
+     * @return - injected failure count
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    private static Map<String, String> parseParameters(String query, Map<String, String> params)
+            throws UnsupportedEncodingException {
+        if (query == null || query.length() == 0) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+                        URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Parses query and form parameters, applies latency and error injection, then lets the endpoint respond.
+     */
+    private abstract class StubHandler implements HttpHandler {
+
+        private final Random random = new Random();
+
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                requests.incrementAndGet();
+                Map<String, String> params = new HashMap<String, String>();
+                parseParameters(exchange.getRequestURI().getRawQuery(), params);
+                byte[] body = StreamUtils.copyToByteArray(exchange.getRequestBody());
+                if (body.length > 0) {
+                    parseParameters(new String(body, "UTF-8"), params);
+                }
+                if (latency > 0) {
+                    Thread.sleep(latency);
+                }
+                double roll;
+                synchronized (random) {
+                    roll = random.nextDouble();
+                }
+                if (roll < errorRate) {
+                    failures.incrementAndGet();
+                    sendJson(exchange, 500, "{\"error\":\"server_error\"}");
+                    return;
+                }
+                if (emptyResponses) {
+                    exchange.sendResponseHeaders(204, -1);
+                    return;
+                }
+                respond(exchange, params);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        }
+
+        abstract void respond(HttpExchange exchange, Map<String, String> params) throws IOException;
+    }
+}
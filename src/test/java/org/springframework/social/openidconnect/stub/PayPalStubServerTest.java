@@ -0,0 +1,77 @@
+package org.springframework.social.openidconnect.stub;
+
+import java.io.IOException;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.social.oauth2.AccessGrant;
+import org.springframework.social.openidconnect.HttpClientRegistry;
+import org.springframework.social.openidconnect.PayPalServiceProvider;
+import org.springframework.social.openidconnect.api.PayPalProfile;
+import org.springframework.social.openidconnect.support.OpenIdAccessGrant;
+import org.springframework.web.client.HttpServerErrorException;
+
+/**
+ * Runs sign in flows end to end against the stub server.
+ */
+public class PayPalStubServerTest {
+
+    private PayPalStubServer server;
+
+    private PayPalServiceProvider serviceProvider;
+
+    @Before
+    public void beforeEach() throws IOException {
+        server = new PayPalStubServer(4).start();
+        serviceProvider = new PayPalServiceProvider("clientId", "appSecret", "openid profile email address",
+                server.getAuthorizeUrl(), server.getTokenUrl(), server.getUserInfoUrl(), false);
+    }
+
+    @After
+    public void afterEach() {
+        server.stop();
+        HttpClientRegistry.closeAll();
+    }
+
+    /**
+     * Full flow should return tokens and the seeded profile for the issued token.
+     *
+     * @throws IOException - If stub cannot be reached
+     */
+    @Test
+    public void testSignIn() throws IOException {
+        PayPalProfile profile = new SignInLoadHarness(serviceProvider, server.getAuthorizeUrl()).signIn();
+        Assert.assertEquals("Prabhakar", profile.getFamilyName());
+        Assert.assertTrue(profile.getUserId().endsWith("access-code-1"));
+        Assert.assertEquals("access-code-1", profile.getPassword());
+
+        AccessGrant accessGrant = serviceProvider.getOAuthOperations().exchangeForAccess("other", "http://localhost", null);
+        Assert.assertEquals("id-access-other", ((OpenIdAccessGrant) accessGrant).getIdToken());
+        Assert.assertNotNull(accessGrant.getExpireTime());
+    }
+
+    /**
+     * Injected server errors should reach the caller.
+     */
+    @Test(expected = HttpServerErrorException.class)
+    public void testServerError() {
+        server.withErrorRate(1);
+        serviceProvider.getOAuthOperations().exchangeForAccess("code", "http://localhost", null);
+    }
+
+    /**
+     * Harness should report every sign in of a short run.
+     *
+     * @throws InterruptedException - If interrupted while waiting
+     */
+    @Test
+    public void testLoadRun() throws InterruptedException {
+        SignInLoadHarness.Report report = new SignInLoadHarness(serviceProvider, server.getAuthorizeUrl()).run(50, 1, 4);
+        Assert.assertEquals(50, report.getCompleted());
+        Assert.assertEquals(0, report.getErrors());
+        Assert.assertTrue(report.getLatency(99) >= report.getLatency(50));
+    }
+}
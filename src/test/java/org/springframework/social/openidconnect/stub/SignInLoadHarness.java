@@ -0,0 +1,243 @@
+package org.springframework.social.openidconnect.stub;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.social.oauth2.AccessGrant;
+import org.springframework.social.oauth2.GrantType;
+import org.springframework.social.oauth2.OAuth2Operations;
+import org.springframework.social.oauth2.OAuth2Parameters;
+import org.springframework.social.openidconnect.HttpClientRegistry;
+import org.springframework.social.openidconnect.PayPalOpenIdConnectOperation;
+import org.springframework.social.openidconnect.PayPalServiceProvider;
+import org.springframework.social.openidconnect.api.PayPalProfile;
+
+/**
+ * Drives full sign in flows (authorize redirect, token exchange, user info) against a {@link PayPalStubServer} at a
+ * target rate, then reports throughput and latency percentiles. Run from the IDE or with the test classpath:
+ *
+ * <pre>
+ * java -cp target/test-classes:target/classes:... org.springframework.social.openidconnect.stub.SignInLoadHarness \
+ *     [rate per second] [duration in seconds] [client threads] [stub latency in ms] [stub error rate]
+ * </pre>
+ */
+public class SignInLoadHarness {
+
+    private static final String REDIRECT_URI = "http://127.0.0.1/signin/paypal";
+
+    private final PayPalServiceProvider serviceProvider;
+
+    private final String authorizeUrl;
+
+    /**
+     * Whether sign ins use the non-blocking token exchange and user info call.
+     */
+    private boolean async;
+
+    /**
+     * Creates a harness signing in through given provider.
+     *
+     * @param serviceProvider - Provider configured with stub endpoints
+     * @param authorizeUrl - Authorize endpoint of the stub
+     */
+    public SignInLoadHarness(PayPalServiceProvider serviceProvider, String authorizeUrl) {
+        this.serviceProvider = serviceProvider;
+        this.authorizeUrl = authorizeUrl;
+    }
+
+    /**
+     * Makes sign ins use {@link PayPalOpenIdConnectOperation#exchangeForAccessAsync(String, String,
+     * org.springframework.util.MultiValueMap)} and {@link PayPalServiceProvider#getAsyncApi(String)}, so the token
+     * service and user info calls run on the task executor of the provider, if one is set.
+     *
+     * @param async - true to go through the non-blocking api
+     */
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    /**
+     * Runs one sign in: authorize redirect, code exchange and user info call.
+     *
+     * @return - profile of the signed in user
+     * @throws IOException - If authorize endpoint cannot be reached
+     */
+    public PayPalProfile signIn() throws IOException {
+        OAuth2Operations operations = serviceProvider.getOAuthOperations();
+        OAuth2Parameters parameters = new OAuth2Parameters();
+        parameters.setRedirectUri(REDIRECT_URI);
+        parameters.setState("state");
+        String code = authorize(operations.buildAuthorizeUrl(GrantType.AUTHORIZATION_CODE, parameters));
+        if (async) {
+            try {
+                AccessGrant accessGrant = ((PayPalOpenIdConnectOperation) operations)
+                        .exchangeForAccessAsync(code, REDIRECT_URI, null).get();
+                return serviceProvider.getAsyncApi(accessGrant.getAccessToken()).getUserProfile().get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while signing in", ex);
+            } catch (ExecutionException ex) {
+                throw new IOException("Sign in failed", ex.getCause());
+            }
+        }
+        AccessGrant accessGrant = operations.exchangeForAccess(code, REDIRECT_URI, null);
+        return serviceProvider.getApi(accessGrant.getAccessToken()).getUserProfile();
+    }
+
+    /**
+     * Follows the browser part of the flow, the authorize endpoint redirects back with a code.
+     */
+    private String authorize(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setInstanceFollowRedirects(false);
+        try {
+            String location = connection.getHeaderField("Location");
+            if (connection.getResponseCode() != 302 || location == null) {
+                throw new IOException("Authorize failed with status " + connection.getResponseCode());
+            }
+            int start = location.indexOf("code=") + 5;
+            int end = location.indexOf('&', start);
+            return end < 0 ? location.substring(start) : location.substring(start, end);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Starts sign ins at given rate for given time, then waits for outstanding ones.
+     *
+     * @param rate - Sign ins started per second
+     * @param duration - Run time in seconds
+     * @param threads - Client threads running sign ins
+     * @return - report of the run
+     * @throws InterruptedException - If interrupted while waiting
+     */
+    public Report run(int rate, int duration, int threads) throws InterruptedException {
+        final int total = rate * duration;
+        final long[] latencies = new long[total];
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicLong errors = new AtomicLong();
+        final ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        final AtomicInteger started = new AtomicInteger();
+        long begin = System.nanoTime();
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                final int index = started.getAndIncrement();
+                if (index >= total) {
+                    return;
+                }
+                final long scheduled = System.nanoTime();
+                workers.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            signIn();
+                        } catch (Exception ex) {
+                            errors.incrementAndGet();
+                        }
+                        // latency includes time queued for a client thread, so an overloaded client shows up too
+                        latencies[index] = System.nanoTime() - scheduled;
+                        completed.incrementAndGet();
+                    }
+                });
+            }
+        }, 0, TimeUnit.SECONDS.toNanos(1) / rate, TimeUnit.NANOSECONDS);
+        while (started.get() < total) {
+            Thread.sleep(10);
+        }
+        scheduler.shutdown();
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.HOURS);
+        long elapsed = System.nanoTime() - begin;
+        return new Report(latencies, completed.get(), errors.get(), elapsed);
+    }
+
+    /**
+     * Throughput and latency of a run.
+     */
+    public static class Report {
+
+        private final long[] latencies;
+
+        private final int completed;
+
+        private final long errors;
+
+        private final long elapsed;
+
+        Report(long[] latencies, int completed, long errors, long elapsed) {
+            this.latencies = latencies.clone();
+            Arrays.sort(this.latencies);
+            this.completed = completed;
+            this.errors = errors;
+            this.elapsed = elapsed;
+        }
+
+        public int getCompleted() {
+            return completed;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * Completed sign ins per second.
+         *
+         * @return - throughput
+         */
+        public double getThroughput() {
+            return completed * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+        }
+
+        /**
+         * Latency below which given share of sign ins completed.
+         *
+         * @param percentile - percentile between 0 and 100
+         * @return - latency in milliseconds
+         */
+        public double getLatency(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(index, latencies.length - 1))] / 1000000d;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("completed=%d errors=%d throughput=%.1f/s p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+                    completed, errors, getThroughput(), getLatency(50), getLatency(90), getLatency(99), getLatency(100));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int duration = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        long latency = args.length > 3 ? Long.parseLong(args[3]) : 20;
+        double errorRate = args.length > 4 ? Double.parseDouble(args[4]) : 0;
+        PayPalStubServer server = new PayPalStubServer(threads * 2).withLatency(latency).withErrorRate(errorRate).start();
+        try {
+            PayPalServiceProvider serviceProvider = new PayPalServiceProvider("clientId", "appSecret",
+                    "openid profile email address", server.getAuthorizeUrl(), server.getTokenUrl(),
+                    server.getUserInfoUrl(), false);
+            SignInLoadHarness harness = new SignInLoadHarness(serviceProvider, server.getAuthorizeUrl());
+            // warm up pools and JIT before measuring
+            harness.run(rate, Math.min(duration, 2), threads);
+            System.out.println(harness.run(rate, duration, threads));
+        } finally {
+            server.stop();
+            HttpClientRegistry.closeAll();
+        }
+    }
+}
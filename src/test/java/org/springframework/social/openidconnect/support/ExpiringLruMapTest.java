@@ -0,0 +1,52 @@
+package org.springframework.social.openidconnect.support;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Tests expiry, bounds and reservations of {@link ExpiringLruMap}.
+ */
+public class ExpiringLruMapTest {
+
+    /**
+     * Expired values and least recently used keys should be dropped.
+     */
+    @Test
+    public void testExpiryAndBounds() {
+        ExpiringLruMap<String, String> map = new ExpiringLruMap<String, String>(2);
+        long later = System.currentTimeMillis() + 60000;
+        map.put("first", "1", later);
+        map.put("second", "2", later);
+        Assert.assertEquals("1", map.get("first"));
+        map.put("third", "3", later);
+        Assert.assertNull(map.get("second"));
+        Assert.assertEquals(2, map.size());
+
+        map.expireAt("first", System.currentTimeMillis() - 1);
+        Assert.assertNull(map.get("first"));
+        Assert.assertEquals(1, map.size());
+        Assert.assertEquals(1, map.getHits());
+        Assert.assertEquals(2, map.getMisses());
+    }
+
+    /**
+     * A reserved key should read as missing, and a removal should discard the value loaded for it.
+     */
+    @Test
+    public void testReservation() {
+        ExpiringLruMap<String, String> map = new ExpiringLruMap<String, String>(10);
+        long later = System.currentTimeMillis() + 60000;
+        long stamp = map.reserve("key");
+        Assert.assertEquals(stamp, map.reserve("key"));
+        Assert.assertNull(map.get("key"));
+        Assert.assertTrue(map.putIfReserved("key", stamp, "value", later));
+        Assert.assertEquals("value", map.get("key"));
+
+        map.remove("key");
+        stamp = map.reserve("key");
+        map.remove("key");
+        Assert.assertFalse(map.putIfReserved("key", stamp, "stale", later));
+        Assert.assertNull(map.peek("key"));
+    }
+}